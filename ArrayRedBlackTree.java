@@ -0,0 +1,664 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A red black tree that keeps its nodes in parallel primitive arrays instead of one object per
+ * node. A node is an int slot: its children, parent and subtree size are entries of int arrays,
+ * its color is one bit of a long array, and its element sits in one dense Object array. Slot 0 is
+ * the shared black leaf, so no null checks are needed while rebalancing. Slots freed by remove are
+ * kept on a free list, linked through their left entries, and handed out again by later inserts.
+ *
+ * @param <T> the type of the stored elements
+ */
+public class ArrayRedBlackTree<T extends Comparable<T>> implements SortedCollectionInterface<T> {
+  // the shared black leaf; its parent entry is used as scratch space while removing
+  private static final int NIL = 0;
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] leftChild;
+  private int[] rightChild;
+  private int[] parent;
+  private int[] subtreeSize;
+  // one bit per slot, set when the node is red
+  private long[] red;
+  private Object[] data;
+
+  private int root = NIL;
+  private int size = 0;
+  // first slot of the free list, or NIL when it is empty
+  private int freeSlot = NIL;
+  // first slot that has never been handed out
+  private int nextUnusedSlot = 1;
+
+  public ArrayRedBlackTree() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty tree with room for the given number of elements before its arrays grow
+   *
+   * @param capacity the number of elements to reserve space for
+   */
+  public ArrayRedBlackTree(int capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("The capacity cannot be negative.");
+    int slots = capacity + 1;
+    leftChild = new int[slots];
+    rightChild = new int[slots];
+    parent = new int[slots];
+    subtreeSize = new int[slots];
+    red = new long[(slots + 63) >>> 6];
+    data = new Object[slots];
+  }
+
+  @Override
+  public boolean insert(T element) throws NullPointerException, IllegalArgumentException {
+    if (element == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    int parentSlot = NIL;
+    int current = root;
+    int compare = 0;
+    while (current != NIL) {
+      compare = element.compareTo(dataAt(current));
+      if (compare == 0) {
+        for (int ancestor = parent[current]; ancestor != NIL; ancestor = parent[ancestor]) {
+          subtreeSize[ancestor]--;
+        }
+        throw new IllegalArgumentException("This RedBlackTree already contains that value.");
+      }
+      subtreeSize[current]++;
+      parentSlot = current;
+      current = compare < 0 ? leftChild[current] : rightChild[current];
+    }
+
+    int node = allocate(element);
+    parent[node] = parentSlot;
+    if (parentSlot == NIL) {
+      root = node;
+    } else if (compare < 0) {
+      leftChild[parentSlot] = node;
+    } else {
+      rightChild[parentSlot] = node;
+    }
+    size++;
+    enforceRBTreePropertiesAfterInsert(node);
+    return true;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T remove(T element) throws NullPointerException, IllegalArgumentException {
+    if (element == null)
+      throw new NullPointerException("This RedBlackTree cannot remove null references.");
+    int node = findSlot(element);
+    if (node == NIL) {
+      throw new IllegalArgumentException("This RedBlackTree does not contain that value.");
+    }
+    T removed = (T) data[node];
+    removeSlot(node);
+    size--;
+    return removed;
+  }
+
+  @Override
+  public boolean contains(T element) {
+    if (element == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    return findSlot(element) != NIL;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public ISong search(ISong element) {
+    int node = findSlot((T) element);
+    if (node == NIL)
+      throw new NoSuchElementException("no element with such value");
+    return (ISong) data[node];
+  }
+
+  @Override
+  public T searchByKey(Comparable<? super T> key) {
+    if (key == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    int node = findSlot(key);
+    return node == NIL ? null : dataAt(node);
+  }
+
+  @Override
+  public T floor(T element) {
+    return dataOrNull(nearest(element, true, true));
+  }
+
+  @Override
+  public T ceiling(T element) {
+    return dataOrNull(nearest(element, false, true));
+  }
+
+  @Override
+  public T higher(T element) {
+    return dataOrNull(nearest(element, false, false));
+  }
+
+  @Override
+  public T lower(T element) {
+    return dataOrNull(nearest(element, true, false));
+  }
+
+  @Override
+  public int rank(T element) {
+    if (element == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    int rank = 0;
+    int current = root;
+    while (current != NIL) {
+      if (element.compareTo(dataAt(current)) <= 0) {
+        current = leftChild[current];
+      } else {
+        rank += subtreeSize[leftChild[current]] + 1;
+        current = rightChild[current];
+      }
+    }
+    return rank;
+  }
+
+  @Override
+  public T select(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+    return dataAt(selectSlot(index));
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return new SlotIterator(root == NIL ? NIL : least(root));
+  }
+
+  @Override
+  public Iterator<T> iteratorFrom(T element) {
+    return new SlotIterator(nearest(element, false, true));
+  }
+
+  /**
+   * Returns a spliterator that splits its range of positions at the middle, so both halves report
+   * their exact size.
+   *
+   * @return a SIZED, SUBSIZED, SORTED and ORDERED spliterator over this tree
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    return new SlotSpliterator(root == NIL ? NIL : least(root), 0, size);
+  }
+
+  /**
+   * Iterator that walks from a starting slot through successor links
+   */
+  private class SlotIterator implements Iterator<T> {
+    private int next;
+
+    SlotIterator(int first) {
+      this.next = first;
+    }
+
+    public boolean hasNext() {
+      return next != NIL;
+    }
+
+    public T next() {
+      if (next == NIL) {
+        throw new NoSuchElementException("There are no more elements in the tree");
+      }
+      int processed = next;
+      next = successor(processed);
+      return dataAt(processed);
+    }
+  }
+
+  /**
+   * Spliterator over the elements at positions index (inclusive) to fence (exclusive)
+   */
+  private class SlotSpliterator implements Spliterator<T> {
+    // slot at position index, or NIL when it has not been looked up yet
+    private int current;
+    private int index;
+    private final int fence;
+
+    SlotSpliterator(int current, int index, int fence) {
+      this.current = current;
+      this.index = index;
+      this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (index >= fence) {
+        return false;
+      }
+      if (current == NIL) {
+        current = selectSlot(index);
+      }
+      T element = dataAt(current);
+      current = successor(current);
+      index++;
+      action.accept(element);
+      return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      int remaining = fence - index;
+      if (remaining < 2) {
+        return null;
+      }
+      int middle = index + remaining / 2;
+      Spliterator<T> prefix = new SlotSpliterator(current, index, middle);
+      index = middle;
+      current = NIL;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED | Spliterator.ORDERED
+          | Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+      // sorted by the natural ordering of the elements
+      return null;
+    }
+  }
+
+  /**
+   * Getter method for the number of slots handed out so far, in the tree or on the free list
+   *
+   * @return the number of slots used besides the shared black leaf
+   */
+  int allocatedSlots() {
+    return nextUnusedSlot - 1;
+  }
+
+  /**
+   * Checks the red black properties, the parent links, the subtree sizes and the order of the
+   * elements, for tests
+   *
+   * @return the black height of the tree
+   * @throws IllegalStateException when the tree is broken
+   */
+  int checkInvariants() {
+    if (isRed(NIL) || subtreeSize[NIL] != 0)
+      throw new IllegalStateException("The shared leaf must be black and empty.");
+    if (isRed(root))
+      throw new IllegalStateException("The root must be black.");
+    if (root != NIL && parent[root] != NIL)
+      throw new IllegalStateException("The root must not have a parent.");
+    if (subtreeSize[root] != size)
+      throw new IllegalStateException("The size does not match the number of nodes.");
+    return checkInvariants(root, null, null);
+  }
+
+  private int checkInvariants(int node, T low, T high) {
+    if (node == NIL) {
+      return 1;
+    }
+    T element = dataAt(node);
+    if ((low != null && low.compareTo(element) >= 0)
+        || (high != null && high.compareTo(element) <= 0))
+      throw new IllegalStateException("The elements are out of order at " + element + ".");
+    int left = leftChild[node];
+    int right = rightChild[node];
+    if ((left != NIL && parent[left] != node) || (right != NIL && parent[right] != node))
+      throw new IllegalStateException("A child of " + element + " has the wrong parent.");
+    if (isRed(node) && (isRed(left) || isRed(right)))
+      throw new IllegalStateException("The red node " + element + " has a red child.");
+    if (subtreeSize[node] != 1 + subtreeSize[left] + subtreeSize[right])
+      throw new IllegalStateException("The subtree size of " + element + " is wrong.");
+    int blackHeight = checkInvariants(left, low, element);
+    if (blackHeight != checkInvariants(right, element, high))
+      throw new IllegalStateException("The black heights below " + element + " differ.");
+    return blackHeight + (isRed(node) ? 0 : 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T dataAt(int node) {
+    return (T) data[node];
+  }
+
+  private T dataOrNull(int node) {
+    return node == NIL ? null : dataAt(node);
+  }
+
+  private boolean isRed(int node) {
+    return (red[node >>> 6] & (1L << node)) != 0;
+  }
+
+  private void setRed(int node) {
+    red[node >>> 6] |= 1L << node;
+  }
+
+  private void setBlack(int node) {
+    red[node >>> 6] &= ~(1L << node);
+  }
+
+  /**
+   * Takes a slot from the free list, or the next unused slot, growing the arrays when they are full
+   */
+  private int allocate(T element) {
+    int node;
+    if (freeSlot != NIL) {
+      node = freeSlot;
+      freeSlot = leftChild[node];
+    } else {
+      if (nextUnusedSlot == data.length) {
+        grow();
+      }
+      node = nextUnusedSlot++;
+    }
+    leftChild[node] = NIL;
+    rightChild[node] = NIL;
+    parent[node] = NIL;
+    subtreeSize[node] = 1;
+    setRed(node);
+    data[node] = element;
+    return node;
+  }
+
+  /**
+   * Puts a slot that is no longer in the tree on the free list
+   */
+  private void free(int node) {
+    data[node] = null;
+    setBlack(node);
+    leftChild[node] = freeSlot;
+    freeSlot = node;
+  }
+
+  private void grow() {
+    int slots = Math.max(DEFAULT_CAPACITY, data.length + (data.length >>> 1));
+    leftChild = Arrays.copyOf(leftChild, slots);
+    rightChild = Arrays.copyOf(rightChild, slots);
+    parent = Arrays.copyOf(parent, slots);
+    subtreeSize = Arrays.copyOf(subtreeSize, slots);
+    red = Arrays.copyOf(red, (slots + 63) >>> 6);
+    data = Arrays.copyOf(data, slots);
+  }
+
+  private int findSlot(Comparable<? super T> key) {
+    int current = root;
+    while (current != NIL) {
+      int compare = key.compareTo(dataAt(current));
+      if (compare < 0) {
+        current = leftChild[current];
+      } else if (compare > 0) {
+        current = rightChild[current];
+      } else {
+        return current;
+      }
+    }
+    return NIL;
+  }
+
+  private int nearest(T element, boolean below, boolean inclusive) {
+    if (element == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    int best = NIL;
+    int current = root;
+    while (current != NIL) {
+      int compare = element.compareTo(dataAt(current));
+      if (compare == 0 && inclusive) {
+        return current;
+      }
+      if (below ? compare > 0 : compare < 0) {
+        best = current;
+        current = below ? rightChild[current] : leftChild[current];
+      } else {
+        current = below ? leftChild[current] : rightChild[current];
+      }
+    }
+    return best;
+  }
+
+  private int selectSlot(int index) {
+    int current = root;
+    while (true) {
+      int leftSize = subtreeSize[leftChild[current]];
+      if (index < leftSize) {
+        current = leftChild[current];
+      } else if (index > leftSize) {
+        index -= leftSize + 1;
+        current = rightChild[current];
+      } else {
+        return current;
+      }
+    }
+  }
+
+  private int least(int node) {
+    while (leftChild[node] != NIL) {
+      node = leftChild[node];
+    }
+    return node;
+  }
+
+  private int successor(int node) {
+    if (rightChild[node] != NIL) {
+      return least(rightChild[node]);
+    }
+    int child = node;
+    int up = parent[node];
+    while (up != NIL && child == rightChild[up]) {
+      child = up;
+      up = parent[up];
+    }
+    return up;
+  }
+
+  private void rotateLeft(int node) {
+    int child = rightChild[node];
+    rightChild[node] = leftChild[child];
+    if (leftChild[child] != NIL) {
+      parent[leftChild[child]] = node;
+    }
+    replaceChild(node, child);
+    leftChild[child] = node;
+    parent[node] = child;
+    subtreeSize[child] = subtreeSize[node];
+    subtreeSize[node] = 1 + subtreeSize[leftChild[node]] + subtreeSize[rightChild[node]];
+  }
+
+  private void rotateRight(int node) {
+    int child = leftChild[node];
+    leftChild[node] = rightChild[child];
+    if (rightChild[child] != NIL) {
+      parent[rightChild[child]] = node;
+    }
+    replaceChild(node, child);
+    rightChild[child] = node;
+    parent[node] = child;
+    subtreeSize[child] = subtreeSize[node];
+    subtreeSize[node] = 1 + subtreeSize[leftChild[node]] + subtreeSize[rightChild[node]];
+  }
+
+  /**
+   * Hangs replacement where node used to hang below node's parent. The parent entry of replacement
+   * is set even when it is the shared leaf, which the remove fixup relies on.
+   */
+  private void replaceChild(int node, int replacement) {
+    int up = parent[node];
+    if (up == NIL) {
+      root = replacement;
+    } else if (node == leftChild[up]) {
+      leftChild[up] = replacement;
+    } else {
+      rightChild[up] = replacement;
+    }
+    parent[replacement] = up;
+  }
+
+  private void enforceRBTreePropertiesAfterInsert(int node) {
+    while (isRed(parent[node])) {
+      int up = parent[node];
+      int grandParent = parent[up];
+      if (up == leftChild[grandParent]) {
+        int uncle = rightChild[grandParent];
+        if (isRed(uncle)) {
+          setBlack(up);
+          setBlack(uncle);
+          setRed(grandParent);
+          node = grandParent;
+          continue;
+        }
+        if (node == rightChild[up]) {
+          node = up;
+          rotateLeft(node);
+          up = parent[node];
+        }
+        setBlack(up);
+        setRed(grandParent);
+        rotateRight(grandParent);
+      } else {
+        int uncle = leftChild[grandParent];
+        if (isRed(uncle)) {
+          setBlack(up);
+          setBlack(uncle);
+          setRed(grandParent);
+          node = grandParent;
+          continue;
+        }
+        if (node == leftChild[up]) {
+          node = up;
+          rotateRight(node);
+          up = parent[node];
+        }
+        setBlack(up);
+        setRed(grandParent);
+        rotateLeft(grandParent);
+      }
+    }
+    setBlack(root);
+  }
+
+  private void removeSlot(int node) {
+    int removed = node;
+    boolean removedRed = isRed(removed);
+    int movedUp;
+    if (leftChild[node] == NIL) {
+      movedUp = rightChild[node];
+      replaceChild(node, movedUp);
+    } else if (rightChild[node] == NIL) {
+      movedUp = leftChild[node];
+      replaceChild(node, movedUp);
+    } else {
+      // the successor takes the node's place, color and children
+      removed = least(rightChild[node]);
+      removedRed = isRed(removed);
+      movedUp = rightChild[removed];
+      if (parent[removed] == node) {
+        parent[movedUp] = removed;
+      } else {
+        replaceChild(removed, movedUp);
+        rightChild[removed] = rightChild[node];
+        parent[rightChild[removed]] = removed;
+      }
+      replaceChild(node, removed);
+      leftChild[removed] = leftChild[node];
+      parent[leftChild[removed]] = removed;
+      if (isRed(node)) {
+        setRed(removed);
+      } else {
+        setBlack(removed);
+      }
+    }
+    for (int ancestor = parent[movedUp]; ancestor != NIL; ancestor = parent[ancestor]) {
+      subtreeSize[ancestor] =
+          1 + subtreeSize[leftChild[ancestor]] + subtreeSize[rightChild[ancestor]];
+    }
+    if (!removedRed) {
+      enforceRBTPropertiesAfterRemove(movedUp);
+    }
+    free(node);
+  }
+
+  private void enforceRBTPropertiesAfterRemove(int node) {
+    while (node != root && !isRed(node)) {
+      int up = parent[node];
+      if (node == leftChild[up]) {
+        int sibling = rightChild[up];
+        if (isRed(sibling)) {
+          setBlack(sibling);
+          setRed(up);
+          rotateLeft(up);
+          sibling = rightChild[up];
+        }
+        if (!isRed(leftChild[sibling]) && !isRed(rightChild[sibling])) {
+          setRed(sibling);
+          node = up;
+        } else {
+          if (!isRed(rightChild[sibling])) {
+            setBlack(leftChild[sibling]);
+            setRed(sibling);
+            rotateRight(sibling);
+            sibling = rightChild[up];
+          }
+          if (isRed(up)) {
+            setRed(sibling);
+          } else {
+            setBlack(sibling);
+          }
+          setBlack(up);
+          setBlack(rightChild[sibling]);
+          rotateLeft(up);
+          node = root;
+        }
+      } else {
+        int sibling = leftChild[up];
+        if (isRed(sibling)) {
+          setBlack(sibling);
+          setRed(up);
+          rotateRight(up);
+          sibling = leftChild[up];
+        }
+        if (!isRed(leftChild[sibling]) && !isRed(rightChild[sibling])) {
+          setRed(sibling);
+          node = up;
+        } else {
+          if (!isRed(leftChild[sibling])) {
+            setBlack(rightChild[sibling]);
+            setRed(sibling);
+            rotateLeft(sibling);
+            sibling = leftChild[up];
+          }
+          if (isRed(up)) {
+            setRed(sibling);
+          } else {
+            setBlack(sibling);
+          }
+          setBlack(up);
+          setBlack(leftChild[sibling]);
+          rotateRight(up);
+          node = root;
+        }
+      }
+    }
+    setBlack(node);
+  }
+}
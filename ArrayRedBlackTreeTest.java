@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the ArrayRedBlackTree against a TreeSet, and its red black properties and subtree sizes
+ * after every change
+ */
+public class ArrayRedBlackTreeTest {
+  @Test
+  public void interleavedInsertsAndRemovesKeepTheInvariants() {
+    Random random = new Random(12);
+    ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 20_000; i++) {
+      Integer value = random.nextInt(2_000);
+      if (random.nextInt(5) < 3) {
+        if (expected.add(value)) {
+          assertTrue(tree.insert(value));
+        } else {
+          assertThrows(IllegalArgumentException.class, () -> tree.insert(value));
+        }
+      } else if (expected.remove(value)) {
+        assertEquals(value, tree.remove(value));
+      } else {
+        assertThrows(IllegalArgumentException.class, () -> tree.remove(value));
+      }
+      tree.checkInvariants();
+      assertEquals(expected.size(), tree.size());
+    }
+    assertSameElements(expected, tree);
+  }
+
+  @Test
+  public void removingEverythingLeavesAnEmptyTree() {
+    ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<>();
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      values.add(i);
+      tree.insert(i);
+    }
+    Collections.shuffle(values, new Random(3));
+    for (Integer value : values) {
+      tree.remove(value);
+      tree.checkInvariants();
+    }
+    assertTrue(tree.isEmpty());
+    assertFalse(tree.iterator().hasNext());
+    assertNull(tree.ceiling(0));
+  }
+
+  @Test
+  public void freedSlotsAreReused() {
+    ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<>(4);
+    for (int i = 0; i < 1_000; i++) {
+      tree.insert(i);
+    }
+    assertEquals(1_000, tree.allocatedSlots());
+    for (int i = 0; i < 1_000; i += 2) {
+      tree.remove(i);
+    }
+    // the new elements go into the 500 freed slots before any new slot is taken
+    for (int i = 1_000; i < 1_500; i++) {
+      tree.insert(i);
+      tree.checkInvariants();
+    }
+    assertEquals(1_000, tree.allocatedSlots());
+    tree.insert(1_500);
+    assertEquals(1_001, tree.allocatedSlots());
+  }
+
+  @Test
+  public void rankAndSelectMatchTheOrder() {
+    Random random = new Random(5);
+    ArrayRedBlackTree<Integer> tree = new ArrayRedBlackTree<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 3_000; i++) {
+      Integer value = random.nextInt(10_000);
+      if (expected.add(value)) {
+        tree.insert(value);
+      }
+      if (i % 3 == 0) {
+        Integer victim = expected.pollFirst();
+        tree.remove(victim);
+      }
+    }
+    int index = 0;
+    for (Integer value : expected) {
+      assertEquals(value, tree.select(index));
+      assertEquals(index, tree.rank(value));
+      index++;
+    }
+  }
+
+  private static void assertSameElements(TreeSet<Integer> expected,
+      ArrayRedBlackTree<Integer> tree) {
+    Iterator<Integer> actual = tree.iterator();
+    for (Integer value : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(value, actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+}
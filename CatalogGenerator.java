@@ -0,0 +1,184 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Generates synthetic song catalogs that are skewed like real ones, for testing at sizes the song
+ * list does not reach. Songs are produced one at a time, so catalogs of tens of millions of songs
+ * can be written without holding them in memory.
+ * - Artists are drawn from a Zipf distribution, so a few artists have many songs and most have few.
+ * - Each artist has a career year, and its songs are spread around it, so years come in clusters.
+ * - One song in a hundred has an unknown year.
+ * - Titles are one to three common words, followed by a short code that keeps them distinct.
+ *
+ * Usage: java CatalogGenerator file count [seed]
+ */
+public class CatalogGenerator implements Iterator<Song> {
+  // one artist for every this many songs
+  private static final int SONGS_PER_ARTIST = 20;
+  // exponent of the Zipf distribution of songs over artists
+  private static final double SKEW = 1.07;
+  private static final int FIRST_YEAR = 1950;
+  private static final int LAST_YEAR = 2025;
+  // standard deviation, in years, of an artist's songs around its career year
+  private static final double CAREER_SPREAD = 4.0;
+
+  static final String[] WORDS = {"Love", "Night", "Road", "Fire", "Heart", "Rock", "Blue", "Dream",
+      "River", "Light", "Time", "Wild", "Rain", "Gold", "Home", "Stone", "Highway", "Summer",
+      "Midnight", "City", "Angel", "Thunder", "Train", "Sweet", "Lonely", "Electric", "Running",
+      "Devil", "Moon", "Sun", "Rebel", "Woman", "Man", "Free", "Down", "Up", "Old", "Young",
+      "Heaven", "Street", "Fool", "Crazy", "Shadow", "Dancing", "Queen", "King", "Whiskey",
+      "Desert", "Ocean", "Storm"};
+  private static final String[] FIRST_NAMES = {"Jimmy", "Stevie", "Janis", "Bobby", "Joni",
+      "Johnny", "Patti", "Eddie", "Linda", "Tommy", "Carly", "Neil", "Grace", "Ozzy", "Debbie"};
+  private static final String[] LAST_NAMES = {"Page", "Knight", "Walsh", "Young", "Stone", "Ray",
+      "Hunter", "Morrison", "Fox", "Lane", "Parker", "Cole", "Rivers", "Hart", "Wilde"};
+  private static final String[] BAND_WORDS = {"Eagles", "Stones", "Wolves", "Riders", "Kings",
+      "Doors", "Ravens", "Pilots", "Saints", "Giants", "Outlaws", "Drifters", "Rebels", "Tigers"};
+
+  private final int count;
+  private final long seed;
+  private final Random random;
+  // cumulative Zipf probabilities of the artists, by popularity rank
+  private final double[] artistCumulative;
+  private int generated = 0;
+
+  /**
+   * Prepares a catalog of the given number of songs. Equal seeds give equal catalogs.
+   *
+   * @param count the number of songs to generate
+   * @param seed  seed of the random choices
+   */
+  public CatalogGenerator(int count, long seed) {
+    if (count < 0)
+      throw new IllegalArgumentException("The number of songs cannot be negative.");
+    this.count = count;
+    this.seed = seed;
+    this.random = new Random(seed);
+    int artists = Math.max(1, count / SONGS_PER_ARTIST);
+    artistCumulative = new double[artists];
+    double total = 0;
+    for (int rank = 0; rank < artists; rank++) {
+      total += 1 / Math.pow(rank + 1, SKEW);
+      artistCumulative[rank] = total;
+    }
+    for (int rank = 0; rank < artists; rank++) {
+      artistCumulative[rank] /= total;
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    return generated < count;
+  }
+
+  /**
+   * Generates the next song of the catalog
+   *
+   * @return a song whose title differs from every other song of the catalog
+   */
+  @Override
+  public Song next() {
+    if (generated >= count)
+      throw new NoSuchElementException("The catalog has no more songs.");
+    int artist = nextArtist();
+    StringBuilder title = new StringBuilder();
+    for (int words = 1 + random.nextInt(3); words > 0; words--) {
+      title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+    }
+    title.append('(').append(Integer.toString(generated++, 36)).append(')');
+    return new Song(title.toString(), artistName(artist), year(artist));
+  }
+
+  private int nextArtist() {
+    int rank = Arrays.binarySearch(artistCumulative, random.nextDouble());
+    return Math.min(rank < 0 ? -rank - 1 : rank, artistCumulative.length - 1);
+  }
+
+  /**
+   * Picks a year around the artist's career year, or "Invalid" for one song in a hundred
+   */
+  private String year(int artist) {
+    if (random.nextInt(100) == 0) {
+      return "Invalid";
+    }
+    // the career year only depends on the seed and the artist, so it is the same for every song
+    int career = FIRST_YEAR + new Random(seed * 31 + artist).nextInt(LAST_YEAR - FIRST_YEAR + 1);
+    long year = Math.round(career + random.nextGaussian() * CAREER_SPREAD);
+    return Long.toString(Math.max(FIRST_YEAR, Math.min(LAST_YEAR, year)));
+  }
+
+  /**
+   * Names an artist. Every other artist is a band, the rest are people, and a number is added once
+   * the combinations run out.
+   */
+  static String artistName(int artist) {
+    int id = artist / 2;
+    String name;
+    int combinations;
+    if (artist % 2 == 0) {
+      combinations = BAND_WORDS.length * WORDS.length;
+      name = "The " + WORDS[id % WORDS.length] + " " + BAND_WORDS[id / WORDS.length
+          % BAND_WORDS.length];
+    } else {
+      combinations = FIRST_NAMES.length * LAST_NAMES.length;
+      name = FIRST_NAMES[id % FIRST_NAMES.length] + " " + LAST_NAMES[id / FIRST_NAMES.length
+          % LAST_NAMES.length];
+    }
+    return id < combinations ? name : name + " " + (id / combinations + 1);
+  }
+
+  /**
+   * Writes the rest of the catalog to file, in the dataitem, Title, Artist and Release-Year schema
+   * of the song list, where unknown years are 0
+   *
+   * @param file where to write the XML
+   * @throws IOException when the file cannot be written
+   */
+  public void writeXML(Path file) throws IOException {
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+      xml.writeStartDocument("UTF-8", "1.0");
+      xml.writeStartElement("root");
+      while (hasNext()) {
+        Song song = next();
+        xml.writeStartElement("dataitem");
+        writeElement(xml, "Title", song.getTitle());
+        writeElement(xml, "Artist", song.getArtist());
+        String year = song.getReleaseYear();
+        writeElement(xml, "Release-Year", year.equals("Invalid") ? "0" : year);
+        xml.writeEndElement();
+      }
+      xml.writeEndElement();
+      xml.writeEndDocument();
+      xml.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not write " + file, e);
+    }
+  }
+
+  private static void writeElement(XMLStreamWriter xml, String name, String text)
+      throws XMLStreamException {
+    xml.writeStartElement(name);
+    xml.writeCharacters(text);
+    xml.writeEndElement();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.out.println("Usage: java CatalogGenerator file count [seed]");
+      return;
+    }
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    new CatalogGenerator(Integer.parseInt(args[1]), seed).writeXML(Path.of(args[0]));
+  }
+}
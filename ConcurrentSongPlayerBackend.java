@@ -0,0 +1,176 @@
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * A SongPlayerBackend that can be shared by many threads. Writers are serialized through the write
+ * mode of a StampedLock. List searches hold the shared read lock, so any number of them run in
+ * parallel. Title lookups first walk the tree under an optimistic read that takes no lock at all,
+ * and fall back to the read lock as soon as a write starts. Each user session should pass its own
+ * QueryContext to the searches instead of setting the backend's shared author filter.
+ */
+public class ConcurrentSongPlayerBackend extends SongPlayerBackend {
+  private final StampedLock lock = new StampedLock();
+
+  ConcurrentSongPlayerBackend() {
+    super();
+  }
+
+  @Override
+  void restore(List<ISong> songsByTitle, Map<Integer, List<ISong>> years,
+      Map<String, List<ISong>> unparsedYears) {
+    write(() -> super.restore(songsByTitle, years, unparsedYears));
+  }
+
+  /**
+   * Sets the shared author filter. Prefer a QueryContext per session, as this filter applies to
+   * every caller that does not pass one.
+   *
+   * @param filterBy the string that the song's Artist names must contain
+   */
+  @Override
+  public void setAuthorFilter(String filterBy) {
+    write(() -> super.setAuthorFilter(filterBy));
+  }
+
+  /**
+   * Returns the shared author filter, null if none is set. The searches without a QueryContext read
+   * the filter through this, so they see the one set last even though the field is not volatile.
+   *
+   * @return the shared author filter
+   */
+  @Override
+  public String getAuthorFilter() {
+    long stamp = lock.tryOptimisticRead();
+    String filter = this.filterBy;
+    if (lock.validate(stamp)) {
+      return filter;
+    }
+    stamp = lock.readLock();
+    try {
+      return this.filterBy;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Resets the shared author filter to null (no filter).
+   */
+  @Override
+  public void resetAuthorFilter() {
+    setAuthorFilter(null);
+  }
+
+  /**
+   * Looks up a song by its exact title. The lookup first walks the tree without a lock, and checks
+   * that no write has started before it follows any node or compares any song it has read, so it
+   * never acts on a half rotated path. Once a write has started it retries under the read lock.
+   *
+   * @param title title of the song
+   * @return the song with that title
+   * @throws NoSuchElementException when the song is not in the playlist
+   */
+  @Override
+  public ISong searchByTitle(String title) {
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0 && RBT instanceof RedBlackTree) {
+      RedBlackTree<ISong> tree = (RedBlackTree<ISong>) RBT;
+      ISong song = optimisticSearch(tree, TitleCollation.exactKey(title), stamp);
+      if (song == null) {
+        song = optimisticSearch(tree, TitleCollation.foldedKey(title), stamp);
+      }
+      if (lock.validate(stamp)) {
+        if (song == null) {
+          throw new NoSuchElementException("the song does not exist!");
+        }
+        return song;
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return super.searchByTitle(title);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Walks tree from the root towards key under the optimistic read stamp. The fields of each node
+   * are read first and only used once validate has confirmed that no write started since stamp.
+   *
+   * @return the song equal to key, or null if there is none or a write started during the walk
+   */
+  private ISong optimisticSearch(RedBlackTree<ISong> tree, Comparable<ISong> key, long stamp) {
+    RedBlackTree.Node<ISong> node = tree.root;
+    int comparisons = 0;
+    try {
+      while (node != null) {
+        ISong song = node.data;
+        RedBlackTree.Node<ISong> left = node.leftChild;
+        RedBlackTree.Node<ISong> right = node.rightChild;
+        if (!lock.validate(stamp)) {
+          return null;
+        }
+        int compare = key.compareTo(song);
+        comparisons++;
+        if (compare == 0) {
+          return song;
+        }
+        node = compare < 0 ? left : right;
+      }
+      return null;
+    } finally {
+      TreeMetrics.comparisons(comparisons);
+    }
+  }
+
+  @Override
+  protected List<ISong> findByYear(String year, String filter) {
+    return read(() -> super.findByYear(year, filter));
+  }
+
+  @Override
+  protected List<ISong> findByYearRange(int startYear, int endYear, String filter) {
+    return read(() -> super.findByYearRange(startYear, endYear, filter));
+  }
+
+  @Override
+  protected List<ISong> findByName(String word, String filter) {
+    return read(() -> super.findByName(word, filter));
+  }
+
+  /**
+   * Runs a change while holding the write lock, which blocks other writers and readers. addSong and
+   * removeSong update the tree and indexes through this.
+   *
+   * @param writer the change to run
+   */
+  @Override
+  void write(Runnable writer) {
+    long stamp = lock.writeLock();
+    try {
+      writer.run();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Runs a search while holding the shared read lock
+   *
+   * @param search the search to run
+   * @return the result of the search
+   */
+  @Override
+  <R> R read(Supplier<R> search) {
+    long stamp = lock.readLock();
+    try {
+      return search.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+}
@@ -0,0 +1,118 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs writers and searchers on one ConcurrentSongPlayerBackend at the same time, and checks that
+ * the tree and the indexes hold exactly the songs the writers left behind
+ */
+public class ConcurrentSongPlayerBackendTest {
+  private static final int WRITERS = 4;
+  private static final int READERS = 4;
+
+  @Test
+  public void parallelAddsRemovesAndSearchesKeepTheTreeValid() throws Exception {
+    ConcurrentSongPlayerBackend backend = new ConcurrentSongPlayerBackend();
+    ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    List<Future<TreeSet<String>>> writers = new ArrayList<>();
+    List<Future<?>> readers = new ArrayList<>();
+    try {
+      for (int writer = 0; writer < WRITERS; writer++) {
+        int seed = writer;
+        writers.add(pool.submit(() -> write(backend, seed)));
+      }
+      for (int reader = 0; reader < READERS; reader++) {
+        int seed = 100 + reader;
+        readers.add(pool.submit(() -> read(backend, seed, writing)));
+      }
+      TreeSet<String> expected = new TreeSet<>();
+      for (Future<TreeSet<String>> writer : writers) {
+        expected.addAll(writer.get(60, TimeUnit.SECONDS));
+      }
+      writing.set(false);
+      for (Future<?> reader : readers) {
+        reader.get(60, TimeUnit.SECONDS);
+      }
+
+      RedBlackTreeTest.assertValid((RedBlackTree<ISong>) backend.RBT);
+      List<String> titles = new ArrayList<>();
+      for (ISong song : backend.RBT) {
+        titles.add(song.getTitle());
+      }
+      assertEquals(new ArrayList<>(expected), titles);
+      backend.resetAuthorFilter();
+      assertEquals(expected.size(), backend.searchByYearRange(1900, 2100).size());
+      assertEquals(expected.size(), backend.searchByName("writer").size());
+      for (String title : expected) {
+        assertEquals(title, backend.searchByTitle(title).getTitle());
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Adds and removes songs whose titles only this writer uses, and returns the titles it left in
+   * the playlist
+   */
+  private static TreeSet<String> write(ConcurrentSongPlayerBackend backend, int writer) {
+    Random random = new Random(writer);
+    TreeSet<String> added = new TreeSet<>();
+    for (int i = 0; i < 5_000; i++) {
+      String title = "Writer " + writer + " song " + random.nextInt(500);
+      if (added.contains(title)) {
+        backend.removeSong(new Song(title, "", ""));
+        added.remove(title);
+      } else {
+        String year = Integer.toString(1950 + random.nextInt(50));
+        backend.addSong(new Song(title, "Artist " + random.nextInt(10), year));
+        added.add(title);
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Searches the playlist while the writers run, checking only what holds whatever they do
+   */
+  private static Void read(ConcurrentSongPlayerBackend backend, int reader, AtomicBoolean writing) {
+    Random random = new Random(reader);
+    QueryContext context = new QueryContext("Artist 3");
+    while (writing.get()) {
+      String year = Integer.toString(1950 + random.nextInt(50));
+      for (ISong song : backend.searchByYear(year, context)) {
+        assertEquals(year, song.getReleaseYear());
+        assertEquals("Artist 3", song.getArtist());
+      }
+      List<ISong> range = backend.searchByYearRange(1960, 1969);
+      for (ISong song : range) {
+        int released = Integer.parseInt(song.getReleaseYear());
+        assertTrue(released >= 1960 && released <= 1969);
+      }
+      for (ISong song : backend.searchByName("song 4")) {
+        assertTrue(song.getTitle().contains("song 4"));
+      }
+      String title = "Writer " + random.nextInt(WRITERS) + " song " + random.nextInt(500);
+      try {
+        assertEquals(title, backend.searchByTitle(title).getTitle());
+      } catch (NoSuchElementException e) {
+        // the song is not in the playlist right now
+      }
+      // the shared filter changes under the searches that do not pass a context
+      backend.setAuthorFilter(random.nextBoolean() ? "Artist" : null);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,296 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A backend whose added and removed songs survive a restart. It wraps a SongPlayerBackend that
+ * holds the playlist as of the last compaction, and records every later addSong and removeSong in
+ * a SongLog. A change is applied in memory and appended to the log while writers are serialized,
+ * so the log lists changes in the order they were applied. The change is then synced outside of
+ * that section. addSong and removeSong only return once their record is on disk, and writers that
+ * sync at the same time share one force of the log file.
+ *
+ * On startup the log is replayed over the wrapped backend. compact saves the playlist as a fresh
+ * SongSnapshot in the base file and empties the log. A crash between those two steps leaves records
+ * in the log that are already part of the base, so replay skips adds of songs that are already
+ * there and removes of songs that are not, which leaves each title as its last record left it.
+ *
+ * Searches go straight to the wrapped backend. Share this backend between threads only if the
+ * wrapped one is a ConcurrentSongPlayerBackend.
+ */
+public class DurableSongPlayerBackend implements ISongPlayerBackend, Closeable {
+  // the log is compacted once it grows past this many bytes
+  private static final long DEFAULT_COMPACTION_THRESHOLD = 16L << 20;
+
+  private final SongPlayerBackend backend;
+  private final SongLog log;
+  private final Path baseFile;
+  private final long compactionThreshold;
+  // serializes changes, so that they reach the log in the order they were applied
+  private final Object writeOrder = new Object();
+  // why the last automatic compaction failed, or null
+  private volatile Exception compactionFailure;
+
+  /**
+   * Replays the log in logFile over backend and opens it for further changes
+   *
+   * @param backend  the playlist as saved in baseFile, or as read from the song list if there is
+   *                 no base file yet
+   * @param logFile  the log of changes made since baseFile was written
+   * @param baseFile where compact saves the playlist, which nothing else may write to, as the
+   *                 changes compacted into it are no longer in the log
+   * @throws IOException when the log cannot be read or written
+   */
+  public DurableSongPlayerBackend(SongPlayerBackend backend, Path logFile, Path baseFile)
+      throws IOException {
+    this(backend, logFile, baseFile, DEFAULT_COMPACTION_THRESHOLD);
+  }
+
+  /**
+   * Same as the three argument constructor, but compacting once the log is longer than
+   * compactionThreshold bytes
+   */
+  public DurableSongPlayerBackend(SongPlayerBackend backend, Path logFile, Path baseFile,
+      long compactionThreshold) throws IOException {
+    this.backend = backend;
+    this.baseFile = baseFile;
+    this.compactionThreshold = compactionThreshold;
+    this.log = SongLog.open(logFile, this::replay);
+  }
+
+  private void replay(SongLog.Operation operation, ISong song) {
+    try {
+      if (operation == SongLog.Operation.ADD) {
+        backend.addSong(song);
+      } else {
+        backend.removeSong(song);
+      }
+    } catch (IllegalArgumentException | NoSuchElementException e) {
+      // the record is already part of the base file
+    }
+  }
+
+  /**
+   * Adds a new song to the song playlist, and returns once the change is on disk
+   *
+   * @param song the song to add
+   * @throws UncheckedIOException when the change could not be logged
+   */
+  @Override
+  public void addSong(ISong song) {
+    long sequence;
+    synchronized (writeOrder) {
+      backend.addSong(song);
+      sequence = log.append(SongLog.Operation.ADD, song);
+    }
+    sync(sequence);
+  }
+
+  /**
+   * Adds a new song like addSong, but returns before the change is on disk, so that a run of adds
+   * can share one force of the log file. Searches see the song at once, but it only survives a
+   * crash once sync has returned.
+   *
+   * @param song the song to add
+   */
+  public void addSongUnsynced(ISong song) {
+    synchronized (writeOrder) {
+      backend.addSong(song);
+      log.append(SongLog.Operation.ADD, song);
+    }
+  }
+
+  /**
+   * Returns once every change made so far is on disk, including those of addSongUnsynced
+   *
+   * @throws UncheckedIOException when the changes could not be logged
+   */
+  public void sync() {
+    try {
+      log.syncAll();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    compactIfLong();
+  }
+
+  /**
+   * Takes songs added with addSongUnsynced back out of the playlist after sync failed for them, so
+   * that searches no longer find songs that were reported as not saved. No remove records are
+   * logged for this: once a sync has failed, SongLog fails every later sync as well, so they could
+   * not be made durable. Records of the failed batch that did reach the disk before the failure are
+   * replayed on the next start, which brings those songs back.
+   *
+   * @param songs the songs whose adds were not synced
+   */
+  public void discardUnsynced(Collection<? extends ISong> songs) {
+    synchronized (writeOrder) {
+      for (ISong song : songs) {
+        backend.removeSong(song);
+      }
+    }
+  }
+
+  /**
+   * Adds many songs at once, and returns once all of them are on disk. The records are synced
+   * together, so they share one force of the log file.
+   *
+   * @param songs the songs to add, in any order
+   * @throws UncheckedIOException when the changes could not be logged
+   */
+  @Override
+  public void addSongs(Collection<? extends ISong> songs) {
+    long sequence = 0;
+    synchronized (writeOrder) {
+      backend.addSongs(songs);
+      for (ISong song : songs) {
+        sequence = log.append(SongLog.Operation.ADD, song);
+      }
+    }
+    sync(sequence);
+  }
+
+  /**
+   * Removes a song from the playlist, and returns once the change is on disk
+   *
+   * @param song the song to remove
+   * @throws UncheckedIOException when the change could not be logged
+   */
+  @Override
+  public void removeSong(ISong song) {
+    long sequence;
+    synchronized (writeOrder) {
+      backend.removeSong(song);
+      sequence = log.append(SongLog.Operation.REMOVE, song);
+    }
+    sync(sequence);
+  }
+
+  private void sync(long sequence) {
+    try {
+      log.sync(sequence);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    compactIfLong();
+  }
+
+  /**
+   * Compacts the log once it is too long. The change that triggered this is already on disk, so a
+   * failed compaction does not fail it: the records stay in the log, the error is kept for
+   * getCompactionFailure and printed once, and the next change tries again.
+   */
+  private void compactIfLong() {
+    if (log.length() > compactionThreshold) {
+      synchronized (writeOrder) {
+        // another writer may have compacted while this one waited
+        if (log.length() > compactionThreshold) {
+          try {
+            compactLog();
+            compactionFailure = null;
+          } catch (IOException | UncheckedIOException e) {
+            if (compactionFailure == null) {
+              System.err.println("Could not compact the song log into " + baseFile
+                  + ", it keeps every change until it can: " + e.getMessage());
+            }
+            compactionFailure = e;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Getter method for the error of the last automatic compaction, if it failed
+   *
+   * @return the error, or null when the last compaction worked or none was needed yet
+   */
+  public Exception getCompactionFailure() {
+    return compactionFailure;
+  }
+
+  /**
+   * Saves the playlist as a fresh base file and empties the log. Changes wait until it is done.
+   *
+   * @throws IOException when the base file or the log cannot be written
+   */
+  public void compact() throws IOException {
+    synchronized (writeOrder) {
+      compactLog();
+    }
+  }
+
+  private void compactLog() throws IOException {
+    log.syncAll();
+    // write only returns once the base file and its rename are on disk, so the records are safe
+    // to drop
+    SongSnapshot.write(backend, baseFile);
+    log.clear();
+  }
+
+  /**
+   * Writes the changes that are still buffered and closes the log
+   *
+   * @throws IOException when the log cannot be written
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (writeOrder) {
+      log.close();
+    }
+  }
+
+  @Override
+  public void setAuthorFilter(String filterBy) {
+    backend.setAuthorFilter(filterBy);
+  }
+
+  @Override
+  public String getAuthorFilter() {
+    return backend.getAuthorFilter();
+  }
+
+  @Override
+  public void resetAuthorFilter() {
+    backend.resetAuthorFilter();
+  }
+
+  @Override
+  public List<ISong> searchByYear(String year) {
+    return backend.searchByYear(year);
+  }
+
+  @Override
+  public List<ISong> searchByYear(String year, QueryContext context) {
+    return backend.searchByYear(year, context);
+  }
+
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear) {
+    return backend.searchByYearRange(startYear, endYear);
+  }
+
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear, QueryContext context) {
+    return backend.searchByYearRange(startYear, endYear, context);
+  }
+
+  @Override
+  public List<ISong> searchByName(String word) {
+    return backend.searchByName(word);
+  }
+
+  @Override
+  public List<ISong> searchByName(String word, QueryContext context) {
+    return backend.searchByName(word, context);
+  }
+
+  @Override
+  public ISong searchByTitle(String title) {
+    return backend.searchByTitle(title);
+  }
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 public interface ISong extends Comparable<ISong> {
 
   int compareTo(ISong song);
@@ -10,6 +12,27 @@ public interface ISong extends Comparable<ISong> {
    */
   String getTitle();
 
+  /**
+   * Get the sort key of this Song object's title, see TitleCollation. Implementations should
+   * compute it once per title, as it is used by every comparison.
+   *
+   * @return return the sort key of the title.
+   */
+  default byte[] getSortKey() {
+    return TitleCollation.sortKey(getTitle());
+  }
+
+  /**
+   * Compare the sort key of this Song object's title with key, byte by byte and unsigned.
+   *
+   * @param key the sort key to compare to
+   * @return a negative number, zero or a positive number as this song's key sorts before, equal to
+   *         or after key.
+   */
+  default int compareSortKeyTo(byte[] key) {
+    return Arrays.compareUnsigned(getSortKey(), key);
+  }
+
   /**
    * Get the release year of this Song object.
    *
@@ -1,4 +1,6 @@
+import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public interface ISongPlayerBackend {
   /**
@@ -8,6 +10,14 @@ public interface ISongPlayerBackend {
    */
   public void addSong(ISong song);
 
+  /**
+   * Adds many songs at once, which is faster than adding them one by one. No song is added when
+   * one of them is rejected.
+   * 
+   * @param songs the songs to add, in any order
+   */
+  public void addSongs(Collection<? extends ISong> songs);
+
   /**
    * Removes a new song to the backend's database and is stored in a Playlist internally.
    * 
@@ -45,16 +55,67 @@ public interface ISongPlayerBackend {
    *             base and return songs that are being released in the given year(and that satisfies
    *             the author filter, if an author filter is set).
    * @param year year of the song that are being released
-   * @return list of songs found by the given year
+   * @return list of songs found by the given year, ordered by title
    */
   public List<ISong> searchByYear(String year);
 
+  /**
+   * Same as searchByYear(year), but filters by the author filter of the given session instead of
+   * the filter set on this backend.
+   * 
+   * @param year    year of the song that are being released
+   * @param context the session whose author filter applies
+   * @return list of songs found by the given year, ordered by title
+   */
+  public List<ISong> searchByYear(String year, QueryContext context);
+
+  /**
+   * Search through all the songs in the year base and return songs released between startYear and
+   * endYear, both inclusive (and that satisfies the author filter, if an author filter is set).
+   * 
+   * @param startYear first release year of the range
+   * @param endYear   last release year of the range
+   * @return list of songs found in the given range of years, ordered by year and then by title
+   */
+  public List<ISong> searchByYearRange(int startYear, int endYear);
+
+  /**
+   * Same as searchByYearRange(startYear, endYear), but filters by the author filter of the given
+   * session instead of the filter set on this backend.
+   * 
+   * @param startYear first release year of the range
+   * @param endYear   last release year of the range
+   * @param context   the session whose author filter applies
+   * @return list of songs found in the given range of years, ordered by year and then by title
+   */
+  public List<ISong> searchByYearRange(int startYear, int endYear, QueryContext context);
+
   /**
    * Search through all the songs in the Name base and return songs whose name contains the string
    * word (and that satisfies the author filter, if an author filter is set).
    * 
    * @param word word that must be contained in a song's name in result set
-   * @return list of songs found by the given year
+   * @return list of songs found by the given word, in title order
+   */
+  public List<ISong> searchByName(String word);
+
+  /**
+   * Same as searchByName(word), but filters by the author filter of the given session instead of
+   * the filter set on this backend.
+   * 
+   * @param word    word that must be contained in a song's name in result set
+   * @param context the session whose author filter applies
+   * @return list of songs found by the given word, in title order
+   */
+  public List<ISong> searchByName(String word, QueryContext context);
+
+  /**
+   * Returns the song whose title is exactly the given title, or else one whose title only differs
+   * from it in case or accents. The author filter is not applied.
+   * 
+   * @param title the title of the song to look up
+   * @return the song with that title
+   * @throws NoSuchElementException when no song has that title
    */
-  public ISong searchByName(String word);
+  public ISong searchByTitle(String title);
 }
\ No newline at end of file
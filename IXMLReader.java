@@ -11,13 +11,14 @@ import java.io.PrintWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.io.FileNotFoundException;
+import java.util.function.Consumer;
 
 public interface IXMLReader {
 
   /**
    * Read the given XML file, extract the attributes of the Song like Title, Release Year, and
    * Artist of the Song, create a Song object with those attributes, and add them to a single
-   * ArrayList.
+   * ArrayList. Records whose title was already read are resolved by the reader's duplicate policy.
    * 
    * @param filePathToCSV The path to the CSV file.
    * 
@@ -26,4 +27,25 @@ public interface IXMLReader {
    * @throws FileNotFoundException.
    */
   ArrayList<Song> readXMLAndCreateSongObject(String filePathToCSV) throws FileNotFoundException;
+
+  /**
+   * Get the number of duplicate records the last call to readXMLAndCreateSongObject dropped or
+   * merged into an earlier record with the same title.
+   * 
+   * @return the number of duplicates found by the last read.
+   */
+  int getDuplicatesDropped();
+
+  /**
+   * Read the given XML file one record at a time and hand each Song object to the consumer as soon
+   * as its dataitem has been parsed. Unlike readXMLAndCreateSongObject, no document tree or list of
+   * songs is held in memory, and no duplicate checking is done.
+   * 
+   * @param filePathToXML The path to the XML file.
+   * @param consumer      Receives every Song in the order it appears in the file.
+   * 
+   * @throws FileNotFoundException.
+   */
+  void readXMLAndStreamSongs(String filePathToXML, Consumer<? super Song> consumer)
+      throws FileNotFoundException;
 }
\ No newline at end of file
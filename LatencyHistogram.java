@@ -0,0 +1,126 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in buckets whose width grows with the latency, so that percentiles from a
+ * nanosecond to days can be read with a relative error of at most 1/16, in a few kilobytes. Values
+ * below 16 have a bucket each. Above that, every power of two is split into 16 equal buckets.
+ * Several threads may record into the same histogram at once.
+ */
+public class LatencyHistogram {
+  // number of buckets every power of two is split into, as a power of two
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  /**
+   * Counts one latency
+   *
+   * @param nanos the latency, in nanoseconds, negative values count as 0
+   */
+  public void record(long nanos) {
+    counts.incrementAndGet(bucket(Math.max(0, nanos)));
+  }
+
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * The largest value that falls into a bucket
+   */
+  private static long highestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+    long subBucket = SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return subBucket * width + width - 1;
+  }
+
+  /**
+   * Adds every latency counted by other to this histogram
+   *
+   * @param other the histogram to add
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long count = other.counts.get(i);
+      if (count != 0) {
+        counts.addAndGet(i, count);
+      }
+    }
+  }
+
+  /**
+   * Forgets every latency counted so far
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+  }
+
+  /**
+   * Getter method for the number of latencies counted
+   *
+   * @return the number of calls to record
+   */
+  public long getCount() {
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Finds the latency below which the given fraction of the counted latencies lie
+   *
+   * @param quantile the fraction, from 0 to 1, for example 0.99 for the 99th percentile
+   * @return the upper end of the bucket holding that latency, or 0 if nothing was counted
+   */
+  public long getPercentile(double quantile) {
+    if (quantile < 0 || quantile > 1)
+      throw new IllegalArgumentException("The quantile has to be between 0 and 1.");
+    long[] snapshot = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return highestValue(i);
+      }
+    }
+    return highestValue(BUCKETS - 1);
+  }
+
+  /**
+   * Getter method for the largest latency counted
+   *
+   * @return the upper end of the highest bucket in use, or 0 if nothing was counted
+   */
+  public long getMax() {
+    for (int i = BUCKETS - 1; i >= 0; i--) {
+      if (counts.get(i) != 0) {
+        return highestValue(i);
+      }
+    }
+    return 0;
+  }
+}
@@ -0,0 +1,392 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Runs a mix of addSong, removeSong, searchByName and searchByYear calls against a thread-safe
+ * backend from many threads at once, and reports the throughput and the 50th, 99th and 99.9th
+ * percentile latency of each kind of call. The backend starts out with a catalog from
+ * CatalogGenerator. Each thread only removes songs it added itself, and adds a song instead when it
+ * has none left, so calls never fail because two threads raced for the same song. Calls made during
+ * the warmup, while the JIT compiles the code, are not counted.
+ *
+ * By default the driver runs a closed loop: each thread makes its next call as soon as the last one
+ * returns. A stall then also holds back the calls that would have been made during it, so the
+ * percentiles are service times only and understate the latency that clients arriving at a steady
+ * rate would see. With --rate the driver runs an open loop instead: the threads share a schedule of
+ * that many calls per second, and each call is timed from the moment it was scheduled, so time
+ * spent waiting behind a stall counts as well. When the backend cannot keep up, the threads work
+ * through the backlog for at most the measured seconds again, and calls they never start are
+ * reported as missed.
+ *
+ * The snapshot backend keeps no year or title index, so each of its name and year searches scans
+ * the whole catalog. Its search latencies grow with --songs, unlike those of the other backends,
+ * and compare lock-free scans with indexed lookups rather than two ways of locking the same work.
+ *
+ * Usage: java LoadTestDriver [--songs 100000] [--threads 4] [--seconds 10] [--warmup 3]
+ * [--mix add=5,remove=5,name=45,year=45] [--backend concurrent|snapshot|durable] [--rate 0]
+ * [--seed 42]
+ */
+public class LoadTestDriver {
+  private static final String USAGE = "Usage: java LoadTestDriver [--songs 100000] [--threads 4]"
+      + " [--seconds 10] [--warmup 3] [--mix add=5,remove=5,name=45,year=45]"
+      + " [--backend concurrent|snapshot|durable] [--rate 0] [--seed 42]";
+
+  /**
+   * The kinds of calls the driver makes
+   */
+  private enum Operation {
+    ADD, REMOVE, NAME, YEAR
+  }
+
+  private static final int FIRST_YEAR = 1950;
+  private static final int LAST_YEAR = 2025;
+
+  private final ISongPlayerBackend backend;
+  private final Map<Operation, Integer> mix;
+  private final int totalWeight;
+  private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+  private final AtomicLong errors = new AtomicLong();
+  // scheduled calls of the open loop that were never started before the driver gave up
+  private final AtomicLong missed = new AtomicLong();
+
+  /**
+   * Prepares a load test against backend
+   *
+   * @param backend a backend that may be called from several threads at once
+   * @param mix     the relative weight of each kind of call
+   */
+  private LoadTestDriver(ISongPlayerBackend backend, Map<Operation, Integer> mix) {
+    this.backend = backend;
+    this.mix = mix;
+    int total = 0;
+    for (int weight : mix.values()) {
+      total += weight;
+    }
+    if (total <= 0)
+      throw new IllegalArgumentException("The mix needs at least one call with a positive weight.");
+    this.totalWeight = total;
+    for (Operation operation : Operation.values()) {
+      latencies.put(operation, new LatencyHistogram());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int songs = 100_000;
+    int threads = 4;
+    int seconds = 10;
+    int warmup = 3;
+    String mix = "add=5,remove=5,name=45,year=45";
+    String backendName = "concurrent";
+    long seed = 42;
+    double rate = 0;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 == args.length)
+        throw new IllegalArgumentException("The option " + args[i] + " needs a value. " + USAGE);
+      switch (args[i]) {
+        case "--songs":
+          songs = Integer.parseInt(args[i + 1]);
+          break;
+        case "--threads":
+          threads = Integer.parseInt(args[i + 1]);
+          break;
+        case "--seconds":
+          seconds = Integer.parseInt(args[i + 1]);
+          break;
+        case "--warmup":
+          warmup = Integer.parseInt(args[i + 1]);
+          break;
+        case "--mix":
+          mix = args[i + 1];
+          break;
+        case "--backend":
+          backendName = args[i + 1];
+          break;
+        case "--rate":
+          rate = Double.parseDouble(args[i + 1]);
+          if (rate < 0)
+            throw new IllegalArgumentException("The rate cannot be negative. " + USAGE);
+          break;
+        case "--seed":
+          seed = Long.parseLong(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i] + ". " + USAGE);
+      }
+    }
+
+    List<Song> catalog = new ArrayList<>(songs);
+    new CatalogGenerator(songs, seed).forEachRemaining(catalog::add);
+    Path directory = null;
+    ISongPlayerBackend backend;
+    switch (backendName) {
+      case "concurrent":
+        ConcurrentSongPlayerBackend concurrent = new ConcurrentSongPlayerBackend();
+        concurrent.addSongs(catalog);
+        SongPlayerMetrics.register(concurrent);
+        backend = concurrent;
+        break;
+      case "snapshot":
+        System.err.println("The snapshot backend has no year or title index, so every name and"
+            + " year search scans all " + songs + " songs.");
+        backend = new SnapshotSongPlayerBackend();
+        backend.addSongs(catalog);
+        break;
+      case "durable":
+        directory = Files.createTempDirectory("load-test");
+        SongPlayerBackend wrapped = new ConcurrentSongPlayerBackend();
+        wrapped.addSongs(catalog);
+        SongPlayerMetrics.register(wrapped);
+        backend = new DurableSongPlayerBackend(wrapped, directory.resolve("songs.log"),
+            directory.resolve("songs.snapshot"));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown backend " + backendName);
+    }
+    catalog = null;
+
+    try {
+      LoadTestDriver driver = new LoadTestDriver(backend, parseMix(mix));
+      driver.run(threads, warmup, seconds, rate);
+      driver.report(seconds, rate);
+    } finally {
+      if (directory != null) {
+        ((DurableSongPlayerBackend) backend).close();
+        try (Stream<Path> files = Files.list(directory)) {
+          for (Path file : (Iterable<Path>) files::iterator) {
+            Files.delete(file);
+          }
+        }
+        Files.delete(directory);
+      }
+    }
+  }
+
+  /**
+   * Reads a mix such as add=5,remove=5,name=45,year=45. Calls that are left out are not made.
+   */
+  private static Map<Operation, Integer> parseMix(String text) {
+    Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+    for (String part : text.split(",")) {
+      String[] entry = part.split("=");
+      if (entry.length != 2)
+        throw new IllegalArgumentException("Expected call=weight in the mix, but found " + part);
+      int weight = Integer.parseInt(entry[1].trim());
+      if (weight < 0)
+        throw new IllegalArgumentException("The weight of " + entry[0] + " cannot be negative.");
+      mix.put(Operation.valueOf(entry[0].trim().toUpperCase(Locale.ROOT)), weight);
+    }
+    return mix;
+  }
+
+  /**
+   * Starts the threads, lets them call the backend for the warmup and then the measured seconds,
+   * and waits for them to finish
+   *
+   * @param rate the calls per second of all threads together, or 0 for a closed loop
+   */
+  private void run(int threads, int warmupSeconds, int seconds, double rate)
+      throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    long begin = System.nanoTime() + 100_000_000L; // leaves time for every thread to start
+    long measureFrom = begin + warmupSeconds * 1_000_000_000L;
+    long end = measureFrom + seconds * 1_000_000_000L;
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      int id = i;
+      Thread worker = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        if (rate > 0) {
+          // each thread takes every threads-th slot of the shared schedule
+          double interval = 1e9 * threads / rate;
+          long first = begin + (long) (interval * id / threads);
+          workOpenLoop(id, first, interval, measureFrom, end, end + (end - measureFrom));
+        } else {
+          work(id, measureFrom, end);
+        }
+      }, "load-" + i);
+      worker.start();
+      workers.add(worker);
+    }
+    while (System.nanoTime() < begin) {
+      Thread.sleep(1);
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+  }
+
+  /**
+   * Calls the backend until end, each call as soon as the last one returned, counting the latency
+   * of calls made after measureFrom
+   */
+  private void work(int id, long measureFrom, long end) {
+    Caller caller = new Caller(id);
+    long now = System.nanoTime();
+    while (now < end) {
+      Operation operation = caller.prepare();
+      long start = System.nanoTime();
+      caller.call(operation);
+      now = System.nanoTime();
+      if (start >= measureFrom && now < end) {
+        latencies.get(operation).record(now - start);
+      }
+    }
+  }
+
+  /**
+   * Makes one call every interval nanoseconds from first on, until the calls scheduled before end
+   * are done or giveUp has passed, counting the latency of calls scheduled after measureFrom from
+   * their scheduled start
+   */
+  private void workOpenLoop(int id, long first, double interval, long measureFrom, long end,
+      long giveUp) {
+    Caller caller = new Caller(id);
+    for (long call = 0;; call++) {
+      long scheduled = first + (long) (interval * call);
+      if (scheduled >= end) {
+        return;
+      }
+      long now = System.nanoTime();
+      if (now >= giveUp) {
+        // the calls from this one up to end were never started
+        long left = (long) Math.ceil((end - scheduled) / interval);
+        if (scheduled < measureFrom) {
+          left -= (long) Math.ceil((measureFrom - scheduled) / interval);
+        }
+        missed.addAndGet(Math.max(0, left));
+        return;
+      }
+      while (now < scheduled) {
+        LockSupport.parkNanos(scheduled - now);
+        now = System.nanoTime();
+      }
+      Operation operation = caller.prepare();
+      caller.call(operation);
+      if (scheduled >= measureFrom) {
+        latencies.get(operation).record(System.nanoTime() - scheduled);
+      }
+    }
+  }
+
+  /**
+   * Picks the calls of one thread and makes them. Each thread only removes songs it added itself.
+   */
+  private class Caller {
+    private final int id;
+    private final ThreadLocalRandom random = ThreadLocalRandom.current();
+    private final ArrayDeque<ISong> added = new ArrayDeque<>();
+    private long nextTitle = 0;
+    // the arguments of the prepared call
+    private ISong song;
+    private String word;
+    private String year;
+
+    Caller(int id) {
+      this.id = id;
+    }
+
+    /**
+     * Picks the next call and its arguments, which is not part of the time the call takes
+     */
+    Operation prepare() {
+      Operation operation = pick(random.nextInt(totalWeight));
+      if (operation == Operation.REMOVE && added.isEmpty()) {
+        operation = Operation.ADD;
+      }
+      song = null;
+      if (operation == Operation.ADD) {
+        song = new Song("Load " + id + "-" + nextTitle++, CatalogGenerator.artistName(
+            random.nextInt(1000)), Integer.toString(random.nextInt(FIRST_YEAR, LAST_YEAR + 1)));
+      } else if (operation == Operation.REMOVE) {
+        song = added.poll();
+      }
+      word = CatalogGenerator.WORDS[random.nextInt(CatalogGenerator.WORDS.length)];
+      year = Integer.toString(random.nextInt(FIRST_YEAR, LAST_YEAR + 1));
+      return operation;
+    }
+
+    /**
+     * Makes the prepared call
+     */
+    void call(Operation operation) {
+      try {
+        switch (operation) {
+          case ADD:
+            backend.addSong(song);
+            added.add(song);
+            break;
+          case REMOVE:
+            backend.removeSong(song);
+            break;
+          case NAME:
+            backend.searchByName(word);
+            break;
+          default:
+            backend.searchByYear(year);
+            break;
+        }
+      } catch (RuntimeException e) {
+        errors.incrementAndGet();
+      }
+    }
+  }
+
+  private Operation pick(int ticket) {
+    for (Map.Entry<Operation, Integer> entry : mix.entrySet()) {
+      ticket -= entry.getValue();
+      if (ticket < 0) {
+        return entry.getKey();
+      }
+    }
+    throw new IllegalStateException("The ticket lies outside of the mix.");
+  }
+
+  private void report(int seconds, double rate) {
+    if (rate > 0) {
+      System.out.printf("Open loop at %.0f calls/s, latency from the scheduled start%n", rate);
+    } else {
+      System.out.println("Closed loop, latency is service time only");
+    }
+    System.out.printf("%-8s %12s %12s %10s %10s %10s %10s%n", "call", "count", "calls/s",
+        "p50 us", "p99 us", "p999 us", "max us");
+    LatencyHistogram all = new LatencyHistogram();
+    for (Operation operation : Operation.values()) {
+      LatencyHistogram histogram = latencies.get(operation);
+      if (histogram.getCount() > 0) {
+        print(operation.name().toLowerCase(Locale.ROOT), histogram, seconds);
+        all.add(histogram);
+      }
+    }
+    print("all", all, seconds);
+    if (errors.get() > 0) {
+      System.out.println(errors.get() + " calls failed");
+    }
+    if (missed.get() > 0) {
+      System.out.println(missed.get() + " scheduled calls were missed, and are not in the"
+          + " percentiles, as the backend fell too far behind");
+    }
+  }
+
+  private static void print(String name, LatencyHistogram histogram, int seconds) {
+    System.out.printf("%-8s %12d %12.0f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+        (double) histogram.getCount() / Math.max(1, seconds), histogram.getPercentile(0.5) / 1e3,
+        histogram.getPercentile(0.99) / 1e3, histogram.getPercentile(0.999) / 1e3,
+        histogram.getMax() / 1e3);
+  }
+}
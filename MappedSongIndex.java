@@ -0,0 +1,477 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A read-only sorted collection of songs that stays on disk. The songs are kept in a file sorted in
+ * TitleCollation order, which is mapped into memory instead of being read onto the heap. The file
+ * holds, after its magic number and song count:
+ * - a table with the int position of every record, so the i-th song is found without a scan
+ * - the records, each the song's sort key, title, artist and release year as UTF-8 strings that
+ *   are preceded by their lengths
+ * Lookups binary search the table and compare sort keys right in the mapped bytes, so they copy
+ * nothing until the matching title has to be decoded. The songs handed out are MappedSong views
+ * that decode their fields from the mapping when asked. Only the pages that are touched are read
+ * from disk, and the operating system can drop them again when memory is tight. The file is limited
+ * to 2 GB.
+ */
+public class MappedSongIndex implements SortedCollectionInterface<ISong> {
+  private static final int MAGIC = 0x53495831; // "SIX1"
+  // magic number and song count
+  private static final int HEADER_LENGTH = 8;
+
+  private final MappedByteBuffer buffer;
+  private final int size;
+
+  private MappedSongIndex(MappedByteBuffer buffer, int size) {
+    this.buffer = buffer;
+    this.size = size;
+  }
+
+  /**
+   * Maps an index file written by write
+   *
+   * @param file the index file
+   * @return the index
+   * @throws IOException when the file cannot be read or is not a song index
+   */
+  public static MappedSongIndex open(Path file) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC)
+      throw new IOException(file + " is not a song index.");
+    int size = buffer.getInt(4);
+    if (size < 0 || HEADER_LENGTH + 4L * size > buffer.capacity())
+      throw new IOException(file + " is truncated or corrupt.");
+    return new MappedSongIndex(buffer, size);
+  }
+
+  /**
+   * Writes songs to an index file, sorted in TitleCollation order
+   *
+   * @param songs the songs to write, in any order
+   * @param file  where to write the index
+   * @throws IOException              when the file cannot be written
+   * @throws IllegalArgumentException when two songs have the same title
+   */
+  public static void write(Collection<? extends ISong> songs, Path file) throws IOException {
+    List<ISong> sorted = new ArrayList<>(songs);
+    sorted.sort(TitleCollation::compare);
+    List<byte[][]> records = new ArrayList<>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      ISong song = sorted.get(i);
+      if (i > 0 && TitleCollation.compare(sorted.get(i - 1), song) == 0)
+        throw new IllegalArgumentException("Two songs are titled " + song.getTitle() + ".");
+      records.add(new byte[][] {song.getSortKey(), utf8(song.getTitle()), utf8(song.getArtist()),
+          utf8(song.getReleaseYear())});
+    }
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(records.size());
+      long position = HEADER_LENGTH + 4L * records.size();
+      for (byte[][] fields : records) {
+        if (position > Integer.MAX_VALUE)
+          throw new IOException("The songs do not fit in a 2 GB index.");
+        out.writeInt((int) position);
+        for (byte[] field : fields) {
+          position += 4 + field.length;
+        }
+      }
+      for (byte[][] fields : records) {
+        for (byte[] field : fields) {
+          out.writeInt(field.length);
+          out.write(field);
+        }
+      }
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public boolean insert(ISong data) {
+    throw new UnsupportedOperationException("This MappedSongIndex is read-only.");
+  }
+
+  @Override
+  public ISong remove(ISong data) {
+    throw new UnsupportedOperationException("This MappedSongIndex is read-only.");
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean contains(ISong data) {
+    if (data == null)
+      throw new NullPointerException("This MappedSongIndex cannot store null references.");
+    return indexOf(data) >= 0;
+  }
+
+  @Override
+  public ISong search(ISong data) {
+    if (data == null)
+      throw new NullPointerException("This MappedSongIndex cannot store null references.");
+    int index = indexOf(data);
+    if (index < 0)
+      throw new NoSuchElementException("This MappedSongIndex does not contain that value.");
+    return new MappedSong(index);
+  }
+
+  @Override
+  public ISong searchByKey(Comparable<? super ISong> key) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int compare = key.compareTo(new MappedSong(middle));
+      if (compare == 0) {
+        return new MappedSong(middle);
+      } else if (compare < 0) {
+        high = middle - 1;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public ISong floor(ISong data) {
+    return songAt(rankOf(data, true) - 1);
+  }
+
+  @Override
+  public ISong ceiling(ISong data) {
+    return songAt(rankOf(data, false));
+  }
+
+  @Override
+  public ISong higher(ISong data) {
+    return songAt(rankOf(data, true));
+  }
+
+  @Override
+  public ISong lower(ISong data) {
+    return songAt(rankOf(data, false) - 1);
+  }
+
+  @Override
+  public int rank(ISong data) {
+    return rankOf(data, false);
+  }
+
+  @Override
+  public ISong select(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+    return new MappedSong(index);
+  }
+
+  @Override
+  public Iterator<ISong> iterator() {
+    return new IndexIterator(0);
+  }
+
+  @Override
+  public Iterator<ISong> iteratorFrom(ISong data) {
+    return new IndexIterator(rankOf(data, false));
+  }
+
+  @Override
+  public Spliterator<ISong> spliterator() {
+    return new IndexSpliterator(0, size);
+  }
+
+  private ISong songAt(int index) {
+    return index < 0 || index >= size ? null : new MappedSong(index);
+  }
+
+  private int indexOf(ISong data) {
+    int index = rankOf(data, false);
+    return index < size && compareAt(data, index) == 0 ? index : -1;
+  }
+
+  /**
+   * Counts the songs that sort before data, or that sort before or equal to it
+   *
+   * @param data      the song to rank
+   * @param inclusive whether songs equal to data are counted
+   * @return the number of songs counted
+   */
+  private int rankOf(ISong data, boolean inclusive) {
+    if (data == null)
+      throw new NullPointerException("This MappedSongIndex cannot store null references.");
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      int compare = compareAt(data, middle);
+      if (compare > 0 || (inclusive && compare == 0)) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Compares data with the song at index. The sort keys are compared in the mapped bytes, and only
+   * songs with equal sort keys have their title decoded.
+   */
+  private int compareAt(ISong data, int index) {
+    int order = compareSortKey(data.getSortKey(), recordStart(index));
+    return order != 0 ? order : data.getTitle().compareTo(field(index, 1));
+  }
+
+  private int compareSortKey(byte[] key, int position) {
+    int length = buffer.getInt(position);
+    int common = Math.min(key.length, length);
+    for (int i = 0; i < common; i++) {
+      int order = Byte.compareUnsigned(key[i], buffer.get(position + 4 + i));
+      if (order != 0) {
+        return order;
+      }
+    }
+    return key.length - length;
+  }
+
+  private int recordStart(int index) {
+    return buffer.getInt(HEADER_LENGTH + 4 * index);
+  }
+
+  /**
+   * Finds the position of a field of a record
+   *
+   * @param index the song's position in sorted order
+   * @param field 0 for the sort key, 1 for the title, 2 for the artist and 3 for the release year
+   * @return the position of the field's length, which is followed by its bytes
+   */
+  private int fieldStart(int index, int field) {
+    int position = recordStart(index);
+    for (int i = 0; i < field; i++) {
+      position += 4 + buffer.getInt(position);
+    }
+    return position;
+  }
+
+  private String field(int index, int field) {
+    int position = fieldStart(index, field);
+    byte[] bytes = new byte[buffer.getInt(position)];
+    buffer.get(position + 4, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks whether the sort key of the song at index contains the given bytes, without copying it
+   *
+   * @param index the song's position in sorted order
+   * @param text  UTF-8 bytes of normalized text, see TitleCollation.normalize
+   * @return true if the sort key contains text
+   */
+  private boolean sortKeyContains(int index, byte[] text) {
+    int position = recordStart(index);
+    int start = position + 4;
+    int last = start + buffer.getInt(position) - text.length;
+    for (int i = start; i <= last; i++) {
+      int j = 0;
+      while (j < text.length && buffer.get(i + j) == text[j]) {
+        j++;
+      }
+      if (j == text.length) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A song read from the index. It holds only its position, and decodes each field from the mapped
+   * file when it is asked for. The index is read-only, so the setters throw.
+   */
+  class MappedSong implements ISong {
+    private final int index;
+
+    MappedSong(int index) {
+      this.index = index;
+    }
+
+    /**
+     * Checks whether the normalized title of this song contains the given bytes
+     *
+     * @param text UTF-8 bytes of normalized text, see TitleCollation.normalize
+     * @return true if the title contains text
+     */
+    boolean titleContains(byte[] text) {
+      return sortKeyContains(index, text);
+    }
+
+    @Override
+    public String getTitle() {
+      return field(index, 1);
+    }
+
+    @Override
+    public String getArtist() {
+      return field(index, 2);
+    }
+
+    @Override
+    public String getReleaseYear() {
+      return field(index, 3);
+    }
+
+    @Override
+    public byte[] getSortKey() {
+      int position = fieldStart(index, 0);
+      byte[] key = new byte[buffer.getInt(position)];
+      buffer.get(position + 4, key);
+      return key;
+    }
+
+    @Override
+    public int compareTo(ISong song) {
+      if (song instanceof MappedSong && ((MappedSong) song).owner() == MappedSongIndex.this) {
+        return Integer.compare(index, ((MappedSong) song).index);
+      }
+      return -compareAt(song, index);
+    }
+
+    @Override
+    public void setTitle(String title) {
+      throw new UnsupportedOperationException("This MappedSongIndex is read-only.");
+    }
+
+    @Override
+    public void setReleaseYear(String releaseYear) {
+      throw new UnsupportedOperationException("This MappedSongIndex is read-only.");
+    }
+
+    @Override
+    public void setArtist(String artist) {
+      throw new UnsupportedOperationException("This MappedSongIndex is read-only.");
+    }
+
+    private MappedSongIndex owner() {
+      return MappedSongIndex.this;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof MappedSong && ((MappedSong) other).owner() == owner()
+          && ((MappedSong) other).index == index;
+    }
+
+    @Override
+    public int hashCode() {
+      return index;
+    }
+
+    @Override
+    public String toString() {
+      return getTitle();
+    }
+  }
+
+  /**
+   * Walks the songs in sorted order from a starting position
+   */
+  private class IndexIterator implements Iterator<ISong> {
+    private int next;
+
+    IndexIterator(int next) {
+      this.next = next;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public ISong next() {
+      if (next >= size)
+        throw new NoSuchElementException("There are no more elements in the index");
+      return new MappedSong(next++);
+    }
+  }
+
+  /**
+   * Covers a range of positions, and splits it in half for parallel streams
+   */
+  private class IndexSpliterator implements Spliterator<ISong> {
+    private int from;
+    private final int to;
+
+    IndexSpliterator(int from, int to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super ISong> action) {
+      if (from >= to) {
+        return false;
+      }
+      action.accept(new MappedSong(from++));
+      return true;
+    }
+
+    @Override
+    public Spliterator<ISong> trySplit() {
+      int middle = (from + to) >>> 1;
+      if (middle <= from) {
+        return null;
+      }
+      Spliterator<ISong> prefix = new IndexSpliterator(from, middle);
+      from = middle;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | SORTED | DISTINCT | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    @Override
+    public Comparator<? super ISong> getComparator() {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Writes playlists to a MappedSongIndex and checks that the index, and a MappedSongPlayerBackend
+ * over it, find the same songs as a SongPlayerBackend holding the same playlist
+ */
+public class MappedSongIndexTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  public void emptyIndexHoldsNothing() throws IOException {
+    MappedSongIndex index = writeAndOpen(new ArrayList<>());
+    assertTrue(index.isEmpty());
+    assertFalse(index.iterator().hasNext());
+    assertNull(index.ceiling(new Song("anything", "", "")));
+    assertFalse(index.contains(new Song("anything", "", "")));
+    MappedSongPlayerBackend backend = new MappedSongPlayerBackend(index);
+    assertTrue(backend.searchByYear("1970").isEmpty());
+    assertTrue(backend.searchByName("a").isEmpty());
+    assertThrows(NoSuchElementException.class, () -> backend.searchByTitle("anything"));
+  }
+
+  @Test
+  public void singleSongRoundTrips() throws IOException {
+    List<Song> songs = new ArrayList<>();
+    songs.add(new Song("Only Song", "Only Artist", "1999"));
+    MappedSongIndex index = writeAndOpen(songs);
+    assertEquals(1, index.size());
+    ISong song = index.select(0);
+    assertEquals("Only Song", song.getTitle());
+    assertEquals("Only Artist", song.getArtist());
+    assertEquals("1999", song.getReleaseYear());
+    assertEquals(0, index.rank(songs.get(0)));
+    assertNull(index.higher(songs.get(0)));
+    assertNull(index.lower(songs.get(0)));
+    MappedSongPlayerBackend backend = new MappedSongPlayerBackend(index);
+    assertEquals("Only Song", backend.searchByTitle("only song").getTitle());
+    assertEquals(List.of("Only Song"), titles(backend.searchByYear("1999")));
+  }
+
+  @Test
+  public void manySongsMatchTheIndexedBackend() throws IOException {
+    Random random = new Random(17);
+    List<Song> songs = new ArrayList<>();
+    SongPlayerBackend expected = new SongPlayerBackend();
+    for (int i = 0; i < 2_000; i++) {
+      String year =
+          random.nextInt(40) == 0 ? "Invalid" : Integer.toString(1960 + random.nextInt(30));
+      Song song =
+          new Song("Song " + random.nextInt(1_000_000) + " " + i, "Artist " + (i % 13), year);
+      songs.add(song);
+      expected.addSong(song);
+    }
+    MappedSongIndex index = writeAndOpen(songs);
+    MappedSongPlayerBackend mapped = new MappedSongPlayerBackend(index);
+    assertEquals(songs.size(), index.size());
+
+    List<String> sorted = new ArrayList<>();
+    for (ISong song : expected.RBT) {
+      sorted.add(song.getTitle());
+    }
+    List<String> stored = new ArrayList<>();
+    for (Iterator<ISong> all = index.iterator(); all.hasNext();) {
+      stored.add(all.next().getTitle());
+    }
+    assertEquals(sorted, stored);
+
+    for (Song song : songs) {
+      assertTrue(index.contains(song));
+      assertEquals(song.getTitle(), index.search(song).getTitle());
+      assertEquals(song.getArtist(), mapped.searchByTitle(song.getTitle()).getArtist());
+      assertEquals(song.getTitle(), index.select(index.rank(song)).getTitle());
+    }
+    assertThrows(NoSuchElementException.class, () -> mapped.searchByTitle("missing"));
+
+    for (int year = 1960; year < 1990; year++) {
+      String text = Integer.toString(year);
+      assertEquals(titles(expected.searchByYear(text)), titles(mapped.searchByYear(text)));
+    }
+    assertEquals(titles(expected.searchByYear("Invalid")), titles(mapped.searchByYear("Invalid")));
+    assertEquals(titles(expected.searchByYearRange(1965, 1975)),
+        titles(mapped.searchByYearRange(1965, 1975)));
+    QueryContext context = new QueryContext("Artist 4");
+    assertEquals(titles(expected.searchByYearRange(1960, 1989, context)),
+        titles(mapped.searchByYearRange(1960, 1989, context)));
+    assertEquals(titles(expected.searchByName("song 12")), titles(mapped.searchByName("song 12")));
+  }
+
+  @Test
+  public void writesAreRejected() throws IOException {
+    List<Song> songs = new ArrayList<>();
+    songs.add(new Song("Read Only", "Artist", "2001"));
+    MappedSongIndex index = writeAndOpen(songs);
+    Song other = new Song("Other", "Artist", "2002");
+    assertThrows(UnsupportedOperationException.class, () -> index.insert(other));
+    assertThrows(UnsupportedOperationException.class, () -> index.remove(songs.get(0)));
+    MappedSongPlayerBackend backend = new MappedSongPlayerBackend(index);
+    assertThrows(UnsupportedOperationException.class, () -> backend.addSong(other));
+    assertThrows(UnsupportedOperationException.class, () -> backend.addSongs(List.of(other)));
+    assertThrows(UnsupportedOperationException.class, () -> backend.removeSong(songs.get(0)));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void duplicateTitlesAndForeignFilesAreRejected() throws IOException {
+    List<Song> songs = new ArrayList<>();
+    songs.add(new Song("Twice", "One", "1990"));
+    songs.add(new Song("Twice", "Two", "1991"));
+    assertThrows(IllegalArgumentException.class,
+        () -> MappedSongIndex.write(songs, directory.resolve("duplicates.idx")));
+    Path foreign = directory.resolve("foreign.idx");
+    Files.write(foreign, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    assertThrows(IOException.class, () -> MappedSongIndex.open(foreign));
+  }
+
+  private MappedSongIndex writeAndOpen(List<Song> songs) throws IOException {
+    Path file = directory.resolve("songs.idx");
+    MappedSongIndex.write(songs, file);
+    return MappedSongIndex.open(file);
+  }
+
+  private static List<String> titles(List<ISong> songs) {
+    List<String> titles = new ArrayList<>();
+    for (ISong song : songs) {
+      titles.add(song.getTitle());
+    }
+    return titles;
+  }
+}
@@ -0,0 +1,154 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A read-only backend for playlists too large to keep on the heap. The songs stay in a
+ * MappedSongIndex on disk. Title lookups binary search the index, while year and name searches
+ * scan it, in parallel for large playlists. Name searches match the normalized title against the
+ * sort key bytes in the mapped file, so only the songs they return have their title decoded. Adding
+ * and removing songs is not supported.
+ */
+public class MappedSongPlayerBackend implements ISongPlayerBackend {
+  // playlists smaller than this are scanned on the calling thread
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  private final MappedSongIndex songs;
+  private volatile String filterBy;
+
+  MappedSongPlayerBackend(MappedSongIndex songs) {
+    this.songs = songs;
+  }
+
+  @Override
+  public void addSong(ISong song) {
+    throw new UnsupportedOperationException("This playlist is read-only.");
+  }
+
+  @Override
+  public void addSongs(Collection<? extends ISong> songs) {
+    throw new UnsupportedOperationException("This playlist is read-only.");
+  }
+
+  @Override
+  public void removeSong(ISong song) {
+    throw new UnsupportedOperationException("This playlist is read-only.");
+  }
+
+  @Override
+  public void setAuthorFilter(String filterBy) {
+    this.filterBy = filterBy;
+  }
+
+  @Override
+  public String getAuthorFilter() {
+    return this.filterBy;
+  }
+
+  @Override
+  public void resetAuthorFilter() {
+    this.filterBy = null;
+  }
+
+  @Override
+  public List<ISong> searchByYear(String year) {
+    return scanByYear(year, filterBy);
+  }
+
+  @Override
+  public List<ISong> searchByYear(String year, QueryContext context) {
+    return scanByYear(year, context.getAuthorFilter());
+  }
+
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear) {
+    return scanByYearRange(startYear, endYear, filterBy);
+  }
+
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear, QueryContext context) {
+    return scanByYearRange(startYear, endYear, context.getAuthorFilter());
+  }
+
+  @Override
+  public List<ISong> searchByName(String word) {
+    return scanByName(word, filterBy);
+  }
+
+  @Override
+  public List<ISong> searchByName(String word, QueryContext context) {
+    return scanByName(word, context.getAuthorFilter());
+  }
+
+  /**
+   * Returns the song whose title is exactly the given title, or else a song whose title only
+   * differs from it in case or accents, without applying the author filter
+   *
+   * @param title title of the song
+   * @return the song with that title
+   * @throws NoSuchElementException when the song is not in the playlist
+   */
+  @Override
+  public ISong searchByTitle(String title) {
+    ISong song = songs.searchByKey(TitleCollation.exactKey(title));
+    if (song == null) {
+      song = songs.searchByKey(TitleCollation.foldedKey(title));
+    }
+    if (song == null) {
+      throw new NoSuchElementException("the song does not exist!");
+    }
+    return song;
+  }
+
+  private List<ISong> scanByName(String word, String filter) {
+    byte[] text = TitleCollation.normalize(word).getBytes(StandardCharsets.UTF_8);
+    return scan(song -> ((MappedSongIndex.MappedSong) song).titleContains(text), filter);
+  }
+
+  private List<ISong> scanByYear(String year, String filter) {
+    String text = year.trim();
+    Integer key = SongPlayerBackend.parseYear(text);
+    if (key == null) {
+      return scan(song -> song.getReleaseYear().trim().equals(text), filter);
+    }
+    return scan(song -> key.equals(SongPlayerBackend.parseYear(song.getReleaseYear())), filter);
+  }
+
+  private List<ISong> scanByYearRange(int startYear, int endYear, String filter) {
+    if (startYear > endYear) {
+      throw new IllegalArgumentException("the start year is after the end year!");
+    }
+    List<ISong> result = scan(song -> {
+      Integer year = SongPlayerBackend.parseYear(song.getReleaseYear());
+      return year != null && year >= startYear && year <= endYear;
+    }, filter);
+    // the sort is stable, so songs of the same year stay in title order
+    result.sort(Comparator.comparing(song -> SongPlayerBackend.parseYear(song.getReleaseYear())));
+    return result;
+  }
+
+  /**
+   * Scans the index for the songs that match and satisfy the author filter
+   *
+   * @param matches the search condition
+   * @param filter  the author filter, or null for none
+   * @return the matching songs, in title order
+   */
+  private List<ISong> scan(Predicate<ISong> matches, String filter) {
+    Stream<ISong> stream = songs.stream();
+    if (songs.size() >= PARALLEL_THRESHOLD) {
+      stream = stream.parallel();
+    }
+    Predicate<ISong> condition = matches;
+    if (filter != null) {
+      String artist = filter.trim();
+      condition = condition.and(song -> song.getArtist().contains(artist));
+    }
+    return stream.filter(condition).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,125 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An inverted index that answers "which keys contain this substring" without looking at every key.
+ * Each key is broken into its overlapping grams of a fixed length, and every gram points to the
+ * keys it occurs in. A query only has to check the keys listed under its rarest gram. Several
+ * values can share one key, for example all the songs of one artist.
+ *
+ * @param <V> the type of the values stored under each key
+ */
+public class NGramIndex<V> {
+  private final int gramLength;
+  private final HashMap<String, Set<V>> valuesByKey = new HashMap<>();
+  private final HashMap<String, Set<String>> keysByGram = new HashMap<>();
+
+  public NGramIndex(int gramLength) {
+    if (gramLength < 1)
+      throw new IllegalArgumentException("The gram length must be at least 1.");
+    this.gramLength = gramLength;
+  }
+
+  /**
+   * Stores value under key
+   *
+   * @param key   the text that queries are matched against
+   * @param value the value to return for matching queries
+   */
+  public void add(String key, V value) {
+    Set<V> values = valuesByKey.get(key);
+    if (values == null) {
+      values = new HashSet<>();
+      valuesByKey.put(key, values);
+      for (int i = 0; i + gramLength <= key.length(); i++) {
+        keysByGram.computeIfAbsent(key.substring(i, i + gramLength), g -> new HashSet<>()).add(key);
+      }
+    }
+    values.add(value);
+  }
+
+  /**
+   * Removes value from key, and drops key from the index once it has no values left
+   *
+   * @param key   the key value was stored under
+   * @param value the value to remove
+   */
+  public void remove(String key, V value) {
+    Set<V> values = valuesByKey.get(key);
+    if (values == null || !values.remove(value) || !values.isEmpty()) {
+      return;
+    }
+    valuesByKey.remove(key);
+    for (int i = 0; i + gramLength <= key.length(); i++) {
+      String gram = key.substring(i, i + gramLength);
+      Set<String> keys = keysByGram.get(gram);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          keysByGram.remove(gram);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds every key that contains text. Texts shorter than the gram length cannot be looked up by
+   * gram, so they are checked against the distinct keys instead of against every value.
+   *
+   * @param text the substring to look for
+   * @return the keys that contain text
+   */
+  public Set<String> keysContaining(String text) {
+    if (text.length() < gramLength) {
+      return matching(valuesByKey.keySet(), text);
+    }
+    Set<String> smallest = null;
+    for (int i = 0; i + gramLength <= text.length(); i++) {
+      Set<String> keys = keysByGram.get(text.substring(i, i + gramLength));
+      if (keys == null) {
+        return Collections.emptySet();
+      }
+      if (smallest == null || keys.size() < smallest.size()) {
+        smallest = keys;
+      }
+    }
+    return matching(smallest, text);
+  }
+
+  /**
+   * Finds every value whose key contains text
+   *
+   * @param text the substring to look for
+   * @return the values stored under keys that contain text
+   */
+  public Set<V> valuesContaining(String text) {
+    Set<V> result = new HashSet<>();
+    for (String key : keysContaining(text)) {
+      result.addAll(valuesByKey.get(key));
+    }
+    return result;
+  }
+
+  /**
+   * Getter method for the values stored under exactly key
+   *
+   * @param key the key to look up
+   * @return the values stored under key, empty if there are none
+   */
+  public Set<V> get(String key) {
+    Set<V> values = valuesByKey.get(key);
+    return values == null ? Collections.emptySet() : Collections.unmodifiableSet(values);
+  }
+
+  private static Set<String> matching(Set<String> keys, String text) {
+    Set<String> result = new HashSet<>();
+    for (String key : keys) {
+      if (key.contains(text)) {
+        result.add(key);
+      }
+    }
+    return result;
+  }
+}
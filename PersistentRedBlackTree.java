@@ -0,0 +1,568 @@
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A red black tree whose nodes are never changed after they are created. An insert or remove
+ * copies only the nodes on the path it walked, shares every other node with the previous version,
+ * and then publishes the new root through a single atomic reference. A reader that has picked up a
+ * root therefore keeps a consistent version of the tree for as long as it likes, without locks,
+ * while writers carry on. The balancing follows Stefan Kahrs' functional red black trees.
+ *
+ * @param <T> the type of the stored elements
+ */
+public class PersistentRedBlackTree<T extends Comparable<T>>
+    implements SortedCollectionInterface<T> {
+  private static final class Node<T> {
+    final boolean red;
+    final Node<T> leftChild;
+    final T data;
+    final Node<T> rightChild;
+    final int subtreeSize;
+
+    Node(boolean red, Node<T> leftChild, T data, Node<T> rightChild) {
+      this.red = red;
+      this.leftChild = leftChild;
+      this.data = data;
+      this.rightChild = rightChild;
+      this.subtreeSize = 1 + sizeOf(leftChild) + sizeOf(rightChild);
+    }
+  }
+
+  private final AtomicReference<Node<T>> root;
+
+  public PersistentRedBlackTree() {
+    this.root = new AtomicReference<>(null);
+  }
+
+  private PersistentRedBlackTree(Node<T> root) {
+    this.root = new AtomicReference<>(root);
+  }
+
+  /**
+   * Returns a tree that starts out as the current version of this one. This takes constant time,
+   * as the two trees share all their nodes; later changes to either tree do not affect the other.
+   *
+   * @return a copy of the current version of this tree
+   */
+  public PersistentRedBlackTree<T> snapshot() {
+    return new PersistentRedBlackTree<>(root.get());
+  }
+
+  /**
+   * Builds a new version of the tree that contains data and publishes it. When another writer
+   * publishes first, the insert is redone on top of that writer's version.
+   *
+   * @param data to be added into this tree
+   * @return true if the value was inserted
+   * @throws NullPointerException     when the provided data argument is null
+   * @throws IllegalArgumentException when the tree already contains an equal value
+   */
+  @Override
+  public boolean insert(T data) throws NullPointerException, IllegalArgumentException {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    while (true) {
+      Node<T> current = root.get();
+      Node<T> updated = blacken(insertHelper(current, data));
+      if (root.compareAndSet(current, updated)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Builds a new version of the tree without data and publishes it.
+   *
+   * @param data the value to remove
+   * @return the element that was stored in the tree
+   * @throws NullPointerException     when the provided data argument is null
+   * @throws IllegalArgumentException when the tree does not contain the value
+   */
+  @Override
+  public T remove(T data) throws NullPointerException, IllegalArgumentException {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot remove null references.");
+    while (true) {
+      Node<T> current = root.get();
+      Node<T> stored = findNode(current, data);
+      if (stored == null) {
+        throw new IllegalArgumentException("This RedBlackTree does not contain that value.");
+      }
+      Node<T> updated = removeHelper(current, data);
+      if (updated != null) {
+        updated = blacken(updated);
+      }
+      if (root.compareAndSet(current, updated)) {
+        return stored.data;
+      }
+    }
+  }
+
+  @Override
+  public boolean contains(T data) {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    return findNode(root.get(), data) != null;
+  }
+
+  @Override
+  public int size() {
+    return sizeOf(root.get());
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return root.get() == null;
+  }
+
+  @Override
+  public ISong search(ISong data) {
+    @SuppressWarnings("unchecked")
+    Node<T> target = findNode(root.get(), (T) data);
+    if (target == null)
+      throw new NoSuchElementException("no element with such value");
+    return (ISong) target.data;
+  }
+
+  @Override
+  public T searchByKey(Comparable<? super T> key) {
+    if (key == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    Node<T> target = findNode(root.get(), key);
+    return target == null ? null : target.data;
+  }
+
+  @Override
+  public T floor(T data) {
+    return nearest(data, true, true);
+  }
+
+  @Override
+  public T ceiling(T data) {
+    return nearest(data, false, true);
+  }
+
+  @Override
+  public T higher(T data) {
+    return nearest(data, false, false);
+  }
+
+  @Override
+  public T lower(T data) {
+    return nearest(data, true, false);
+  }
+
+  @Override
+  public int rank(T data) {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    int rank = 0;
+    Node<T> current = root.get();
+    while (current != null) {
+      if (data.compareTo(current.data) <= 0) {
+        current = current.leftChild;
+      } else {
+        rank += sizeOf(current.leftChild) + 1;
+        current = current.rightChild;
+      }
+    }
+    return rank;
+  }
+
+  @Override
+  public T select(int index) {
+    Node<T> current = root.get();
+    if (index < 0 || index >= sizeOf(current))
+      throw new IndexOutOfBoundsException(
+          "Index " + index + " is out of bounds for size " + sizeOf(current));
+    return selectIn(current, index);
+  }
+
+  private static <T> T selectIn(Node<T> current, int index) {
+    while (true) {
+      int leftSize = sizeOf(current.leftChild);
+      if (index < leftSize) {
+        current = current.leftChild;
+      } else if (index > leftSize) {
+        index -= leftSize + 1;
+        current = current.rightChild;
+      } else {
+        return current.data;
+      }
+    }
+  }
+
+  /**
+   * Iterates over the version of the tree that is current when this method is called. Changes
+   * published later are not seen.
+   *
+   * @return iterator over all elements in ascending order
+   */
+  @Override
+  public Iterator<T> iterator() {
+    return new PathIterator(root.get(), null);
+  }
+
+  /**
+   * Iterates over the elements greater than or equal to data, in the version of the tree that is
+   * current when this method is called.
+   *
+   * @param data the value to start from
+   * @return iterator over the elements greater than or equal to data
+   */
+  @Override
+  public Iterator<T> iteratorFrom(T data) {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    return new PathIterator(root.get(), data);
+  }
+
+  /**
+   * Returns a spliterator over the version of the tree that is current when this method is called.
+   * It splits its range of positions at the middle, so both halves report their exact size.
+   *
+   * @return a SIZED, SUBSIZED, SORTED, ORDERED and IMMUTABLE spliterator
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    Node<T> version = root.get();
+    return new RangeSpliterator(version, 0, sizeOf(version), null);
+  }
+
+  /**
+   * Spliterator over the elements at positions index (inclusive) to fence (exclusive) of one
+   * version
+   */
+  private class RangeSpliterator implements Spliterator<T> {
+    private final Node<T> version;
+    private int index;
+    private final int fence;
+    // positioned at index, or null when it has not been created yet
+    private PathIterator path;
+
+    RangeSpliterator(Node<T> version, int index, int fence, PathIterator path) {
+      this.version = version;
+      this.index = index;
+      this.fence = fence;
+      this.path = path;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (index >= fence) {
+        return false;
+      }
+      if (path == null) {
+        path = new PathIterator(version, selectIn(version, index));
+      }
+      index++;
+      action.accept(path.next());
+      return true;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+      int remaining = fence - index;
+      if (remaining < 2) {
+        return null;
+      }
+      int middle = index + remaining / 2;
+      Spliterator<T> prefix = new RangeSpliterator(version, index, middle, path);
+      index = middle;
+      path = null;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
+
+    @Override
+    public int characteristics() {
+      return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED | Spliterator.ORDERED
+          | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+      // sorted by the natural ordering of the elements
+      return null;
+    }
+  }
+
+  /**
+   * In-order iterator over one version of the tree. Nodes have no parent links, so the path back
+   * up is kept on a stack.
+   */
+  private class PathIterator implements Iterator<T> {
+    private final ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+
+    PathIterator(Node<T> version, T from) {
+      Node<T> node = version;
+      while (node != null) {
+        if (from == null || from.compareTo(node.data) <= 0) {
+          stack.push(node);
+          node = node.leftChild;
+        } else {
+          node = node.rightChild;
+        }
+      }
+    }
+
+    public boolean hasNext() {
+      return !stack.isEmpty();
+    }
+
+    public T next() {
+      if (stack.isEmpty()) {
+        throw new NoSuchElementException("There are no more elements in the tree");
+      }
+      Node<T> processedNode = stack.pop();
+      for (Node<T> node = processedNode.rightChild; node != null; node = node.leftChild) {
+        stack.push(node);
+      }
+      return processedNode.data;
+    }
+  }
+
+  private T nearest(T data, boolean below, boolean inclusive) {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    T best = null;
+    Node<T> current = root.get();
+    while (current != null) {
+      int compare = data.compareTo(current.data);
+      if (compare == 0 && inclusive) {
+        return current.data;
+      }
+      if (below ? compare > 0 : compare < 0) {
+        best = current.data;
+        current = below ? current.rightChild : current.leftChild;
+      } else {
+        current = below ? current.leftChild : current.rightChild;
+      }
+    }
+    return best;
+  }
+
+  private static <T> Node<T> findNode(Node<T> current, Comparable<? super T> key) {
+    while (current != null) {
+      int compare = key.compareTo(current.data);
+      if (compare < 0) {
+        current = current.leftChild;
+      } else if (compare > 0) {
+        current = current.rightChild;
+      } else {
+        return current;
+      }
+    }
+    return null;
+  }
+
+  private static int sizeOf(Node<?> node) {
+    return node == null ? 0 : node.subtreeSize;
+  }
+
+  private static boolean isRed(Node<?> node) {
+    return node != null && node.red;
+  }
+
+  private static <T> Node<T> red(Node<T> left, T data, Node<T> right) {
+    return new Node<>(true, left, data, right);
+  }
+
+  private static <T> Node<T> black(Node<T> left, T data, Node<T> right) {
+    return new Node<>(false, left, data, right);
+  }
+
+  private static <T> Node<T> blacken(Node<T> node) {
+    return node.red ? black(node.leftChild, node.data, node.rightChild) : node;
+  }
+
+  /**
+   * Copies the path to the insert position, rebalancing black nodes on the way back up.
+   */
+  private static <T extends Comparable<T>> Node<T> insertHelper(Node<T> node, T data) {
+    if (node == null) {
+      return red(null, data, null);
+    }
+    int compare = data.compareTo(node.data);
+    if (compare == 0) {
+      throw new IllegalArgumentException("This RedBlackTree already contains that value.");
+    }
+    if (node.red) {
+      return compare < 0 ? red(insertHelper(node.leftChild, data), node.data, node.rightChild)
+          : red(node.leftChild, node.data, insertHelper(node.rightChild, data));
+    }
+    return compare < 0 ? balance(insertHelper(node.leftChild, data), node.data, node.rightChild)
+        : balance(node.leftChild, node.data, insertHelper(node.rightChild, data));
+  }
+
+  /**
+   * Builds a black node from the given parts, unless one side has two reds in a row, in which case
+   * the three nodes involved are rearranged into a red node with two black children.
+   */
+  private static <T> Node<T> balance(Node<T> left, T data, Node<T> right) {
+    if (isRed(left) && isRed(right)) {
+      return red(blacken(left), data, blacken(right));
+    }
+    if (isRed(left) && isRed(left.leftChild)) {
+      return red(blacken(left.leftChild), left.data, black(left.rightChild, data, right));
+    }
+    if (isRed(left) && isRed(left.rightChild)) {
+      Node<T> middle = left.rightChild;
+      return red(black(left.leftChild, left.data, middle.leftChild), middle.data,
+          black(middle.rightChild, data, right));
+    }
+    if (isRed(right) && isRed(right.rightChild)) {
+      return red(black(left, data, right.leftChild), right.data, blacken(right.rightChild));
+    }
+    if (isRed(right) && isRed(right.leftChild)) {
+      Node<T> middle = right.leftChild;
+      return red(black(left, data, middle.leftChild), middle.data,
+          black(middle.rightChild, right.data, right.rightChild));
+    }
+    return black(left, data, right);
+  }
+
+  /**
+   * Copies the path to data without it. The result may have a red root and, when the removed node
+   * was black, one less black node on the paths through it, which the callers make up for.
+   */
+  private static <T extends Comparable<T>> Node<T> removeHelper(Node<T> node, T data) {
+    if (node == null) {
+      return null;
+    }
+    int compare = data.compareTo(node.data);
+    if (compare < 0) {
+      if (node.leftChild != null && !node.leftChild.red) {
+        return balanceLeft(removeHelper(node.leftChild, data), node.data, node.rightChild);
+      }
+      return red(removeHelper(node.leftChild, data), node.data, node.rightChild);
+    }
+    if (compare > 0) {
+      if (node.rightChild != null && !node.rightChild.red) {
+        return balanceRight(node.leftChild, node.data, removeHelper(node.rightChild, data));
+      }
+      return red(node.leftChild, node.data, removeHelper(node.rightChild, data));
+    }
+    return append(node.leftChild, node.rightChild);
+  }
+
+  /**
+   * Rebuilds a node whose left side lost one black node.
+   */
+  private static <T> Node<T> balanceLeft(Node<T> left, T data, Node<T> right) {
+    if (isRed(left)) {
+      return red(blacken(left), data, right);
+    }
+    if (right != null && !right.red) {
+      return balance(left, data, redden(right));
+    }
+    if (isRed(right) && right.leftChild != null && !right.leftChild.red) {
+      Node<T> middle = right.leftChild;
+      return red(black(left, data, middle.leftChild), middle.data,
+          balance(middle.rightChild, right.data, redden(right.rightChild)));
+    }
+    throw new IllegalStateException("This RedBlackTree is not balanced.");
+  }
+
+  /**
+   * Rebuilds a node whose right side lost one black node.
+   */
+  private static <T> Node<T> balanceRight(Node<T> left, T data, Node<T> right) {
+    if (isRed(right)) {
+      return red(left, data, blacken(right));
+    }
+    if (left != null && !left.red) {
+      return balance(redden(left), data, right);
+    }
+    if (isRed(left) && left.rightChild != null && !left.rightChild.red) {
+      Node<T> middle = left.rightChild;
+      return red(balance(redden(left.leftChild), left.data, middle.leftChild), middle.data,
+          black(middle.rightChild, data, right));
+    }
+    throw new IllegalStateException("This RedBlackTree is not balanced.");
+  }
+
+  /**
+   * Turns a black node red, which removes one black node from every path through it.
+   */
+  private static <T> Node<T> redden(Node<T> node) {
+    if (node == null || node.red) {
+      throw new IllegalStateException("This RedBlackTree is not balanced.");
+    }
+    return red(node.leftChild, node.data, node.rightChild);
+  }
+
+  /**
+   * Checks the red black properties, the subtree sizes and the order of the elements of the current
+   * version, for tests
+   *
+   * @return the black height of the tree
+   * @throws IllegalStateException when the tree is broken
+   */
+  int checkInvariants() {
+    Node<T> current = root.get();
+    if (isRed(current))
+      throw new IllegalStateException("The root must be black.");
+    return checkInvariants(current, null, null);
+  }
+
+  private int checkInvariants(Node<T> node, T low, T high) {
+    if (node == null) {
+      return 1;
+    }
+    T element = node.data;
+    if ((low != null && low.compareTo(element) >= 0)
+        || (high != null && high.compareTo(element) <= 0))
+      throw new IllegalStateException("The elements are out of order at " + element + ".");
+    if (node.red && (isRed(node.leftChild) || isRed(node.rightChild)))
+      throw new IllegalStateException("The red node " + element + " has a red child.");
+    if (node.subtreeSize != 1 + sizeOf(node.leftChild) + sizeOf(node.rightChild))
+      throw new IllegalStateException("The subtree size of " + element + " is wrong.");
+    int blackHeight = checkInvariants(node.leftChild, low, element);
+    if (blackHeight != checkInvariants(node.rightChild, element, high))
+      throw new IllegalStateException("The black heights below " + element + " differ.");
+    return blackHeight + (node.red ? 0 : 1);
+  }
+
+  /**
+   * Joins the two children of a removed node, all of whose elements in left are smaller than all
+   * of those in right.
+   */
+  private static <T> Node<T> append(Node<T> left, Node<T> right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+    if (left.red && right.red) {
+      Node<T> middle = append(left.rightChild, right.leftChild);
+      if (isRed(middle)) {
+        return red(red(left.leftChild, left.data, middle.leftChild), middle.data,
+            red(middle.rightChild, right.data, right.rightChild));
+      }
+      return red(left.leftChild, left.data, red(middle, right.data, right.rightChild));
+    }
+    if (!left.red && !right.red) {
+      Node<T> middle = append(left.rightChild, right.leftChild);
+      if (isRed(middle)) {
+        return red(black(left.leftChild, left.data, middle.leftChild), middle.data,
+            black(middle.rightChild, right.data, right.rightChild));
+      }
+      return balanceLeft(left.leftChild, left.data, black(middle, right.data, right.rightChild));
+    }
+    if (right.red) {
+      return red(append(left, right.leftChild), right.data, right.rightChild);
+    }
+    return red(left.leftChild, left.data, append(left.rightChild, right));
+  }
+}
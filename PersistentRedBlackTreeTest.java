@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the PersistentRedBlackTree against a TreeSet, its red black properties and subtree sizes
+ * after every change, and that snapshots keep the version they were taken from
+ */
+public class PersistentRedBlackTreeTest {
+  @Test
+  public void interleavedInsertsAndRemovesKeepTheInvariants() {
+    Random random = new Random(12);
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 20_000; i++) {
+      Integer value = random.nextInt(2_000);
+      if (random.nextInt(5) < 3) {
+        if (expected.add(value)) {
+          assertTrue(tree.insert(value));
+        } else {
+          assertThrows(IllegalArgumentException.class, () -> tree.insert(value));
+        }
+      } else if (expected.remove(value)) {
+        assertEquals(value, tree.remove(value));
+      } else {
+        assertThrows(IllegalArgumentException.class, () -> tree.remove(value));
+      }
+      tree.checkInvariants();
+      assertEquals(expected.size(), tree.size());
+    }
+    assertSameElements(expected, tree);
+  }
+
+  @Test
+  public void removingEverythingLeavesAnEmptyTree() {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      values.add(i);
+      tree.insert(i);
+    }
+    Collections.shuffle(values, new Random(3));
+    for (Integer value : values) {
+      tree.remove(value);
+      tree.checkInvariants();
+    }
+    assertTrue(tree.isEmpty());
+    assertFalse(tree.iterator().hasNext());
+  }
+
+  @Test
+  public void snapshotsAreNotChangedByLaterChanges() {
+    Random random = new Random(7);
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    List<PersistentRedBlackTree<Integer>> snapshots = new ArrayList<>();
+    List<TreeSet<Integer>> snapshotContents = new ArrayList<>();
+    for (int i = 0; i < 5_000; i++) {
+      Integer value = random.nextInt(500);
+      if (expected.contains(value)) {
+        expected.remove(value);
+        tree.remove(value);
+      } else {
+        expected.add(value);
+        tree.insert(value);
+      }
+      if (i % 500 == 0) {
+        snapshots.add(tree.snapshot());
+        snapshotContents.add(new TreeSet<>(expected));
+      }
+    }
+    for (int i = 0; i < snapshots.size(); i++) {
+      snapshots.get(i).checkInvariants();
+      assertSameElements(snapshotContents.get(i), snapshots.get(i));
+    }
+    assertSameElements(expected, tree);
+  }
+
+  @Test
+  public void changingASnapshotLeavesTheOriginalAlone() {
+    PersistentRedBlackTree<Integer> tree = new PersistentRedBlackTree<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 100; i++) {
+      tree.insert(i);
+      expected.add(i);
+    }
+    PersistentRedBlackTree<Integer> copy = tree.snapshot();
+    for (int i = 0; i < 100; i += 2) {
+      copy.remove(i);
+    }
+    copy.insert(1_000);
+    copy.checkInvariants();
+    assertEquals(51, copy.size());
+    assertSameElements(expected, tree);
+  }
+
+  private static void assertSameElements(TreeSet<Integer> expected,
+      PersistentRedBlackTree<Integer> tree) {
+    assertEquals(expected.size(), tree.size());
+    Iterator<Integer> actual = tree.iterator();
+    for (Integer value : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(value, actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+}
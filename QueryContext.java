@@ -0,0 +1,40 @@
+/**
+ * Holds the search settings of one user session, so that several sessions can query the same
+ * backend without seeing each other's author filter.
+ */
+public class QueryContext {
+  private volatile String authorFilter;
+
+  public QueryContext() {
+    this.authorFilter = null;
+  }
+
+  public QueryContext(String authorFilter) {
+    this.authorFilter = authorFilter;
+  }
+
+  /**
+   * Setter method for the author filter of this session
+   *
+   * @param authorFilter the string that the song's artist names must contain
+   */
+  public void setAuthorFilter(String authorFilter) {
+    this.authorFilter = authorFilter;
+  }
+
+  /**
+   * Getter method for the author filter of this session
+   *
+   * @return the author filter, or null if none is set
+   */
+  public String getAuthorFilter() {
+    return this.authorFilter;
+  }
+
+  /**
+   * Resets the author filter of this session to null (no filter).
+   */
+  public void resetAuthorFilter() {
+    this.authorFilter = null;
+  }
+}
@@ -0,0 +1,266 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of search results, keyed by a normalized release year and author filter. Every
+ * result is stored with the version of the catalog it was computed from, and a lookup only hits
+ * when the version it asks for is the same, so a result never outlives the addSong or removeSong
+ * that changed the catalog. Stale results are dropped when they are found, and the rest are evicted
+ * once the cache holds more than its maximum number of results, or more than its memory cap by a
+ * rough estimate of the bytes they take.
+ *
+ * Lookups take no lock, so searches that run in parallel under a shared read lock stay parallel
+ * when they hit. Each hit stamps its result with the time it was used, and storing a result that
+ * overflows the cache evicts the least recently stamped results until the cache is back under seven
+ * eighths of its limits, so eviction is least recently used only approximately, and its cost is
+ * spread over many stores. Stores are serialized with each other.
+ */
+public class QueryResultCache {
+  // estimated bytes of one cached result besides its song references: key, entry, map node, list
+  private static final long ENTRY_BYTES = 160;
+  // estimated bytes of one song reference in a cached list
+  private static final long SONG_BYTES = 8;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+  // serializes stores and eviction, which lookups never wait for
+  private final Object storeLock = new Object();
+  private final AtomicLong bytes = new AtomicLong();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private volatile boolean enabled = true;
+
+  /**
+   * Creates an empty cache
+   *
+   * @param maxEntries the largest number of results kept
+   * @param maxBytes   the largest estimated number of bytes the kept results may take
+   */
+  public QueryResultCache(int maxEntries, long maxBytes) {
+    if (maxEntries < 1 || maxBytes < 1)
+      throw new IllegalArgumentException("The cache needs room for at least one result.");
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Looks up the result of a search
+   *
+   * @param year    the normalized release year that was searched for
+   * @param filter  the normalized author filter, or null for none
+   * @param version the current version of the catalog
+   * @return the result computed for that version, or null if there is none
+   */
+  public List<ISong> get(Object year, String filter, long version) {
+    if (!enabled) {
+      return null;
+    }
+    Key key = new Key(year, filter);
+    Entry entry = entries.get(key);
+    if (entry != null && entry.version != version) {
+      if (entries.remove(key, entry)) {
+        bytes.addAndGet(-entry.bytes);
+      }
+      entry = null;
+    }
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    entry.lastUsed = System.nanoTime();
+    hits.increment();
+    return entry.songs;
+  }
+
+  /**
+   * Stores the result of a search, evicting the least recently used results if needed. A result
+   * too large to fit the memory cap on its own is not stored.
+   *
+   * @param year    the normalized release year that was searched for
+   * @param filter  the normalized author filter, or null for none
+   * @param version the version of the catalog the result was computed from
+   * @param songs   the result, which must not be changed afterwards
+   * @return an unmodifiable view of songs, which later hits return as well
+   */
+  public List<ISong> put(Object year, String filter, long version, List<ISong> songs) {
+    List<ISong> result = Collections.unmodifiableList(songs);
+    long size = ENTRY_BYTES + SONG_BYTES * songs.size();
+    if (!enabled || size > maxBytes) {
+      return result;
+    }
+    synchronized (storeLock) {
+      Entry previous = entries.put(new Key(year, filter), new Entry(version, result, size));
+      if (previous != null) {
+        bytes.addAndGet(-previous.bytes);
+      }
+      if (bytes.addAndGet(size) > maxBytes || entries.size() > maxEntries) {
+        evict();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Drops the least recently used results until the cache is under seven eighths of its limits
+   */
+  private void evict() {
+    // copy the stamps first, as hits keep changing them while the victims are sorted
+    List<Victim> byUse = new ArrayList<>(entries.size());
+    for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+      byUse.add(new Victim(entry.getKey(), entry.getValue()));
+    }
+    byUse.sort(Comparator.comparingLong(victim -> victim.lastUsed));
+    Iterator<Victim> eldest = byUse.iterator();
+    int targetEntries = Math.max(1, maxEntries - maxEntries / 8);
+    long targetBytes = maxBytes - maxBytes / 8;
+    while (eldest.hasNext() && (entries.size() > targetEntries || bytes.get() > targetBytes)) {
+      Victim victim = eldest.next();
+      if (entries.remove(victim.key, victim.entry)) {
+        bytes.addAndGet(-victim.entry.bytes);
+        evictions.increment();
+      }
+    }
+  }
+
+  /**
+   * Drops every result, but keeps the statistics
+   */
+  public void clear() {
+    synchronized (storeLock) {
+      for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+        // a lookup may have dropped the result as stale in the meantime
+        if (entries.remove(entry.getKey(), entry.getValue())) {
+          bytes.addAndGet(-entry.getValue().bytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Turns the cache on or off. While it is off, lookups always miss without being counted and
+   * nothing is stored, which lets benchmarks measure the searches themselves. Turning it off also
+   * drops every result.
+   *
+   * @param enabled whether results are cached
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if (!enabled) {
+      clear();
+    }
+  }
+
+  /**
+   * Sets the hit, miss and eviction counts back to zero
+   */
+  public void resetStatistics() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  /**
+   * Getter method for the number of lookups that found a current result
+   *
+   * @return the number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Getter method for the number of lookups that found no result, or only a stale one
+   *
+   * @return the number of misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Getter method for the number of results evicted to stay within the limits
+   *
+   * @return the number of evictions, not counting stale results that were dropped
+   */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /**
+   * Getter method for the number of results kept
+   *
+   * @return the number of cached results, including stale ones not yet looked up again
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Getter method for the estimated memory taken by the kept results
+   *
+   * @return the estimated number of bytes
+   */
+  public long getEstimatedBytes() {
+    return bytes.get();
+  }
+
+  private static final class Key {
+    private final Object year;
+    private final String filter;
+
+    Key(Object year, String filter) {
+      this.year = year;
+      this.filter = filter;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) other;
+      return year.equals(key.year) && Objects.equals(filter, key.filter);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * year.hashCode() + Objects.hashCode(filter);
+    }
+  }
+
+  private static final class Entry {
+    private final long version;
+    private final List<ISong> songs;
+    private final long bytes;
+    // when the result was stored or last returned, by System.nanoTime
+    private volatile long lastUsed = System.nanoTime();
+
+    Entry(long version, List<ISong> songs, long bytes) {
+      this.version = version;
+      this.songs = songs;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final class Victim {
+    private final Key key;
+    private final Entry entry;
+    private final long lastUsed;
+
+    Victim(Key key, Entry entry) {
+      this.key = key;
+      this.entry = entry;
+      this.lastUsed = entry.lastUsed;
+    }
+  }
+}
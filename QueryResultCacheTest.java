@@ -0,0 +1,187 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a QueryResultCache only returns results of the version they were computed from,
+ * stays within its limits, and counts its hits, misses and evictions, and that the year searches
+ * of a SongPlayerBackend see every change to the songs
+ */
+public class QueryResultCacheTest {
+  // the estimates QueryResultCache uses for one result and for one song reference in it
+  private static final long ENTRY_BYTES = 160;
+  private static final long SONG_BYTES = 8;
+
+  @Test
+  public void hitsOnlyReturnResultsOfTheSameVersion() {
+    QueryResultCache cache = new QueryResultCache(10, 1 << 20);
+    List<ISong> stored = cache.put(1970, null, 1, songs(3));
+    assertSame(stored, cache.get(1970, null, 1));
+    assertNull(cache.get(1970, "Queen", 1));
+    assertNull(cache.get("1970", null, 1));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    // a lookup of a newer version drops the stale result
+    assertNull(cache.get(1970, null, 2));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getEstimatedBytes());
+    assertNull(cache.get(1970, null, 1));
+    assertEquals(1, cache.getHits());
+    assertEquals(4, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+
+    cache.resetStatistics();
+    assertEquals(0, cache.getHits());
+    assertEquals(0, cache.getMisses());
+  }
+
+  @Test
+  public void returnedListsAreUnmodifiable() {
+    QueryResultCache cache = new QueryResultCache(10, 1 << 20);
+    List<ISong> stored = cache.put(1970, null, 1, songs(2));
+    assertThrows(UnsupportedOperationException.class, () -> stored.add(song(5)));
+    List<ISong> hit = cache.get(1970, null, 1);
+    assertThrows(UnsupportedOperationException.class, () -> hit.remove(0));
+    assertThrows(UnsupportedOperationException.class, hit::clear);
+    // a result too large to be kept is still returned unmodifiable
+    List<ISong> large = new QueryResultCache(10, ENTRY_BYTES).put(1971, null, 1, songs(1));
+    assertThrows(UnsupportedOperationException.class, () -> large.set(0, song(6)));
+  }
+
+  @Test
+  public void evictionKeepsTheEntryLimit() {
+    QueryResultCache cache = new QueryResultCache(16, 1 << 20);
+    for (int year = 0; year < 100; year++) {
+      cache.put(year, null, 1, songs(0));
+      assertTrue(cache.size() <= 16);
+      assertEquals(ENTRY_BYTES * cache.size(), cache.getEstimatedBytes());
+    }
+    assertEquals(100 - cache.size(), cache.getEvictions());
+    assertEquals(0, cache.getHits());
+  }
+
+  @Test
+  public void evictionKeepsTheByteLimit() {
+    long perResult = ENTRY_BYTES + SONG_BYTES * 10;
+    QueryResultCache cache = new QueryResultCache(1_000, 8 * perResult);
+    for (int year = 0; year < 50; year++) {
+      cache.put(year, null, 1, songs(10));
+      assertTrue(cache.getEstimatedBytes() <= 8 * perResult);
+      assertEquals(perResult * cache.size(), cache.getEstimatedBytes());
+    }
+    assertEquals(50 - cache.size(), cache.getEvictions());
+
+    // a result larger than the whole cap is not stored, and evicts nothing
+    long evictions = cache.getEvictions();
+    int size = cache.size();
+    cache.put(2000, null, 1, songs(300));
+    assertNull(cache.get(2000, null, 1));
+    assertEquals(size, cache.size());
+    assertEquals(evictions, cache.getEvictions());
+  }
+
+  @Test
+  public void recentlyUsedResultsOutliveOlderOnes() throws InterruptedException {
+    QueryResultCache cache = new QueryResultCache(8, 1 << 20);
+    for (int year = 0; year < 8; year++) {
+      cache.put(year, null, 1, songs(1));
+    }
+    // make sure the hit is stamped later than every store above
+    Thread.sleep(2);
+    assertNotNull(cache.get(0, null, 1));
+    cache.put(8, null, 1, songs(1));
+    assertTrue(cache.getEvictions() > 0);
+    assertNotNull(cache.get(0, null, 1));
+    assertNotNull(cache.get(8, null, 1));
+    assertNull(cache.get(1, null, 1));
+  }
+
+  @Test
+  public void replacingAResultKeepsTheBytesRight() {
+    QueryResultCache cache = new QueryResultCache(10, 1 << 20);
+    cache.put(1970, null, 1, songs(4));
+    cache.put(1970, null, 2, songs(1));
+    assertEquals(1, cache.size());
+    assertEquals(ENTRY_BYTES + SONG_BYTES, cache.getEstimatedBytes());
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getEstimatedBytes());
+  }
+
+  @Test
+  public void disabledCacheStoresAndCountsNothing() {
+    QueryResultCache cache = new QueryResultCache(10, 1 << 20);
+    cache.put(1970, null, 1, songs(1));
+    cache.setEnabled(false);
+    assertEquals(0, cache.size());
+    cache.put(1971, null, 1, songs(1));
+    assertNull(cache.get(1971, null, 1));
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getHits() + cache.getMisses());
+    cache.setEnabled(true);
+    cache.put(1971, null, 1, songs(1));
+    assertNotNull(cache.get(1971, null, 1));
+  }
+
+  @Test
+  public void yearSearchesSeeAddsAndRemoves() {
+    SongPlayerBackend backend = new SongPlayerBackend();
+    backend.addSong(new Song("First", "Queen", "1975"));
+    backend.addSong(new Song("Second", "Abba", "1975"));
+    QueryResultCache cache = backend.getYearResultCache();
+    cache.resetStatistics();
+
+    List<ISong> before = backend.searchByYear("1975");
+    assertEquals(List.of("First", "Second"), titles(before));
+    assertSame(before, backend.searchByYear(" 1975"));
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertThrows(UnsupportedOperationException.class, () -> before.add(song(1)));
+
+    Song third = new Song("Third", "Queen", "1975");
+    backend.addSong(third);
+    assertEquals(List.of("First", "Second", "Third"), titles(backend.searchByYear("1975")));
+    backend.removeSong(new Song("First", "", ""));
+    assertEquals(List.of("Second", "Third"), titles(backend.searchByYear("1975")));
+    assertEquals(1, cache.getHits());
+    assertEquals(3, cache.getMisses());
+
+    // each author filter has its own result
+    backend.setAuthorFilter("Queen");
+    assertEquals(List.of("Third"), titles(backend.searchByYear("1975")));
+    backend.resetAuthorFilter();
+    assertEquals(List.of("Second", "Third"), titles(backend.searchByYear("1975")));
+    assertEquals(2, cache.getHits());
+
+    backend.addSongs(List.of(new Song("Fourth", "Abba", "1975")));
+    assertEquals(List.of("Fourth", "Second", "Third"), titles(backend.searchByYear("1975")));
+  }
+
+  private static List<ISong> songs(int count) {
+    List<ISong> songs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      songs.add(song(i));
+    }
+    return songs;
+  }
+
+  private static ISong song(int number) {
+    return new Song("Song " + number, "Artist", "1970");
+  }
+
+  private static List<String> titles(List<ISong> songs) {
+    List<String> titles = new ArrayList<>();
+    for (ISong song : songs) {
+      titles.add(song.getTitle());
+    }
+    return titles;
+  }
+}
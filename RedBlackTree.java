@@ -1,8 +1,18 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
-import java.util.Stack;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionInterface<T> {
   protected static class Node<T> {
@@ -11,10 +21,13 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
     public Node<T> leftChild;
     public Node<T> rightChild;
     public int blackHeight;
+    // number of nodes in the subtree rooted at this node, including itself
+    public int subtreeSize;
 
     public Node(T data) {
       this.data = data;
       this.blackHeight = 0;
+      this.subtreeSize = 1;
     }
 
     /**
@@ -28,121 +41,96 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
     }
   }
 
+  // bulkLoad sorts at least this many values in parallel
+  private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+  // set operations fork their two halves while the inputs hold at least this many nodes
+  private static final int PARALLEL_SET_THRESHOLD = 1 << 12;
+
   protected Node<T> root;
   protected int size = 0;
 
   /**
-   * Performs a naive insertion into a binary search tree: adding the input data value to a new node
-   * in a leaf position within the tree. After this insertion, no attempt is made to restructure or
-   * balance the tree. This tree will not hold null references, nor duplicate data values.
+   * Inserts the input data value into a new leaf node and then restores the Red Black Tree
+   * properties. The position is found in a single descent that also counts the new node into the
+   * subtree sizes along the way. This tree will not hold null references, nor duplicate data
+   * values.
    * 
    * @param data to be added into this binary search tree
-   * @return true if the value was inserted, false if not
+   * @return true if the value was inserted
    * @throws NullPointerException     when the provided data argument is null
-   * @throws IllegalArgumentException when the newNode and subtree contain equal data references
+   * @throws IllegalArgumentException when the tree already contains an equal value
    */
   public boolean insert(T data) throws NullPointerException, IllegalArgumentException {
     // null references cannot be stored within this tree
     if (data == null)
       throw new NullPointerException("This RedBlackTree cannot store null references.");
 
-    Node<T> newNode = new Node<>(data);
-    if (root == null) {
-      root = newNode;
-      size++;
-      return true;
-    } else {
-      boolean returnValue = insertHelper(newNode, root); // recursively insert into subtree
-      if (returnValue)
-        size++;
-      else {
+    Node<T> parent = null;
+    Node<T> current = root;
+    int compare = 0;
+    int comparisons = 0;
+    while (current != null) {
+      compare = data.compareTo(current.data);
+      comparisons++;
+      // do not allow duplicate values to be stored within this tree
+      if (compare == 0) {
+        for (Node<T> ancestor = current.parent; ancestor != null; ancestor = ancestor.parent) {
+          ancestor.subtreeSize--;
+        }
+        TreeMetrics.comparisons(comparisons);
         throw new IllegalArgumentException("This RedBlackTree already contains that value.");
       }
-      root.blackHeight = 1;
-      return returnValue;
-    }
-  }
-
-  /**
-   * Recursive helper method to find the subtree with a null reference in the position that the
-   * newNode should be inserted, and then extend this tree by the newNode in that position.
-   * 
-   * @param newNode is the new node that is being added to this tree
-   * @param subtree is the reference to a node within this tree which the newNode should be inserted
-   *                as a descenedent beneath
-   * @return true is the value was inserted in subtree, false if not
-   */
-  private boolean insertHelper(Node<T> newNode, Node<T> subtree) {
-    int compare = newNode.data.compareTo(subtree.data);
-    // do not allow duplicate values to be stored within this tree
-    if (compare == 0) {
-      return false;
+      current.subtreeSize++;
+      parent = current;
+      current = compare < 0 ? current.leftChild : current.rightChild;
     }
+    TreeMetrics.comparisons(comparisons);
 
-    else if (compare < 0) {
-      if (subtree.leftChild == null) {
-        subtree.leftChild = newNode;
-        newNode.parent = subtree;
-        enforceRBTreePropertiesAfterInsert(newNode);
-        return true;
-      } else
-        return insertHelper(newNode, subtree.leftChild);
-    }
-
-    else {
-      if (subtree.rightChild == null) {
-        subtree.rightChild = newNode;
-        newNode.parent = subtree;
-        enforceRBTreePropertiesAfterInsert(newNode);
-        return true;
-      } else
-        return insertHelper(newNode, subtree.rightChild);
+    Node<T> newNode = new Node<>(data);
+    newNode.parent = parent;
+    if (parent == null) {
+      root = newNode;
+    } else if (compare < 0) {
+      parent.leftChild = newNode;
+    } else {
+      parent.rightChild = newNode;
     }
+    size++;
+    enforceRBTreePropertiesAfterInsert(newNode);
+    return true;
   }
 
   /**
-   * Checks if Red Black Tree properties are satisfied, working it's way up to the root node
+   * Restores the Red Black Tree properties after an insertion. Recoloring (case 3) moves the
+   * violation two levels up, while a rotation (cases 1 and 2) resolves it, so the loop stops at the
+   * first rotation or as soon as there is no red parent left.
    *
    * @param node The newly added node that may violate the Red Black Tree property
    */
-  protected void enforceRBTreePropertiesAfterInsert(final Node<T> node) {
-    if (node == null || node.parent == null)
-      return;
-
-    if (node.blackHeight == 0 && node.parent.blackHeight == 0) {
-      propertiesHelper(node);
-    }
-    enforceRBTreePropertiesAfterInsert(node.parent);
-  }
-
-  /**
-   * Helper method for enforceRBTreePropertiesAfterInsert
-   * 
-   * @param node The newly added node that may violate the Red Black Tree property
-   */
-  private final void propertiesHelper(final Node<T> node) {
-    if (node.parent == null || node.parent.parent == null)
-      return;
-
-    final Node<T> parent = node.parent;
-    final Node<T> grandParent = parent.parent;
-    final Node<T> uncle = parent.isLeftChild() ? grandParent.rightChild : grandParent.leftChild;
-
-    final int type = (uncle != null && uncle.blackHeight == 0) ? 3
-        : (parent.isLeftChild() == node.isLeftChild()) ? 1 : 2;
-
-    switch (type) {
-      case 1:
-        handleCase1(parent, grandParent);
-        break;
-
-      case 2:
-        handleCase2(node, parent, grandParent);
+  protected void enforceRBTreePropertiesAfterInsert(Node<T> node) {
+    while (node.parent != null && node.blackHeight == 0 && node.parent.blackHeight == 0) {
+      final Node<T> parent = node.parent;
+      final Node<T> grandParent = parent.parent;
+      if (grandParent == null) {
         break;
+      }
+      final Node<T> uncle = parent.isLeftChild() ? grandParent.rightChild : grandParent.leftChild;
 
-      case 3:
+      if (uncle != null && uncle.blackHeight == 0) {
         handleCase3(parent, grandParent, uncle);
+        node = grandParent;
+      } else {
+        if (parent.isLeftChild() == node.isLeftChild()) {
+          handleCase1(parent, grandParent);
+        } else {
+          handleCase2(node, parent, grandParent);
+        }
         break;
+      }
+    }
+    if (root.blackHeight == 0) {
+      TreeMetrics.recolorings(1);
+      root.blackHeight = 1;
     }
   }
 
@@ -161,6 +149,7 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
     // Switch colors
     node.blackHeight = 1;
     parent.blackHeight = 0;
+    TreeMetrics.recolorings(2);
   }
 
   /**
@@ -193,6 +182,7 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
     grandParent.blackHeight = 0;
     parent.blackHeight = 1;
     uncle.blackHeight = 1;
+    TreeMetrics.recolorings(3);
   }
 
   /**
@@ -214,72 +204,42 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
       throw new IllegalArgumentException("incorrect relation");
     }
     if (child.isLeftChild()) {
-      rightRotation(child, parent);
+      rotateRight(parent);
     } else {
-      leftRotation(child, parent);
+      rotateLeft(parent);
     }
   }
 
   /**
-   * Left rotation method
+   * Get the size of the tree (its number of nodes).
+   * 
+   * @return the number of nodes in the tree
    */
-  private void leftRotation(Node<T> child, Node<T> parent) {
-    try {
-      Node<T> grandChild = child.leftChild;
-      parent.rightChild = grandChild;
-      if (grandChild != null) {
-        grandChild.parent = parent;
-      }
-      child.parent = parent.parent;
-      if (parent.parent == null) {
-        root = child;
-      } else if (parent.isLeftChild()) {
-        parent.parent.leftChild = child;
-      } else {
-        parent.parent.rightChild = child;
-      }
-
-      child.leftChild = parent;
-      parent.parent = child;
-    } catch (Exception e) {
-      System.out.println(e.getMessage());
-    }
+  public int size() {
+    return size;
   }
 
   /**
-   * Left rotation method
+   * Computes the height of the tree by visiting every node, so this takes linear time.
+   * 
+   * @return the number of nodes on the longest path from the root to a leaf, 0 for an empty tree
    */
-  private void rightRotation(Node<T> child, Node<T> parent) {
-    try {
-      Node<T> grandChild = child.rightChild;
-      parent.leftChild = grandChild;
-      if (grandChild != null) {
-        grandChild.parent = parent;
-      }
-
-      child.parent = parent.parent;
-      if (parent.parent == null) {
-        root = child;
-      } else if (parent.isLeftChild()) {
-        parent.parent.leftChild = child;
-      } else {
-        parent.parent.rightChild = child;
-      }
+  public int height() {
+    return height(root);
+  }
 
-      child.rightChild = parent;
-      parent.parent = child;
-    } catch (Exception e) {
-      System.out.println(e.getMessage());
-    }
+  private static int height(Node<?> node) {
+    return node == null ? 0 : 1 + Math.max(height(node.leftChild), height(node.rightChild));
   }
 
   /**
-   * Get the size of the tree (its number of nodes).
+   * Counts the black nodes on the path from the root down to the least element, which every path
+   * from the root down has the same number of. The height is at least this and at most twice it.
    * 
-   * @return the number of nodes in the tree
+   * @return the black height of the tree, 0 for an empty tree
    */
-  public int size() {
-    return size;
+  public int blackHeight() {
+    return blackHeight(root);
   }
 
   /**
@@ -301,33 +261,49 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
     // null references will not be stored within this tree
     if (data == null)
       throw new NullPointerException("This RedBlackTree cannot store null references.");
-    return this.containsHelper(data, root);
+    return findNode(data) != null;
   }
 
   /**
-   * Recursive helper method that recurses through the tree and looks for the value *data*.
+   * Looks up the element that key compares equal to. The key only needs to know how to compare
+   * itself to stored elements, so callers can search by a field such as a title without building
+   * a probe element.
    * 
-   * @param data    the data value to look for
-   * @param subtree the subtree to search through
-   * @return true of the value is in the subtree, false if not
+   * @param key compares to each stored element the way that element's own compareTo would
+   * @return the matching element, or null if there is none
    */
-  private boolean containsHelper(T data, Node<T> subtree) {
-    if (subtree == null) {
-      // we are at a null child, value is not in tree
-      return false;
-    } else {
-      int compare = data.compareTo(subtree.data);
+  public T searchByKey(Comparable<? super T> key) {
+    if (key == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    Node<T> target = findNode(key);
+    return target == null ? null : target.data;
+  }
+
+  /**
+   * Iterative lookup that makes one comparison per level.
+   * 
+   * @param key the value, or key, to look for
+   * @return the node holding the matching element, or null if there is none
+   */
+  private Node<T> findNode(Comparable<? super T> key) {
+    Node<T> current = root;
+    int comparisons = 0;
+    while (current != null) {
+      int compare = key.compareTo(current.data);
+      comparisons++;
       if (compare < 0) {
         // go left in the tree
-        return containsHelper(data, subtree.leftChild);
+        current = current.leftChild;
       } else if (compare > 0) {
         // go right in the tree
-        return containsHelper(data, subtree.rightChild);
+        current = current.rightChild;
       } else {
         // we found it :)
-        return true;
+        break;
       }
     }
+    TreeMetrics.comparisons(comparisons);
+    return current;
   }
 
   /**
@@ -341,26 +317,34 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
    * @return string containing the ordered values of this tree (in-order traversal)
    */
   public String toInOrderString() {
-    // generate a string of all values of the tree in (ordered) in-order
-    // traversal sequence
-    StringBuffer sb = new StringBuffer();
-    sb.append("[ ");
-    sb.append(toInOrderStringHelper("", this.root));
-    if (this.root != null) {
-      sb.setLength(sb.length() - 2);
+    StringBuilder sb = new StringBuilder();
+    try {
+      appendInOrder(sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // cannot happen for a StringBuilder
     }
-    sb.append(" ]");
     return sb.toString();
   }
 
-  private String toInOrderStringHelper(String str, Node<T> node) {
-    if (node == null) {
-      return str;
+  /**
+   * Writes the same text as toInOrderString to out while walking the tree, so that dumping a large
+   * tree to a buffered writer does not build the whole text in memory first.
+   * 
+   * @param out where to write the values, such as a StringBuilder or a Writer
+   * @throws IOException when out cannot be written
+   */
+  public void appendInOrder(Appendable out) throws IOException {
+    out.append("[ ");
+    if (root != null) {
+      Node<T> first = leftmost(root);
+      for (Node<T> node = first; node != null; node = successor(node)) {
+        if (node != first) {
+          out.append(", ");
+        }
+        out.append(node.data.toString()).append('-').append(Integer.toString(node.blackHeight));
+      }
     }
-    str = toInOrderStringHelper(str, node.leftChild);
-    str += (node.data.toString() + "-" + node.blackHeight + ", ");
-    str = toInOrderStringHelper(str, node.rightChild);
-    return str;
+    out.append(" ]");
   }
 
   /**
@@ -374,9 +358,25 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
    * @return string containing the values of this tree in level order
    */
   public String toLevelOrderString() {
-    String output = "[ ";
+    StringBuilder sb = new StringBuilder();
+    try {
+      appendLevelOrder(sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // cannot happen for a StringBuilder
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the same text as toLevelOrderString to out while walking the tree
+   * 
+   * @param out where to write the values, such as a StringBuilder or a Writer
+   * @throws IOException when out cannot be written
+   */
+  public void appendLevelOrder(Appendable out) throws IOException {
+    out.append("[ ");
     if (this.root != null) {
-      LinkedList<Node<T>> q = new LinkedList<>();
+      ArrayDeque<Node<T>> q = new ArrayDeque<>();
       q.add(this.root);
       while (!q.isEmpty()) {
         Node<T> next = q.removeFirst();
@@ -384,134 +384,314 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
           q.add(next.leftChild);
         if (next.rightChild != null)
           q.add(next.rightChild);
-        output += next.data.toString();
+        out.append(next.data.toString());
         if (!q.isEmpty())
-          output += ", ";
+          out.append(", ");
       }
     }
-    return output + " ]";
+    out.append(" ]");
   }
 
   public String toString() {
     return "level order: " + this.toLevelOrderString() + "\nin order: " + this.toInOrderString();
   }
 
+  /**
+   * Returns an in-order iterator that follows the parent links from node to node, so it needs no
+   * auxiliary stack. Its remove takes the last returned element out of the tree.
+   * 
+   * @return iterator over all elements in ascending order
+   */
   @Override
   public Iterator<T> iterator() {
-    return new Iterator<T>() {
-      Stack<Node<T>> stack = null;
-      Node<T> current = root;
-
-      public T next() {
-        if (stack == null) {
-          stack = new Stack<Node<T>>();
-          current = root;
-        }
-        while (current != null) {
-          stack.push(current);
-          current = current.leftChild;
-        }
-        if (!stack.isEmpty()) {
-          Node<T> processedNode = stack.pop();
-          current = processedNode.rightChild;
-          return processedNode.data;
-        } else {
-          throw new NoSuchElementException("There are no more elements in the tree");
-        }
-
-      }
-
-      public boolean hasNext() {
-        return !(current == null && (stack == null || stack.isEmpty()));
-      }
-
-    };
+    return new NodeIterator(root == null ? null : leftmost(root));
   }
 
-  public ISong search(ISong data) {
-    Node<T> target = searchHelper(root, (T) data);
-    return (ISong) target.data;
+  /**
+   * Returns a spliterator over the elements in ascending order. It splits its range at the middle
+   * element, found through the subtree sizes, so both halves report their exact size and parallel
+   * streams can spread a scan over all cores.
+   * 
+   * @return a SIZED, SUBSIZED, SORTED and ORDERED spliterator over this tree
+   */
+  @Override
+  public Spliterator<T> spliterator() {
+    return new TreeSpliterator(root == null ? null : leftmost(root), 0, size);
   }
 
-  private Node<T> searchHelper(Node<T> root, T val) {
-    if (root == null)
-      throw new NoSuchElementException("no element with such value");
-    if (root.data.compareTo(val) == 0)
-      return root;
-    if (root.data.compareTo(val) > 0)
-      return searchHelper(root.leftChild, val);
-    return searchHelper(root.rightChild, val);
+  /**
+   * Finds the in-order successor of a node: the least node of its right subtree, or else the first
+   * ancestor that it is a left descendant of.
+   * 
+   * @param node the node to start from
+   * @return the next node in order, or null if node holds the largest element
+   */
+  private Node<T> successor(Node<T> node) {
+    if (node.rightChild != null) {
+      return leftmost(node.rightChild);
+    }
+    Node<T> child = node;
+    Node<T> parent = node.parent;
+    while (parent != null && child == parent.rightChild) {
+      child = parent;
+      parent = parent.parent;
+    }
+    return parent;
   }
 
-  public boolean remove(T data) throws NullPointerException, IllegalArgumentException {
-    if (data == null)
-      throw new NullPointerException("This RedBlackTree cannot remove null references.");
-    if (root == null) {
-      throw new IllegalArgumentException("This RedBlackTree is null");
+  /**
+   * Iterator that walks from a starting node through successor links
+   */
+  private class NodeIterator implements Iterator<T> {
+    private Node<T> next;
+    // node returned by the last call to next, or null once it has been removed
+    private Node<T> lastReturned;
+
+    NodeIterator(Node<T> first) {
+      this.next = first;
     }
-    if (!contains(data)) {
-      throw new IllegalArgumentException("This RedBlackTree does not contain that value.");
+
+    public boolean hasNext() {
+      return next != null;
     }
 
-    Node<T> newNode = new Node<>(data);
+    public T next() {
+      if (next == null) {
+        throw new NoSuchElementException("There are no more elements in the tree");
+      }
+      lastReturned = next;
+      next = successor(lastReturned);
+      return lastReturned.data;
+    }
 
-    if (root.data == newNode.data && (root.leftChild == null && root.rightChild == null)) {
-      root = null;
+    /**
+     * Removes the element last returned by next. A node with two children takes its successor's
+     * data and the successor node is unlinked instead, so the iteration continues at the node
+     * that was just returned.
+     */
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException("next has not been called since the last remove");
+      }
+      if (lastReturned.leftChild != null && lastReturned.rightChild != null) {
+        next = lastReturned;
+      }
+      removeNode(lastReturned);
       size--;
-      return true;
-    } else {
-
-      boolean returnValue = removeHelper(newNode, root);
-      if (returnValue)
-        size--;
-      else
-        returnValue = false;
-      return returnValue;
+      lastReturned = null;
     }
   }
 
-  private boolean removeHelper(Node<T> node, Node<T> subtree) {
+  /**
+   * Spliterator over the elements at positions index (inclusive) to fence (exclusive)
+   */
+  private class TreeSpliterator implements Spliterator<T> {
+    // node at position index, or null when it has not been looked up yet
+    private Node<T> current;
+    private int index;
+    private final int fence;
+
+    TreeSpliterator(Node<T> current, int index, int fence) {
+      this.current = current;
+      this.index = index;
+      this.fence = fence;
+    }
 
-    int compare = node.data.compareTo(subtree.data);
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+      if (index >= fence) {
+        return false;
+      }
+      if (current == null) {
+        current = selectNode(index);
+      }
+      T data = current.data;
+      current = successor(current);
+      index++;
+      action.accept(data);
+      return true;
+    }
 
-    if (compare == 0) {
-      Node<T> movedUpNode = null;
-      int deletedNodeColor = 0;
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+      while (tryAdvance(action)) {
+      }
+    }
 
-      if (subtree.leftChild == null || subtree.rightChild == null) {
+    @Override
+    public Spliterator<T> trySplit() {
+      int remaining = fence - index;
+      if (remaining < 2) {
+        return null;
+      }
+      int middle = index + remaining / 2;
+      Spliterator<T> prefix = new TreeSpliterator(current, index, middle);
+      index = middle;
+      current = null;
+      return prefix;
+    }
 
-        movedUpNode = removeForAtleastOneChild(subtree);
-        deletedNodeColor = subtree.blackHeight;
+    @Override
+    public long estimateSize() {
+      return fence - index;
+    }
 
-      }
+    @Override
+    public int characteristics() {
+      return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED | Spliterator.ORDERED
+          | Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+      // sorted by the natural ordering of the elements
+      return null;
+    }
+  }
+
+  /**
+   * Returns the greatest element less than or equal to data, or null if there is none.
+   * 
+   * @param data the value to look up
+   * @return the floor of data in this tree
+   */
+  public T floor(T data) {
+    return dataOf(nearest(data, true, true));
+  }
 
-      if (subtree.leftChild != null && subtree.rightChild != null) {
+  /**
+   * Returns the least element greater than or equal to data, or null if there is none.
+   * 
+   * @param data the value to look up
+   * @return the ceiling of data in this tree
+   */
+  public T ceiling(T data) {
+    return dataOf(nearest(data, false, true));
+  }
 
-        Node<T> successor = least(subtree.rightChild);
-        subtree.data = successor.data;
+  /**
+   * Returns the least element strictly greater than data, or null if there is none.
+   * 
+   * @param data the value to look up
+   * @return the next element after data in this tree
+   */
+  public T higher(T data) {
+    return dataOf(nearest(data, false, false));
+  }
 
-        movedUpNode = removeForAtleastOneChild(successor);
-        deletedNodeColor = successor.blackHeight;
+  /**
+   * Returns the greatest element strictly less than data, or null if there is none.
+   * 
+   * @param data the value to look up
+   * @return the element before data in this tree
+   */
+  public T lower(T data) {
+    return dataOf(nearest(data, true, false));
+  }
 
+  /**
+   * Walks down from the root once, remembering the closest element seen on the requested side of
+   * data.
+   * 
+   * @param data      the value to look up
+   * @param below     true to look for elements smaller than data, false for larger ones
+   * @param inclusive whether an element equal to data is an answer
+   * @return the node holding the closest element on that side, or null if there is none
+   */
+  private Node<T> nearest(T data, boolean below, boolean inclusive) {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    Node<T> best = null;
+    Node<T> current = root;
+    int comparisons = 0;
+    while (current != null) {
+      int compare = data.compareTo(current.data);
+      comparisons++;
+      if (compare == 0 && inclusive) {
+        best = current;
+        break;
+      }
+      if (below ? compare > 0 : compare < 0) {
+        best = current;
+        current = below ? current.rightChild : current.leftChild;
+      } else {
+        current = below ? current.leftChild : current.rightChild;
       }
+    }
+    TreeMetrics.comparisons(comparisons);
+    return best;
+  }
 
-      if (deletedNodeColor == 1) {
+  private T dataOf(Node<T> node) {
+    return node == null ? null : node.data;
+  }
 
-        enforceRBTPropertiesAfterRemove(movedUpNode);
+  /**
+   * Returns an in-order iterator that starts at the least element greater than or equal to data.
+   * Only the path to that element is visited before the first call to next.
+   * 
+   * @param data the value to start from
+   * @return iterator over the elements greater than or equal to data
+   */
+  public Iterator<T> iteratorFrom(T data) {
+    return new NodeIterator(nearest(data, false, true));
+  }
 
-        if (movedUpNode.data == null) {
-          moveChild(movedUpNode.parent, movedUpNode, null);
-        }
-      }
+  @SuppressWarnings("unchecked")
+  public ISong search(ISong data) {
+    Node<T> target = findNode((T) data);
+    if (target == null)
+      throw new NoSuchElementException("no element with such value");
+    return (ISong) target.data;
+  }
 
-    } else if (compare < 0) {
-      removeHelper(node, subtree.leftChild);
-    } else {
-      removeHelper(node, subtree.rightChild);
+  /**
+   * Removes the element equal to data, finding it in a single descent
+   * 
+   * @param data the value to remove
+   * @return the element that was stored in the tree, which may be a different object than data
+   * @throws NullPointerException     when data is null
+   * @throws IllegalArgumentException when the tree does not contain an equal value
+   */
+  public T remove(T data) throws NullPointerException, IllegalArgumentException {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot remove null references.");
+    if (root == null) {
+      throw new IllegalArgumentException("This RedBlackTree is null");
+    }
+    Node<T> target = findNode(data);
+    if (target == null) {
+      throw new IllegalArgumentException("This RedBlackTree does not contain that value.");
+    }
+    // removeNode may move the successor's data into target, so take the element out first
+    T removed = target.data;
+    removeNode(target);
+    size--;
+    return removed;
+  }
+
+  /**
+   * Unlinks the given node from the tree and restores the Red Black Tree properties.
+   * 
+   * @param subtree the node holding the value to remove
+   */
+  private void removeNode(Node<T> subtree) {
+    // a node with two children takes its successor's data, and the successor is removed instead
+    Node<T> removed = subtree;
+    if (subtree.leftChild != null && subtree.rightChild != null) {
+      removed = leftmost(subtree.rightChild);
+      subtree.data = removed.data;
     }
-    root.blackHeight = 1;
-    return true;
 
+    Node<T> parent = removed.parent;
+    Node<T> movedUpNode = removeForAtleastOneChild(removed);
+    for (Node<T> ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+      ancestor.subtreeSize--;
+    }
+
+    if (removed.blackHeight == 1) {
+      enforceRBTPropertiesAfterRemove(movedUpNode, parent);
+    }
   }
 
   private void moveChild(Node<T> parent, Node<T> deletedChild, Node<T> newChild) {
@@ -530,182 +710,646 @@ public class RedBlackTree<T extends Comparable<T>> implements SortedCollectionIn
     }
   }
 
-  private Node<T> least(Node<T> node) {
+  /**
+   * Unlinks a node that has at most one child, moving that child up into its place
+   * 
+   * @param node the node to unlink
+   * @return the child that took the node's place, or null if it had none
+   */
+  private Node<T> removeForAtleastOneChild(Node<T> node) {
+    Node<T> child = node.leftChild != null ? node.leftChild : node.rightChild;
+    moveChild(node.parent, node, child);
+    return child;
+  }
 
-    while (node.leftChild != null) {
-      node = node.leftChild;
+  /**
+   * Restores the Red Black Tree properties after a black node was removed. The node that moved up
+   * into its place carries an extra black, which is pushed up the tree until it can be absorbed by
+   * a red node, or removed with at most three rotations.
+   * 
+   * @param node   the node that took the removed node's place, which may be null
+   * @param parent the parent of that position
+   */
+  private void enforceRBTPropertiesAfterRemove(Node<T> node, Node<T> parent) {
+    while (node != root && isBlack(node)) {
+      boolean nodeIsLeft = node == parent.leftChild;
+      Node<T> sibling = nodeIsLeft ? parent.rightChild : parent.leftChild;
+
+      if (!isBlack(sibling)) {
+        fixRedSibling(parent, sibling, nodeIsLeft);
+        sibling = nodeIsLeft ? parent.rightChild : parent.leftChild;
+      }
+
+      if (isBlack(sibling.leftChild) && isBlack(sibling.rightChild)) {
+        // push the extra black up to the parent
+        sibling.blackHeight = 0;
+        TreeMetrics.recolorings(1);
+        node = parent;
+        parent = node.parent;
+      } else {
+        fixBlackSiblingWithRedChild(parent, sibling, nodeIsLeft);
+        node = root;
+      }
     }
-    return node;
+    if (node != null && node.blackHeight == 0) {
+      TreeMetrics.recolorings(1);
+      node.blackHeight = 1;
+    }
+  }
 
+  /**
+   * Handles a black sibling with at least one red child: one or two rotations move a red node into
+   * the removed node's side of the tree, which is then colored black.
+   */
+  private void fixBlackSiblingWithRedChild(Node<T> parent, Node<T> siblingNode,
+      boolean nodeIsLeft) {
+    if (nodeIsLeft) {
+      if (isBlack(siblingNode.rightChild)) {
+        siblingNode.leftChild.blackHeight = 1;
+        siblingNode.blackHeight = 0;
+        TreeMetrics.recolorings(2);
+        rotateRight(siblingNode);
+        siblingNode = parent.rightChild;
+      }
+      siblingNode.blackHeight = parent.blackHeight;
+      parent.blackHeight = 1;
+      siblingNode.rightChild.blackHeight = 1;
+      TreeMetrics.recolorings(3);
+      rotateLeft(parent);
+    } else {
+      if (isBlack(siblingNode.leftChild)) {
+        siblingNode.rightChild.blackHeight = 1;
+        siblingNode.blackHeight = 0;
+        TreeMetrics.recolorings(2);
+        rotateLeft(siblingNode);
+        siblingNode = parent.leftChild;
+      }
+      siblingNode.blackHeight = parent.blackHeight;
+      parent.blackHeight = 1;
+      siblingNode.leftChild.blackHeight = 1;
+      TreeMetrics.recolorings(3);
+      rotateRight(parent);
+    }
   }
 
-  private Node<T> removeForAtleastOneChild(Node<T> node) {
+  private void fixRedSibling(Node<T> parent, Node<T> redSibling, boolean nodeIsLeft) {
+    // recolor sibling to black and parent of the node to red
+    redSibling.blackHeight = 1;
+    parent.blackHeight = 0;
+    TreeMetrics.recolorings(2);
 
-    if (node.leftChild != null) {
-      moveChild(node.parent, node, node.leftChild);
-      return node.leftChild;
+    // rotate the sibling up, so that the node gets a black sibling
+    if (nodeIsLeft) {
+      rotateLeft(parent);
+    } else {
+      rotateRight(parent);
     }
+  }
 
-    else if (node.rightChild != null) {
-      moveChild(node.parent, node, node.rightChild);
-      return node.rightChild;
+  private boolean isBlack(Node<T> node) {
+    return node == null || node.blackHeight == 1;
+  }
+
+  /**
+   * Moves the right child of node up into its place, and node down to the left
+   */
+  private void rotateLeft(Node<T> node) {
+    TreeMetrics.rotation();
+    Node<T> parent = node.parent;
+    Node<T> child = node.rightChild;
+
+    node.rightChild = child.leftChild;
+    if (child.leftChild != null) {
+      child.leftChild.parent = node;
     }
 
-    else {
-      Node<T> newChild;
-      if (node.blackHeight == 1) {
-        newChild = new Node<>(null);
-        newChild.blackHeight = 1;
-      } else {
-        newChild = null;
-      }
+    child.leftChild = node;
+    node.parent = child;
+
+    moveChild(parent, node, child);
+    updateSize(node);
+    updateSize(child);
+  }
+
+  /**
+   * Moves the left child of node up into its place, and node down to the right
+   */
+  private void rotateRight(Node<T> node) {
+    TreeMetrics.rotation();
+    Node<T> parent = node.parent;
+    Node<T> child = node.leftChild;
 
-      moveChild(node.parent, node, newChild);
-      return newChild;
+    node.leftChild = child.rightChild;
+    if (child.rightChild != null) {
+      child.rightChild.parent = node;
     }
 
+    child.rightChild = node;
+    node.parent = child;
+
+    moveChild(parent, node, child);
+    updateSize(node);
+    updateSize(child);
   }
 
-  private void enforceRBTPropertiesAfterRemove(Node<T> node) {
-    if (node == root) {
-      node.blackHeight = 1;
+  /**
+   * Recomputes the subtree size of a node from its children, after the children changed
+   */
+  private void updateSize(Node<T> node) {
+    node.subtreeSize = 1 + sizeOf(node.leftChild) + sizeOf(node.rightChild);
+  }
+
+  /**
+   * Inserts many values at once. The values are sorted, in parallel when there are many of them.
+   * An empty tree is then built from them in linear time, without any rotations, so loading m
+   * values costs one sort instead of m inserts. A tree that already holds n values is not rebuilt:
+   * the values are built into a tree of their own and merged in with union, in
+   * O(m log(n / m + 1)) time. Nothing is inserted when the values are rejected.
+   * 
+   * @param values to be added into this tree, in any order
+   * @throws NullPointerException     when one of the values is null
+   * @throws IllegalArgumentException when a value is given twice or the tree already contains it
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public void bulkLoad(Collection<? extends T> values)
+      throws NullPointerException, IllegalArgumentException {
+    Object[] sorted = values.toArray();
+    for (Object value : sorted) {
+      if (value == null)
+        throw new NullPointerException("This RedBlackTree cannot store null references.");
+    }
+    if (sorted.length >= PARALLEL_SORT_THRESHOLD) {
+      Arrays.parallelSort(sorted, (a, b) -> ((T) a).compareTo((T) b));
+    } else {
+      Arrays.sort(sorted, (a, b) -> ((T) a).compareTo((T) b));
+    }
+    List<T> added = (List<T>) (List<?>) Arrays.asList(sorted);
+    for (int i = 0; i < added.size(); i++) {
+      if ((i > 0 && added.get(i - 1).compareTo(added.get(i)) == 0)
+          || (root != null && findNode(added.get(i)) != null))
+        throw new IllegalArgumentException("This RedBlackTree already contains that value.");
+    }
+    if (root == null) {
+      build(added);
       return;
     }
+    RedBlackTree<T> loaded = new RedBlackTree<>();
+    loaded.build(added);
+    union(loaded);
+  }
+
+  /**
+   * Fills this empty tree with elements that are already in strictly increasing order, in linear
+   * time.
+   * 
+   * @param sorted the elements, in increasing order and without duplicates
+   * @throws IllegalStateException    when the tree is not empty
+   * @throws IllegalArgumentException when the elements are not strictly increasing
+   */
+  void buildFromSorted(List<? extends T> sorted) {
+    if (root != null)
+      throw new IllegalStateException("This RedBlackTree already contains values.");
+    for (int i = 0; i < sorted.size(); i++) {
+      if (sorted.get(i) == null)
+        throw new NullPointerException("This RedBlackTree cannot store null references.");
+      if (i > 0 && sorted.get(i - 1).compareTo(sorted.get(i)) >= 0)
+        throw new IllegalArgumentException("The values are not in strictly increasing order.");
+    }
+    build(sorted);
+  }
 
-    Node<T> sibling = getSiblingNode(node);
+  /**
+   * Replaces the contents of this tree with sorted elements. The middle element becomes the root
+   * and each half is built the same way, so every level but the deepest is full. All nodes are
+   * black except those on the deepest level when it is not full, which are red, so every path from
+   * the root has the same number of black nodes.
+   */
+  private void build(List<? extends T> sorted) {
+    int n = sorted.size();
+    // depth of the deepest level, which is only colored red when it is not full
+    int deepest = 31 - Integer.numberOfLeadingZeros(n);
+    boolean redDeepest = Integer.bitCount(n + 1) != 1;
+    root = buildSubtree(sorted, 0, n, 0, deepest, redDeepest);
+    size = n;
+  }
 
-    if (sibling.blackHeight == 0) {
-      fixRedSibling(node, sibling);
-      sibling = getSiblingNode(node);
+  private Node<T> buildSubtree(List<? extends T> sorted, int from, int to, int depth, int deepest,
+      boolean redDeepest) {
+    if (from >= to) {
+      return null;
     }
+    int middle = (from + to) >>> 1;
+    Node<T> node = new Node<>(sorted.get(middle));
+    node.blackHeight = depth == deepest && redDeepest ? 0 : 1;
+    node.leftChild = buildSubtree(sorted, from, middle, depth + 1, deepest, redDeepest);
+    node.rightChild = buildSubtree(sorted, middle + 1, to, depth + 1, deepest, redDeepest);
+    if (node.leftChild != null) {
+      node.leftChild.parent = node;
+    }
+    if (node.rightChild != null) {
+      node.rightChild.parent = node;
+    }
+    node.subtreeSize = to - from;
+    return node;
+  }
 
-    if ((sibling.leftChild != null && sibling.leftChild.blackHeight == 1)
-        && (sibling.leftChild != null && sibling.rightChild.blackHeight == 1)) {
-      sibling.blackHeight = 0;
-      if (node.parent.blackHeight == 0) {
-        node.parent.blackHeight = 1;
-      } else {
-        enforceRBTPropertiesAfterRemove(node.parent);
-      }
+  /**
+   * Moves every value greater than or equal to key out of this tree and into a new tree. Both trees
+   * are cut out of the nodes of this one, without copying any of them, in O(log^2 n) time.
+   * 
+   * @param key where to split the values
+   * @return a tree with the values greater than or equal to key
+   * @throws NullPointerException when key is null
+   */
+  public RedBlackTree<T> split(T key) throws NullPointerException {
+    if (key == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    Split<T> parts = split(root, key);
+    RedBlackTree<T> greater = new RedBlackTree<>();
+    greater.setRoot(parts.equal == null ? parts.greater : join(null, parts.equal, parts.greater));
+    setRoot(parts.less);
+    return greater;
+  }
+
+  /**
+   * Moves every value of greater to the end of this tree, leaving greater empty. This takes
+   * O(log n) time, as only the nodes along one side of the taller tree are visited.
+   * 
+   * @param greater a tree whose values are all greater than the values of this tree
+   * @throws IllegalArgumentException when a value of greater is not greater than every value of
+   *                                  this tree
+   */
+  public void join(RedBlackTree<T> greater) throws IllegalArgumentException {
+    checkOther(greater);
+    if (root != null && greater.root != null
+        && rightmost(root).data.compareTo(leftmost(greater.root).data) >= 0)
+      throw new IllegalArgumentException("The joined tree has values that are not greater.");
+    setRoot(join2(root, greater.root));
+    greater.setRoot(null);
+  }
+
+  /**
+   * Adds every value of other to this tree, leaving other empty. Where both trees hold equal values
+   * the one from this tree is kept. The trees are merged by splitting other at the root of this
+   * tree and merging the halves recursively, which takes O(m log(n / m + 1)) time for trees of m
+   * and n values, m being the smaller. Large trees merge their halves in parallel.
+   * 
+   * @param other the tree to take the values from
+   */
+  public void union(RedBlackTree<T> other) {
+    checkOther(other);
+    setRoot(union(root, other.root));
+    other.setRoot(null);
+  }
+
+  /**
+   * Removes every value that is not also in other from this tree, leaving other empty. Like union,
+   * this takes O(m log(n / m + 1)) time and runs in parallel for large trees.
+   * 
+   * @param other the tree whose values are kept in this one
+   */
+  public void intersection(RedBlackTree<T> other) {
+    checkOther(other);
+    setRoot(intersection(root, other.root));
+    other.setRoot(null);
+  }
+
+  /**
+   * Removes every value that is also in other from this tree, leaving other empty. Like union, this
+   * takes O(m log(n / m + 1)) time and runs in parallel for large trees.
+   * 
+   * @param other the tree whose values are removed from this one
+   */
+  public void difference(RedBlackTree<T> other) {
+    checkOther(other);
+    setRoot(difference(root, other.root));
+    other.setRoot(null);
+  }
+
+  private void checkOther(RedBlackTree<T> other) {
+    if (other == null)
+      throw new NullPointerException("The other tree cannot be null.");
+    if (other == this)
+      throw new IllegalArgumentException("A RedBlackTree cannot be combined with itself.");
+  }
+
+  /**
+   * Makes node the root of this tree, coloring it black
+   */
+  private void setRoot(Node<T> node) {
+    root = node;
+    if (node != null) {
+      node.parent = null;
+      node.blackHeight = 1;
     }
+    size = sizeOf(node);
+  }
 
-    else {
-      fixBlackSiblingWithOneOrZeroChild(node, sibling);
+  /**
+   * The values of a tree that are less than a key, the node holding the key if there is one, and
+   * the values that are greater
+   */
+  private static class Split<T> {
+    Node<T> less;
+    Node<T> equal;
+    Node<T> greater;
+
+    Split(Node<T> less, Node<T> equal, Node<T> greater) {
+      this.less = less;
+      this.equal = equal;
+      this.greater = greater;
     }
   }
 
-  private void fixBlackSiblingWithOneOrZeroChild(Node<T> node, Node<T> siblingNode) {
+  /**
+   * Splits a tree at key. The nodes on the path to key are joined back onto the side they belong
+   * to, and all other subtrees are reused as they are.
+   */
+  private static <T extends Comparable<T>> Split<T> split(Node<T> tree, T key) {
+    if (tree == null) {
+      return new Split<>(null, null, null);
+    }
+    Node<T> left = detach(tree.leftChild);
+    Node<T> right = detach(tree.rightChild);
+    int compare = key.compareTo(tree.data);
+    if (compare == 0) {
+      return new Split<>(left, tree, right);
+    } else if (compare < 0) {
+      Split<T> parts = split(left, key);
+      parts.greater = join(parts.greater, tree, right);
+      return parts;
+    } else {
+      Split<T> parts = split(right, key);
+      parts.less = join(left, tree, parts.less);
+      return parts;
+    }
+  }
 
-    if (node.isLeftChild() && siblingNode.rightChild != null
-        && siblingNode.rightChild.blackHeight == 1) {
+  /**
+   * Splits the largest node off a tree
+   * 
+   * @return the remaining tree as less, and the largest node as equal
+   */
+  private static <T> Split<T> splitLast(Node<T> tree) {
+    Node<T> left = detach(tree.leftChild);
+    Node<T> right = detach(tree.rightChild);
+    if (right == null) {
+      return new Split<>(left, tree, null);
+    }
+    Split<T> parts = splitLast(right);
+    parts.less = join(left, tree, parts.less);
+    return parts;
+  }
 
-      siblingNode.leftChild.blackHeight = 1;
-      siblingNode.blackHeight = 0;
-      rightRotation(siblingNode);
-      siblingNode = node.parent.rightChild;
-    } else if (!node.isLeftChild() && siblingNode.leftChild != null
-        && siblingNode.leftChild.blackHeight == 1) {
+  /**
+   * Joins two trees and a middle node, all values of left being smaller than middle and all values
+   * of right greater. The shorter tree, by black height, is hung into the right or left spine of
+   * the taller one at a black node of the same black height, and red violations are fixed with one
+   * rotation per level on the way back up.
+   * 
+   * @return the joined tree, with a black root
+   */
+  private static <T> Node<T> join(Node<T> left, Node<T> middle, Node<T> right) {
+    // a red root can always be made black, which lets both sides be treated as complete trees
+    blacken(left);
+    blacken(right);
+    int leftHeight = blackHeight(left);
+    int rightHeight = blackHeight(right);
+    Node<T> joined;
+    if (leftHeight > rightHeight) {
+      joined = joinRight(left, leftHeight, middle, right, rightHeight);
+    } else if (leftHeight < rightHeight) {
+      joined = joinLeft(left, leftHeight, middle, right, rightHeight);
+    } else {
+      joined = attach(middle, left, right);
+    }
+    joined.blackHeight = 1;
+    return joined;
+  }
 
-      siblingNode.rightChild.blackHeight = 1;
-      siblingNode.blackHeight = 0;
-      rotateLeft(siblingNode);
-      siblingNode = node.parent.leftChild;
+  private static <T> Node<T> joinRight(Node<T> tree, int height, Node<T> middle, Node<T> right,
+      int rightHeight) {
+    if (!isRed(tree) && height == rightHeight) {
+      middle.blackHeight = 0;
+      return attach(middle, tree, right);
+    }
+    Node<T> child = joinRight(tree.rightChild, isRed(tree) ? height : height - 1, middle, right,
+        rightHeight);
+    attach(tree, tree.leftChild, child);
+    if (!isRed(tree) && isRed(child) && isRed(child.rightChild)) {
+      child.rightChild.blackHeight = 1;
+      Node<T> pivot = tree.rightChild;
+      attach(tree, tree.leftChild, pivot.leftChild);
+      return attach(pivot, tree, pivot.rightChild);
     }
+    return tree;
+  }
 
-    siblingNode.blackHeight = node.parent.blackHeight;
-    node.parent.blackHeight = 1;
-    if (node.isLeftChild()) {
-      if (siblingNode.rightChild != null && siblingNode.leftChild == null) {
-        siblingNode.rightChild.blackHeight = 1;
-        rotateLeft(node.parent);
-        return;
-      }
-      if (siblingNode.leftChild != null && siblingNode.rightChild == null) {
-        rightRotation(siblingNode);
-        rotateLeft(node.parent);
-        siblingNode.blackHeight = 1;
-        return;
-      }
+  private static <T> Node<T> joinLeft(Node<T> left, int leftHeight, Node<T> middle, Node<T> tree,
+      int height) {
+    if (!isRed(tree) && height == leftHeight) {
+      middle.blackHeight = 0;
+      return attach(middle, left, tree);
+    }
+    Node<T> child = joinLeft(left, leftHeight, middle, tree.leftChild,
+        isRed(tree) ? height : height - 1);
+    attach(tree, child, tree.rightChild);
+    if (!isRed(tree) && isRed(child) && isRed(child.leftChild)) {
+      child.leftChild.blackHeight = 1;
+      Node<T> pivot = tree.leftChild;
+      attach(tree, pivot.rightChild, tree.rightChild);
+      return attach(pivot, pivot.leftChild, tree);
+    }
+    return tree;
+  }
 
-      if (siblingNode.leftChild != null && siblingNode.rightChild != null) {
-        rightRotation(node.parent);
-        siblingNode.rightChild.blackHeight = 1;
-        return;
-      }
+  /**
+   * Joins two trees without a middle node, by splitting the largest node off the left one
+   */
+  private static <T> Node<T> join2(Node<T> left, Node<T> right) {
+    if (left == null) {
+      return right;
+    }
+    Split<T> parts = splitLast(left);
+    return join(parts.less, parts.equal, right);
+  }
 
+  private static <T extends Comparable<T>> Node<T> union(Node<T> first, Node<T> second) {
+    if (first == null) {
+      return second;
+    } else if (second == null) {
+      return first;
     }
-    if (!node.isLeftChild()) {
-      if (siblingNode.leftChild != null && siblingNode.rightChild == null) {
-        siblingNode.leftChild.blackHeight = 1;
-        rightRotation(node.parent);
-        return;
-      }
-      if (siblingNode.rightChild != null && siblingNode.leftChild == null) {
-        rotateLeft(siblingNode);
-        rightRotation(node.parent);
-        siblingNode.blackHeight = 1;
-        return;
-      }
+    int size = sizeOf(first) + sizeOf(second);
+    Node<T> left = detach(first.leftChild);
+    Node<T> right = detach(first.rightChild);
+    Split<T> parts = split(second, first.data);
+    Node<T>[] halves = both(() -> union(left, parts.less), () -> union(right, parts.greater), size);
+    return join(halves[0], first, halves[1]);
+  }
 
-      if (siblingNode.leftChild != null && siblingNode.rightChild != null) {
-        rightRotation(node.parent);
-        siblingNode.leftChild.blackHeight = 1;
-        return;
-      }
+  private static <T extends Comparable<T>> Node<T> intersection(Node<T> first, Node<T> second) {
+    if (first == null || second == null) {
+      return null;
     }
+    int size = sizeOf(first) + sizeOf(second);
+    Node<T> left = detach(first.leftChild);
+    Node<T> right = detach(first.rightChild);
+    Split<T> parts = split(second, first.data);
+    Node<T>[] halves = both(() -> intersection(left, parts.less),
+        () -> intersection(right, parts.greater), size);
+    return parts.equal != null ? join(halves[0], first, halves[1]) : join2(halves[0], halves[1]);
   }
 
-  private void fixRedSibling(Node<T> node, Node<T> redSibling) {
-    // recolor sibling to black and parent of the node to red
-    redSibling.blackHeight = 1;
-    node.parent.blackHeight = 0;
+  private static <T extends Comparable<T>> Node<T> difference(Node<T> first, Node<T> second) {
+    if (first == null || second == null) {
+      return first;
+    }
+    int size = sizeOf(first) + sizeOf(second);
+    Node<T> left = detach(second.leftChild);
+    Node<T> right = detach(second.rightChild);
+    Split<T> parts = split(first, second.data);
+    Node<T>[] halves = both(() -> difference(parts.less, left),
+        () -> difference(parts.greater, right), size);
+    return join2(halves[0], halves[1]);
+  }
 
-    // rotate left is node is parent of left chile else, do otherwise
-    if (node == node.parent.leftChild) {
-      rotateLeft(node.parent);
+  /**
+   * Computes the two halves of a set operation, forking the first one onto the common fork join
+   * pool when the inputs are large enough to be worth it. The halves work on disjoint nodes.
+   * 
+   * @param size the number of nodes in both inputs, which has to be measured before splitting
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> Node<T>[] both(Supplier<Node<T>> first, Supplier<Node<T>> second, int size) {
+    Node<T>[] halves = (Node<T>[]) new Node<?>[2];
+    if (size < PARALLEL_SET_THRESHOLD) {
+      halves[0] = first.get();
+      halves[1] = second.get();
     } else {
-      rightRotation(node.parent);
+      ForkJoinTask<Node<T>> task = ForkJoinTask.adapt(first::get).fork();
+      halves[1] = second.get();
+      halves[0] = task.join();
     }
+    return halves;
   }
 
-  private void rotateLeft(Node<T> node) {
-    Node<T> parent = node.parent;
-    Node<T> child = node.rightChild;
+  private static <T> Node<T> attach(Node<T> node, Node<T> left, Node<T> right) {
+    node.leftChild = left;
+    node.rightChild = right;
+    if (left != null) {
+      left.parent = node;
+    }
+    if (right != null) {
+      right.parent = node;
+    }
+    node.parent = null;
+    node.subtreeSize = 1 + sizeOf(left) + sizeOf(right);
+    return node;
+  }
 
-    node.rightChild = child.leftChild;
-    if (child.leftChild != null) {
-      child.leftChild.parent = node;
+  private static <T> Node<T> detach(Node<T> node) {
+    if (node != null) {
+      node.parent = null;
     }
+    return node;
+  }
 
-    child.leftChild = node;
-    node.parent = child;
+  private static void blacken(Node<?> node) {
+    if (node != null) {
+      node.blackHeight = 1;
+    }
+  }
 
-    moveChild(parent, node, child);
+  private static boolean isRed(Node<?> node) {
+    return node != null && node.blackHeight == 0;
   }
 
-  private void rightRotation(Node<T> node) {
-    Node<T> parent = node.parent;
-    Node<T> child = node.leftChild;
+  /**
+   * Counts the black nodes on the path from node down to its leftmost leaf, which is the same for
+   * every path in a valid tree
+   */
+  private static int blackHeight(Node<?> node) {
+    int height = 0;
+    for (; node != null; node = node.leftChild) {
+      if (node.blackHeight == 1) {
+        height++;
+      }
+    }
+    return height;
+  }
 
-    node.leftChild = child.rightChild;
-    if (child.rightChild != null) {
-      child.rightChild.parent = node;
+  private static <T> Node<T> leftmost(Node<T> node) {
+    while (node.leftChild != null) {
+      node = node.leftChild;
     }
+    return node;
+  }
 
-    child.rightChild = node;
-    node.parent = child;
+  private static <T> Node<T> rightmost(Node<T> node) {
+    while (node.rightChild != null) {
+      node = node.rightChild;
+    }
+    return node;
+  }
 
-    moveChild(parent, node, child);
+  private static int sizeOf(Node<?> node) {
+    return node == null ? 0 : node.subtreeSize;
   }
 
-  private Node<T> getSiblingNode(Node<T> node) {
-    Node<T> parent = node.parent;
-    if (node == parent.leftChild) {
-      return parent.rightChild;
-    } else if (node == parent.rightChild) {
-      return parent.leftChild;
-    } else {
-      throw new IllegalStateException("can't get sibling, invalid relation");
+  /**
+   * Returns the number of elements in this tree that are strictly less than data, which is the
+   * index data has or would have in sorted order.
+   * 
+   * @param data the value to rank
+   * @return the number of smaller elements
+   */
+  public int rank(T data) {
+    if (data == null)
+      throw new NullPointerException("This RedBlackTree cannot store null references.");
+    int rank = 0;
+    int comparisons = 0;
+    Node<T> current = root;
+    while (current != null) {
+      comparisons++;
+      if (data.compareTo(current.data) <= 0) {
+        current = current.leftChild;
+      } else {
+        rank += sizeOf(current.leftChild) + 1;
+        current = current.rightChild;
+      }
+    }
+    TreeMetrics.comparisons(comparisons);
+    return rank;
+  }
+
+  /**
+   * Returns the element at the given position in sorted order, using the subtree sizes to skip
+   * whole subtrees.
+   * 
+   * @param index zero based position of the element
+   * @return the element with exactly index smaller elements
+   * @throws IndexOutOfBoundsException when index is negative or not less than size()
+   */
+  public T select(int index) {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for size " + size);
+    return selectNode(index).data;
+  }
+
+  private Node<T> selectNode(int index) {
+    Node<T> current = root;
+    while (true) {
+      int leftSize = sizeOf(current.leftChild);
+      if (index < leftSize) {
+        current = current.leftChild;
+      } else if (index > leftSize) {
+        index -= leftSize + 1;
+        current = current.rightChild;
+      } else {
+        return current;
+      }
     }
   }
 }
\ No newline at end of file
@@ -0,0 +1,478 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks insert, remove, navigation, range views, rank and select, the iterator and spliterator,
+ * bulk loading, split, join and the set operations of RedBlackTree against a TreeSet, and the red
+ * black properties, parent links and subtree sizes after each change
+ */
+public class RedBlackTreeTest {
+  @Test
+  public void interleavedInsertsAndRemovesKeepTheInvariants() {
+    Random random = new Random(16);
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 20_000; i++) {
+      Integer value = random.nextInt(2_000);
+      if (random.nextInt(5) < 3) {
+        if (expected.add(value)) {
+          assertTrue(tree.insert(value));
+        } else {
+          assertThrows(IllegalArgumentException.class, () -> tree.insert(value));
+        }
+      } else if (expected.remove(value)) {
+        assertEquals(value, tree.remove(value));
+      } else {
+        assertThrows(IllegalArgumentException.class, () -> tree.remove(value));
+      }
+      assertValid(tree);
+      assertEquals(expected.size(), tree.size());
+    }
+    assertSameElements(expected, tree);
+  }
+
+  @Test
+  public void removingEverythingLeavesAnEmptyTree() {
+    Random random = new Random(17);
+    TreeSet<Integer> values = randomSet(random, 1_000, 100_000);
+    RedBlackTree<Integer> tree = treeOf(values, random);
+    for (Integer value : shuffled(values, random)) {
+      assertEquals(value, tree.remove(value));
+      assertValid(tree);
+    }
+    assertTrue(tree.isEmpty());
+    assertNull(tree.root);
+    assertThrows(IllegalArgumentException.class, () -> tree.remove(1));
+    assertThrows(NullPointerException.class, () -> tree.insert(null));
+    assertThrows(NullPointerException.class, () -> tree.remove(null));
+  }
+
+  @Test
+  public void removeReturnsTheStoredElement() {
+    RedBlackTree<String> tree = new RedBlackTree<>();
+    List<String> stored = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      String value = new String("song " + i);
+      stored.add(value);
+      tree.insert(value);
+    }
+    // removing a node with two children moves its successor's element into it
+    for (String value : stored) {
+      assertSame(value, tree.remove(new String(value)));
+      assertValid(tree);
+    }
+  }
+
+  @Test
+  public void navigationMatchesTreeSet() {
+    Random random = new Random(21);
+    for (int n : new int[] {0, 1, 2, 50, 1_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 2 * n + 1);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      // every key from below the least to above the greatest, so the boundary keys are included
+      for (int key = -1; key <= 2 * n + 1; key++) {
+        assertEquals(expected.floor(key), tree.floor(key));
+        assertEquals(expected.ceiling(key), tree.ceiling(key));
+        assertEquals(expected.higher(key), tree.higher(key));
+        assertEquals(expected.lower(key), tree.lower(key));
+      }
+    }
+    RedBlackTree<Integer> empty = new RedBlackTree<>();
+    assertThrows(NullPointerException.class, () -> empty.floor(null));
+    assertThrows(NullPointerException.class, () -> empty.ceiling(null));
+  }
+
+  @Test
+  public void rangeViewsMatchTreeSet() {
+    Random random = new Random(22);
+    for (int n : new int[] {0, 1, 2, 50, 1_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 2 * n + 1);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      for (int trial = 0; trial < 100; trial++) {
+        int from = random.nextInt(2 * n + 3) - 1;
+        int to = from + random.nextInt(2 * n + 3 - from);
+        assertEquals(new ArrayList<>(expected.tailSet(from)), listOf(tree.tailSet(from)));
+        assertEquals(new ArrayList<>(expected.tailSet(from)),
+            listOf(() -> tree.iteratorFrom(from)));
+        assertEquals(new ArrayList<>(expected.headSet(to)), listOf(tree.headSet(to)));
+        assertEquals(new ArrayList<>(expected.subSet(from, to)), listOf(tree.subSet(from, to)));
+      }
+      if (!expected.isEmpty()) {
+        int first = expected.first();
+        int last = expected.last();
+        assertEquals(new ArrayList<>(expected.subSet(first, last)),
+            listOf(tree.subSet(first, last)));
+        assertEquals(List.of(), listOf(tree.subSet(first, first)));
+        assertEquals(List.of(), listOf(tree.headSet(first)));
+        assertEquals(List.of(last), listOf(tree.tailSet(last)));
+      }
+    }
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    assertThrows(IllegalArgumentException.class, () -> tree.subSet(2, 1));
+    assertThrows(NullPointerException.class, () -> tree.subSet(null, 1));
+    assertThrows(NullPointerException.class, () -> tree.headSet(null));
+    assertThrows(NullPointerException.class, () -> tree.tailSet(null));
+    assertThrows(NoSuchElementException.class, () -> tree.subSet(1, 2).iterator().next());
+  }
+
+  @Test
+  public void rankAndSelectMatchSortedOrder() {
+    Random random = new Random(23);
+    for (int n : new int[] {0, 1, 2, 50, 1_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 2 * n + 1);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      List<Integer> sorted = new ArrayList<>(expected);
+      for (int i = 0; i < sorted.size(); i++) {
+        assertEquals(sorted.get(i), tree.select(i));
+        assertEquals(i, tree.rank(sorted.get(i)));
+      }
+      for (int key = -1; key <= 2 * n + 1; key++) {
+        assertEquals(expected.headSet(key).size(), tree.rank(key));
+      }
+      assertThrows(IndexOutOfBoundsException.class, () -> tree.select(-1));
+      assertThrows(IndexOutOfBoundsException.class, () -> tree.select(sorted.size()));
+    }
+  }
+
+  @Test
+  public void rankAndSelectFollowRemoves() {
+    Random random = new Random(24);
+    TreeSet<Integer> expected = randomSet(random, 2_000, 10_000);
+    RedBlackTree<Integer> tree = treeOf(expected, random);
+    for (int i = 0; i < 1_500; i++) {
+      Integer value = tree.select(random.nextInt(tree.size()));
+      tree.remove(value);
+      expected.remove(value);
+      int key = random.nextInt(10_000);
+      assertEquals(expected.headSet(key).size(), tree.rank(key));
+    }
+    assertValid(tree);
+    List<Integer> sorted = new ArrayList<>(expected);
+    for (int i = 0; i < sorted.size(); i++) {
+      assertEquals(sorted.get(i), tree.select(i));
+    }
+  }
+
+  @Test
+  public void iteratorWalksInOrder() {
+    Random random = new Random(25);
+    for (int n : new int[] {0, 1, 2, 1_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 100_000);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      assertSameElements(expected, tree);
+      Iterator<Integer> iterator = tree.iterator();
+      while (iterator.hasNext()) {
+        iterator.next();
+      }
+      assertThrows(NoSuchElementException.class, iterator::next);
+    }
+  }
+
+  @Test
+  public void iteratorRemoveMatchesTreeSet() {
+    Random random = new Random(26);
+    for (int n : new int[] {1, 2, 3, 1_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 100_000);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      Iterator<Integer> expectedIterator = expected.iterator();
+      Iterator<Integer> iterator = tree.iterator();
+      assertThrows(IllegalStateException.class, iterator::remove);
+      while (expectedIterator.hasNext()) {
+        assertTrue(iterator.hasNext());
+        assertEquals(expectedIterator.next(), iterator.next());
+        if (random.nextBoolean()) {
+          expectedIterator.remove();
+          iterator.remove();
+          assertThrows(IllegalStateException.class, iterator::remove);
+          assertValid(tree);
+        }
+      }
+      assertFalse(iterator.hasNext());
+      assertSameElements(expected, tree);
+    }
+    // removing from an iterator that started in the middle of the tree
+    TreeSet<Integer> expected = randomSet(random, 500, 1_000);
+    RedBlackTree<Integer> tree = treeOf(expected, random);
+    for (Iterator<Integer> iterator = tree.iteratorFrom(500); iterator.hasNext();) {
+      iterator.next();
+      iterator.remove();
+    }
+    expected.tailSet(500).clear();
+    assertValid(tree);
+    assertSameElements(expected, tree);
+  }
+
+  @Test
+  public void spliteratorSplitsIntoOrderedHalves() {
+    Random random = new Random(27);
+    for (int n : new int[] {0, 1, 2, 3, 1_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 100_000);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      Spliterator<Integer> spliterator = tree.spliterator();
+      assertTrue(spliterator.hasCharacteristics(
+          Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED | Spliterator.ORDERED));
+      assertEquals(n, spliterator.getExactSizeIfKnown());
+      Spliterator<Integer> prefix = spliterator.trySplit();
+      List<Integer> values = new ArrayList<>();
+      if (n < 2) {
+        assertNull(prefix);
+      } else {
+        assertEquals(n / 2, prefix.getExactSizeIfKnown());
+        assertEquals(n - n / 2, spliterator.getExactSizeIfKnown());
+        prefix.forEachRemaining(values::add);
+      }
+      spliterator.forEachRemaining(values::add);
+      assertEquals(new ArrayList<>(expected), values);
+      assertFalse(spliterator.tryAdvance(value -> { }));
+    }
+  }
+
+  @Test
+  public void parallelStreamsKeepOrderAndCount() {
+    Random random = new Random(28);
+    for (int n : new int[] {0, 1, 100_000}) {
+      TreeSet<Integer> expected = randomSet(random, n, 1_000_000);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      assertEquals(n, tree.stream().parallel().count());
+      assertEquals(new ArrayList<>(expected),
+          tree.stream().parallel().collect(Collectors.toList()));
+      assertEquals(expected.stream().filter(value -> value % 3 == 0).count(),
+          tree.stream().parallel().filter(value -> value % 3 == 0).count());
+    }
+  }
+
+  @Test
+  public void bulkLoadIntoAnEmptyTree() {
+    Random random = new Random(18);
+    for (int n : new int[] {0, 1, 2, 3, 7, 8, 100, 10_000}) {
+      TreeSet<Integer> values = randomSet(random, n, 1_000_000);
+      RedBlackTree<Integer> tree = new RedBlackTree<>();
+      tree.bulkLoad(shuffled(values, random));
+      assertValid(tree);
+      assertSameElements(values, tree);
+    }
+  }
+
+  @Test
+  public void bulkLoadMergesIntoAFilledTree() {
+    Random random = new Random(19);
+    for (int trial = 0; trial < 200; trial++) {
+      TreeSet<Integer> expected = randomSet(random, random.nextInt(300), 2_000);
+      RedBlackTree<Integer> tree = treeOf(expected, random);
+      TreeSet<Integer> added = randomSet(random, random.nextInt(300), 2_000);
+      added.removeAll(expected);
+      tree.bulkLoad(shuffled(added, random));
+      expected.addAll(added);
+      assertValid(tree);
+      assertSameElements(expected, tree);
+    }
+  }
+
+  @Test
+  public void rejectedBulkLoadLeavesTheTreeAsItWas() {
+    Random random = new Random(20);
+    TreeSet<Integer> expected = randomSet(random, 500, 10_000);
+    RedBlackTree<Integer> tree = treeOf(expected, random);
+    List<Integer> clashing = new ArrayList<>(List.of(-1, -2, expected.first()));
+    assertThrows(IllegalArgumentException.class, () -> tree.bulkLoad(clashing));
+    assertThrows(IllegalArgumentException.class, () -> tree.bulkLoad(List.of(-5, -5)));
+    assertValid(tree);
+    assertSameElements(expected, tree);
+  }
+
+  @Test
+  public void splitAtRandomKeys() {
+    Random random = new Random(21);
+    for (int trial = 0; trial < 300; trial++) {
+      TreeSet<Integer> values = randomSet(random, random.nextInt(500), 1_000);
+      RedBlackTree<Integer> tree = treeOf(values, random);
+      Integer key = random.nextInt(1_100) - 50;
+      RedBlackTree<Integer> greater = tree.split(key);
+      assertValid(tree);
+      assertValid(greater);
+      assertSameElements(new TreeSet<>(values.headSet(key)), tree);
+      assertSameElements(new TreeSet<>(values.tailSet(key)), greater);
+    }
+  }
+
+  @Test
+  public void joinTreesOfDifferentHeights() {
+    Random random = new Random(22);
+    for (int trial = 0; trial < 300; trial++) {
+      TreeSet<Integer> less = randomSet(random, random.nextInt(random.nextBoolean() ? 10 : 600),
+          1_000);
+      TreeSet<Integer> greater = new TreeSet<>();
+      for (Integer value : randomSet(random, random.nextInt(random.nextBoolean() ? 10 : 600),
+          1_000)) {
+        greater.add(value + 1_000);
+      }
+      RedBlackTree<Integer> tree = treeOf(less, random);
+      RedBlackTree<Integer> other = treeOf(greater, random);
+      tree.join(other);
+      less.addAll(greater);
+      assertValid(tree);
+      assertSameElements(less, tree);
+      assertTrue(other.isEmpty());
+    }
+  }
+
+  @Test
+  public void joinRejectsOverlappingTrees() {
+    RedBlackTree<Integer> tree = treeOf(new TreeSet<>(List.of(1, 5, 9)), new Random(1));
+    RedBlackTree<Integer> other = treeOf(new TreeSet<>(List.of(9, 12)), new Random(1));
+    assertThrows(IllegalArgumentException.class, () -> tree.join(other));
+    assertValid(tree);
+    assertEquals(3, tree.size());
+    assertEquals(2, other.size());
+  }
+
+  @Test
+  public void setOperationsMatchTreeSet() {
+    Random random = new Random(23);
+    for (int trial = 0; trial < 120; trial++) {
+      // some inputs are large enough for the halves to be computed in parallel
+      int bound = trial % 10 == 0 ? 40_000 : 2_000;
+      TreeSet<Integer> first = randomSet(random, random.nextInt(bound / 2), bound);
+      TreeSet<Integer> second = randomSet(random, random.nextInt(bound / 2), bound);
+
+      TreeSet<Integer> expected = new TreeSet<>(first);
+      expected.addAll(second);
+      checkSetOperation(first, second, expected, random, RedBlackTree::union);
+
+      expected = new TreeSet<>(first);
+      expected.retainAll(second);
+      checkSetOperation(first, second, expected, random, RedBlackTree::intersection);
+
+      expected = new TreeSet<>(first);
+      expected.removeAll(second);
+      checkSetOperation(first, second, expected, random, RedBlackTree::difference);
+    }
+  }
+
+  @Test
+  public void unionKeepsTheValuesOfThisTree() {
+    RedBlackTree<String> tree = new RedBlackTree<>();
+    RedBlackTree<String> other = new RedBlackTree<>();
+    String kept = new String("song");
+    tree.insert(kept);
+    other.insert(new String("song"));
+    other.insert("another");
+    tree.union(other);
+    assertValid(tree);
+    assertEquals(2, tree.size());
+    assertSame(kept, tree.searchByKey("song"));
+  }
+
+  private static void checkSetOperation(TreeSet<Integer> first, TreeSet<Integer> second,
+      TreeSet<Integer> expected, Random random,
+      BiConsumer<RedBlackTree<Integer>, RedBlackTree<Integer>> operation) {
+    RedBlackTree<Integer> tree = treeOf(first, random);
+    RedBlackTree<Integer> other = treeOf(second, random);
+    operation.accept(tree, other);
+    assertValid(tree);
+    assertSameElements(expected, tree);
+    assertTrue(other.isEmpty());
+    for (int i = 0; i < expected.size(); i += 1 + expected.size() / 50) {
+      assertEquals(i, tree.rank(tree.select(i)));
+    }
+  }
+
+  /**
+   * Builds a tree from values by inserting them one by one, in random order
+   */
+  static RedBlackTree<Integer> treeOf(TreeSet<Integer> values, Random random) {
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    for (Integer value : shuffled(values, random)) {
+      tree.insert(value);
+    }
+    return tree;
+  }
+
+  static <T> List<T> listOf(Iterable<T> values) {
+    List<T> list = new ArrayList<>();
+    for (T value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  static TreeSet<Integer> randomSet(Random random, int count, int bound) {
+    TreeSet<Integer> values = new TreeSet<>();
+    while (values.size() < Math.min(count, bound)) {
+      values.add(random.nextInt(bound));
+    }
+    return values;
+  }
+
+  static List<Integer> shuffled(TreeSet<Integer> values, Random random) {
+    List<Integer> list = new ArrayList<>(values);
+    Collections.shuffle(list, random);
+    return list;
+  }
+
+  static void assertSameElements(TreeSet<Integer> expected, RedBlackTree<Integer> tree) {
+    assertEquals(expected.size(), tree.size());
+    Iterator<Integer> actual = tree.iterator();
+    for (Integer value : expected) {
+      assertTrue(actual.hasNext());
+      assertEquals(value, actual.next());
+    }
+    assertFalse(actual.hasNext());
+  }
+
+  /**
+   * Checks that the root is black, no red node has a red child, every path has the same number of
+   * black nodes, and every parent link and subtree size is right
+   */
+  static <T extends Comparable<T>> void assertValid(RedBlackTree<T> tree) {
+    if (tree.root != null) {
+      assertEquals(1, tree.root.blackHeight, "the root must be black");
+      assertNull(tree.root.parent, "the root must not have a parent");
+    }
+    checkSubtree(tree.root);
+    assertEquals(tree.root == null ? 0 : tree.root.subtreeSize, tree.size());
+  }
+
+  private static <T extends Comparable<T>> int checkSubtree(RedBlackTree.Node<T> node) {
+    if (node == null) {
+      return 1;
+    }
+    checkChild(node, node.leftChild);
+    checkChild(node, node.rightChild);
+    assertEquals(1 + sizeOf(node.leftChild) + sizeOf(node.rightChild), node.subtreeSize,
+        "wrong subtree size at " + node.data);
+    int blackHeight = checkSubtree(node.leftChild);
+    assertEquals(blackHeight, checkSubtree(node.rightChild),
+        "black heights differ below " + node.data);
+    return blackHeight + node.blackHeight;
+  }
+
+  private static <T extends Comparable<T>> void checkChild(RedBlackTree.Node<T> node,
+      RedBlackTree.Node<T> child) {
+    if (child != null) {
+      assertSame(node, child.parent, "wrong parent link below " + node.data);
+      assertFalse(node.blackHeight == 0 && child.blackHeight == 0,
+          "the red node " + node.data + " has a red child");
+    }
+  }
+
+  private static int sizeOf(RedBlackTree.Node<?> node) {
+    return node == null ? 0 : node.subtreeSize;
+  }
+}
@@ -0,0 +1,185 @@
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A backend whose readers never wait for writers. The songs live in a PersistentRedBlackTree, so
+ * addSong and removeSong each publish a new version of the tree through one atomic reference while
+ * every search runs against the version that was current when it started. Long scans such as
+ * searchByYear therefore see one consistent playlist even while songs are being added and removed.
+ * There are no secondary indexes to keep in step with the tree, so year and name searches are scans
+ * of the snapshot, which run in parallel for large playlists.
+ *
+ * Those scans take time linear in the size of the playlist, where a SongPlayerBackend answers from
+ * its year and trigram indexes. SongPlayer therefore does not offer this backend, and only
+ * LoadTestDriver --backend snapshot uses it, to compare lock-free reads with the locking of a
+ * ConcurrentSongPlayerBackend.
+ */
+public class SnapshotSongPlayerBackend implements ISongPlayerBackend {
+  // playlists smaller than this are scanned on the calling thread
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
+  private final PersistentRedBlackTree<ISong> songs;
+  private volatile String filterBy;
+
+  SnapshotSongPlayerBackend() {
+    songs = new PersistentRedBlackTree<ISong>();
+  }
+
+  /**
+   * Adds a new song to the song playlist
+   *
+   * @param song the song to add
+   */
+  @Override
+  public void addSong(ISong song) {
+    songs.insert(song);
+  }
+
+  /**
+   * Adds many songs. The persistent tree publishes a new version per song, so this is no faster
+   * than adding them one by one, and other threads may see some of the songs before the rest.
+   *
+   * @param songs the songs to add
+   */
+  @Override
+  public void addSongs(Collection<? extends ISong> songs) {
+    for (ISong song : songs) {
+      this.songs.insert(song);
+    }
+  }
+
+  /**
+   * Removes a song from the playlist
+   *
+   * @param song the song to remove
+   */
+  @Override
+  public void removeSong(ISong song) {
+    songs.remove(song);
+  }
+
+  @Override
+  public void setAuthorFilter(String filterBy) {
+    this.filterBy = filterBy;
+  }
+
+  @Override
+  public String getAuthorFilter() {
+    return this.filterBy;
+  }
+
+  @Override
+  public void resetAuthorFilter() {
+    this.filterBy = null;
+  }
+
+  @Override
+  public List<ISong> searchByYear(String year) {
+    return scanByYear(year, filterBy);
+  }
+
+  @Override
+  public List<ISong> searchByYear(String year, QueryContext context) {
+    return scanByYear(year, context.getAuthorFilter());
+  }
+
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear) {
+    return scanByYearRange(startYear, endYear, filterBy);
+  }
+
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear, QueryContext context) {
+    return scanByYearRange(startYear, endYear, context.getAuthorFilter());
+  }
+
+  @Override
+  public List<ISong> searchByName(String word) {
+    return scanByName(word, filterBy);
+  }
+
+  @Override
+  public List<ISong> searchByName(String word, QueryContext context) {
+    return scanByName(word, context.getAuthorFilter());
+  }
+
+  /**
+   * Returns the song whose title is exactly the given title, or else a song whose title only
+   * differs from it in case or accents, without applying the author filter
+   *
+   * @param title title of the song
+   * @return the song with that title
+   * @throws NoSuchElementException when the song is not in the playlist
+   */
+  @Override
+  public ISong searchByTitle(String title) {
+    PersistentRedBlackTree<ISong> snapshot = songs.snapshot();
+    ISong song = snapshot.searchByKey(TitleCollation.exactKey(title));
+    if (song == null) {
+      song = snapshot.searchByKey(TitleCollation.foldedKey(title));
+    }
+    if (song == null) {
+      throw new NoSuchElementException("the song does not exist!");
+    }
+    return song;
+  }
+
+  private List<ISong> scanByName(String word, String filter) {
+    String text = TitleCollation.normalize(word);
+    return scan(song -> TitleCollation.normalize(song.getTitle()).contains(text), filter);
+  }
+
+  private List<ISong> scanByYear(String year, String filter) {
+    String text = year.trim();
+    Integer key = SongPlayerBackend.parseYear(text);
+    if (key == null) {
+      return scan(song -> song.getReleaseYear().trim().equals(text), filter);
+    }
+    return scan(song -> key.equals(SongPlayerBackend.parseYear(song.getReleaseYear())), filter);
+  }
+
+  /**
+   * Scans for the songs of a range of years, which come in title order, and sorts them by year so
+   * that they are ordered the same way as those of a SongPlayerBackend
+   *
+   * @return the matching songs, ordered by year and then by title
+   */
+  private List<ISong> scanByYearRange(int startYear, int endYear, String filter) {
+    if (startYear > endYear) {
+      throw new IllegalArgumentException("the start year is after the end year!");
+    }
+    List<ISong> result = scan(song -> {
+      Integer year = SongPlayerBackend.parseYear(song.getReleaseYear());
+      return year != null && year >= startYear && year <= endYear;
+    }, filter);
+    // the sort is stable, so songs of the same year stay in title order
+    result.sort(Comparator.comparing(song -> SongPlayerBackend.parseYear(song.getReleaseYear())));
+    return result;
+  }
+
+  /**
+   * Scans one version of the playlist for the songs that match and satisfy the author filter
+   *
+   * @param matches the search condition
+   * @param filter  the author filter, or null for none
+   * @return the matching songs, in title order
+   */
+  private List<ISong> scan(Predicate<ISong> matches, String filter) {
+    PersistentRedBlackTree<ISong> snapshot = songs.snapshot();
+    Stream<ISong> stream = snapshot.stream();
+    if (snapshot.size() >= PARALLEL_THRESHOLD) {
+      stream = stream.parallel();
+    }
+    Predicate<ISong> condition = matches;
+    if (filter != null) {
+      String artist = filter.trim();
+      condition = condition.and(song -> song.getArtist().contains(artist));
+    }
+    return stream.filter(condition).collect(Collectors.toList());
+  }
+}
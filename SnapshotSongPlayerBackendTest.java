@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that a SnapshotSongPlayerBackend returns the same songs, in the same order, as a
+ * SongPlayerBackend holding the same playlist
+ */
+public class SnapshotSongPlayerBackendTest {
+  private SongPlayerBackend indexed;
+  private SnapshotSongPlayerBackend snapshot;
+
+  @BeforeEach
+  public void fillBothBackends() {
+    indexed = new SongPlayerBackend();
+    snapshot = new SnapshotSongPlayerBackend();
+    Random random = new Random(11);
+    for (int i = 0; i < 500; i++) {
+      Song song = new Song("Song " + random.nextInt(1_000_000) + " " + i, "Artist " + (i % 7),
+          Integer.toString(1960 + random.nextInt(30)));
+      indexed.addSong(song);
+      snapshot.addSong(song);
+    }
+  }
+
+  @Test
+  public void yearRangeIsOrderedByYearThenTitle() {
+    List<ISong> expected = indexed.searchByYearRange(1965, 1980);
+    assertEquals(expected, snapshot.searchByYearRange(1965, 1980));
+    for (int i = 1; i < expected.size(); i++) {
+      int previous = Integer.parseInt(expected.get(i - 1).getReleaseYear());
+      int current = Integer.parseInt(expected.get(i).getReleaseYear());
+      if (previous == current) {
+        assertEquals(-1, Integer.signum(expected.get(i - 1).compareTo(expected.get(i))));
+      } else {
+        assertEquals(-1, Integer.signum(previous - current));
+      }
+    }
+  }
+
+  @Test
+  public void yearRangeWithFilterMatches() {
+    QueryContext context = new QueryContext("Artist 3");
+    assertEquals(indexed.searchByYearRange(1960, 1989, context),
+        snapshot.searchByYearRange(1960, 1989, context));
+  }
+
+  @Test
+  public void singleYearIsOrderedByTitle() {
+    for (int year = 1960; year < 1990; year++) {
+      String text = Integer.toString(year);
+      assertEquals(indexed.searchByYear(text), snapshot.searchByYear(text));
+    }
+  }
+}
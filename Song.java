@@ -2,6 +2,8 @@ public class Song implements ISong {
   String title;
   String releaseYear;
   String artist;
+  // sort key of title, computed on first use
+  private byte[] sortKey;
 
   public Song(String songName, String artistName, String year) {
     this.title = songName;
@@ -30,15 +32,29 @@ public class Song implements ISong {
   }
 
   /**
-   * Compares the titles of two different songs
+   * Getter method for the sort key of the song's title
+   * 
+   * @return the sort key, see TitleCollation
+   */
+  @Override
+  public byte[] getSortKey() {
+    if (this.sortKey == null) {
+      this.sortKey = TitleCollation.sortKey(this.title);
+    }
+    return this.sortKey;
+  }
+
+  /**
+   * Compares the titles of two different songs, ignoring case and accents unless the titles only
+   * differ in those
    * 
    * @param song the song being compared or compared to
-   * @return 1 if the song's title is greater than the others 0 if they are equal and -1 if it is
-   *         smaller.
+   * @return a positive number if the song's title is greater than the other's, 0 if they are equal
+   *         and a negative number if it is smaller.
    */
   @Override
   public int compareTo(ISong song) {
-    return this.title.compareTo(song.getTitle());
+    return TitleCollation.compare(this, song);
   }
 
   /**
@@ -59,6 +75,7 @@ public class Song implements ISong {
   @Override
   public void setTitle(String title) {
     this.title = title;
+    this.sortKey = null;
   }
 
   /**
@@ -0,0 +1,74 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Collapses songs that share a title while they are being read in. Every record costs a single hash
+ * lookup, so the whole stage is linear in the number of records.
+ */
+public class SongDeduplicator implements Consumer<Song> {
+
+  /**
+   * Decides which record survives when two records share a title.
+   */
+  public enum Policy {
+    /** Keep the first record seen for a title and drop the later ones. */
+    FIRST_WINS,
+    /** Keep the last record seen for a title, in the position of the first one. */
+    LAST_WINS,
+    /**
+     * Records with the same title and artist are merged into one, filling in a release year that
+     * the first record was missing. A record with the same title but another artist is dropped.
+     */
+    MERGE_BY_TITLE_AND_ARTIST
+  }
+
+  private final Policy policy;
+  private final LinkedHashMap<String, Song> songsByTitle = new LinkedHashMap<>();
+  private int duplicatesDropped = 0;
+
+  public SongDeduplicator(Policy policy) {
+    if (policy == null)
+      throw new NullPointerException("The duplicate policy cannot be null.");
+    this.policy = policy;
+  }
+
+  /**
+   * Offers the next record to this stage
+   *
+   * @param song the record that was just read
+   */
+  @Override
+  public void accept(Song song) {
+    Song kept = songsByTitle.putIfAbsent(song.getTitle(), song);
+    if (kept == null) {
+      return;
+    }
+    duplicatesDropped++;
+    if (policy == Policy.LAST_WINS) {
+      songsByTitle.put(song.getTitle(), song);
+    } else if (policy == Policy.MERGE_BY_TITLE_AND_ARTIST
+        && kept.getArtist().equals(song.getArtist())
+        && kept.getReleaseYear().equals("Invalid")) {
+      kept.setReleaseYear(song.getReleaseYear());
+    }
+  }
+
+  /**
+   * Getter method for the number of records that were dropped or merged away
+   *
+   * @return how many records shared a title with an earlier one
+   */
+  public int getDuplicatesDropped() {
+    return duplicatesDropped;
+  }
+
+  /**
+   * Getter method for the surviving songs
+   *
+   * @return the surviving songs, in the order their titles first appeared
+   */
+  public ArrayList<Song> getSongs() {
+    return new ArrayList<>(songsByTitle.values());
+  }
+}
@@ -0,0 +1,288 @@
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the songs added to and removed from a playlist. After its header, the file
+ * is a sequence of records, each the length of its payload, a CRC32 of the payload and the payload:
+ * the operation followed by the song's title, artist and release year as UTF-8 strings.
+ *
+ * Appending a record only buffers it. A writer then calls sync, which returns once the record is on
+ * disk. Syncs are group commits: the first waiting writer becomes the leader, writes everything
+ * buffered so far and forces it to disk once, while writers arriving meanwhile buffer their records
+ * and wait. When the leader is done, one of them writes the next batch, so a busy log needs far
+ * fewer forces than it has records.
+ */
+public class SongLog implements Closeable {
+  /**
+   * What a record did to the playlist
+   */
+  public enum Operation {
+    ADD, REMOVE
+  }
+
+  private static final int MAGIC = 0x534C4731; // "SLG1"
+  private static final int HEADER_LENGTH = 4;
+  // length and checksum in front of every payload
+  private static final int RECORD_HEADER_LENGTH = 8;
+
+  private final FileChannel channel;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition flushed = lock.newCondition();
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  // sequence number of the last appended record, and of the last one known to be on disk
+  private long appendedSequence = 0;
+  private long durableSequence = 0;
+  private boolean flushing = false;
+  // set when a batch could not be written, after which no later record can be trusted either
+  private IOException failure;
+  private long fileLength;
+
+  private SongLog(FileChannel channel, long fileLength) {
+    this.channel = channel;
+    this.fileLength = fileLength;
+  }
+
+  /**
+   * Opens the log in file, creating it if needed, and hands every record in it to replay, oldest
+   * first. A record that was only partly written when the program stopped, and everything after
+   * it, is cut off the end of the file.
+   *
+   * @param file   the log file
+   * @param replay receives the operation and song of each record
+   * @return the log, ready for appending
+   * @throws IOException when the file cannot be read or written, or is not a song log
+   */
+  public static SongLog open(Path file, BiConsumer<Operation, ISong> replay) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long end;
+      if (channel.size() < HEADER_LENGTH) {
+        channel.truncate(0);
+        channel.write(ByteBuffer.allocate(HEADER_LENGTH).putInt(0, MAGIC), 0);
+        channel.force(true);
+        end = HEADER_LENGTH;
+      } else {
+        end = replay(file, Files.readAllBytes(file), replay);
+        channel.truncate(end);
+      }
+      channel.position(end);
+      return new SongLog(channel, end);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Hands each intact record to replay
+   *
+   * @return the length of the log up to the end of its last intact record
+   */
+  private static long replay(Path file, byte[] contents, BiConsumer<Operation, ISong> replay)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(contents);
+    if (buffer.getInt() != MAGIC)
+      throw new IOException(file + " is not a song log.");
+    CRC32 crc = new CRC32();
+    while (buffer.remaining() >= RECORD_HEADER_LENGTH) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      int checksum = buffer.getInt();
+      if (length < 1 || length > buffer.remaining()) {
+        return start;
+      }
+      crc.reset();
+      crc.update(contents, buffer.position(), length);
+      if ((int) crc.getValue() != checksum) {
+        return start;
+      }
+      ByteBuffer payload = buffer.slice();
+      payload.limit(length);
+      buffer.position(buffer.position() + length);
+      try {
+        Operation operation = Operation.values()[payload.get()];
+        String title = readString(payload);
+        String artist = readString(payload);
+        String releaseYear = readString(payload);
+        replay.accept(operation, new Song(title, artist, releaseYear));
+      } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+        throw new IOException(file + " holds a record that cannot be read.", e);
+      }
+    }
+    return buffer.position();
+  }
+
+  /**
+   * Buffers a record. It is only on disk once sync has returned for its sequence number.
+   *
+   * @param operation what happened to the song
+   * @param song      the song that was added or removed
+   * @return the sequence number of the record
+   */
+  public long append(Operation operation, ISong song) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream payload = new DataOutputStream(bytes)) {
+      payload.writeByte(operation.ordinal());
+      writeString(payload, song.getTitle());
+      writeString(payload, song.getArtist());
+      writeString(payload, song.getReleaseYear());
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // cannot happen for an in-memory stream
+    }
+    byte[] record = bytes.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(record);
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+    header.putInt(record.length).putInt((int) crc.getValue());
+    lock.lock();
+    try {
+      pending.write(header.array(), 0, RECORD_HEADER_LENGTH);
+      pending.write(record, 0, record.length);
+      return ++appendedSequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the record with the given sequence number, and every record before it, is on disk.
+   * If no other writer is currently forcing the log, this writer does so for everything buffered.
+   *
+   * @param sequence the sequence number returned by append
+   * @throws IOException when the log could not be written
+   */
+  public void sync(long sequence) throws IOException {
+    lock.lock();
+    try {
+      while (durableSequence < sequence) {
+        if (failure != null)
+          throw new IOException("The song log could not be written.", failure);
+        if (flushing) {
+          flushed.awaitUninterruptibly();
+          continue;
+        }
+        flushing = true;
+        byte[] batch = pending.toByteArray();
+        pending.reset();
+        long batchSequence = appendedSequence;
+        lock.unlock();
+        IOException error = null;
+        try {
+          ByteBuffer buffer = ByteBuffer.wrap(batch);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          channel.force(false);
+        } catch (IOException e) {
+          error = e;
+        } finally {
+          lock.lock();
+        }
+        flushing = false;
+        if (error == null) {
+          fileLength += batch.length;
+          durableSequence = batchSequence;
+        } else {
+          failure = error;
+        }
+        flushed.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes everything buffered so far to disk
+   *
+   * @throws IOException when the log could not be written
+   */
+  public void syncAll() throws IOException {
+    long sequence;
+    lock.lock();
+    try {
+      sequence = appendedSequence;
+    } finally {
+      lock.unlock();
+    }
+    sync(sequence);
+  }
+
+  /**
+   * Getter method for the length of the log file, not counting records that are still buffered
+   *
+   * @return the number of bytes on disk
+   */
+  public long length() {
+    lock.lock();
+    try {
+      return fileLength;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Drops every record, once they have been saved elsewhere. The caller has to make sure that no
+   * record is appended while this runs.
+   *
+   * @throws IOException when the log could not be written
+   */
+  public void clear() throws IOException {
+    syncAll();
+    lock.lock();
+    try {
+      if (pending.size() > 0 || flushing)
+        throw new IllegalStateException("Records were appended while the log was cleared.");
+      channel.truncate(HEADER_LENGTH);
+      channel.position(HEADER_LENGTH);
+      channel.force(true);
+      fileLength = HEADER_LENGTH;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes what is still buffered and closes the file
+   *
+   * @throws IOException when the log could not be written
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      syncAll();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining())
+      throw new IndexOutOfBoundsException("String length " + length + " does not fit the record.");
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
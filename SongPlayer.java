@@ -1,20 +1,179 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
 import java.util.Scanner;
 import java.util.ArrayList;
 
+/**
+ * Starts the song player. Without arguments it runs the interactive menu. With --batch it runs the
+ * commands in a file, or on standard input when the file is -, as described in SongPlayerBatch.
+ *
+ * The interactive menu shows results a page at a time when it runs in a terminal. --page-size sets
+ * the number of songs per page instead, and 0 turns paging off.
+ *
+ * Usage: java SongPlayer [--page-size 50] [--batch file [--format tsv|ndjson]]
+ */
 public class SongPlayer {
+  private static final String SONG_LIST = "classic-rock-song-list.xml";
+  // binary copy of the xml file, reloaded on later runs while it is newer than the xml file
+  private static final String SNAPSHOT = "classic-rock-song-list.snapshot";
+  // the playlist as of the last compaction, used instead of the xml file once it exists
+  private static final String BASE = "classic-rock-song-list.base";
+  // songs added and removed since the base was written, replayed on startup
+  private static final String LOG = "classic-rock-song-list.log";
+  // size of the buffers batch mode reads commands and writes results through
+  private static final int BATCH_BUFFER = 1 << 16;
+  private static final String USAGE =
+      "Usage: java SongPlayer [--page-size 50] [--batch file [--format tsv|ndjson]]";
+
   public static void main(String[] args) throws FileNotFoundException {
-    ArrayList<Song> songs =
-        (new XMLReader()).readXMLAndCreateSongObject("classic-rock-song-list.xml");
-    for (int i = 0; i < songs.size(); i++) {
+    String batch = null;
+    SongPlayerBatch.Format format = SongPlayerBatch.Format.TSV;
+    int pageSize = -1;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 == args.length)
+        throw new IllegalArgumentException("The option " + args[i] + " needs a value. " + USAGE);
+      if (args[i].equals("--batch")) {
+        batch = args[i + 1];
+      } else if (args[i].equals("--format")) {
+        format = SongPlayerBatch.Format.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+      } else if (args[i].equals("--page-size")) {
+        pageSize = Integer.parseInt(args[i + 1]);
+        if (pageSize < 0)
+          throw new IllegalArgumentException("The page size cannot be negative. " + USAGE);
+      } else {
+        throw new IllegalArgumentException("Unknown option " + args[i] + ". " + USAGE);
+      }
+    }
+
+    SongPlayerBackend backend;
+    try {
+      backend = loadPlaylist(Path.of(SONG_LIST), Path.of(SNAPSHOT), Path.of(BASE));
+    } catch (IOException e) {
+      // the message names the file that could not be read
+      System.out.println("Could not load the playlist. " + e.getMessage());
+      return;
+    }
+    SongPlayerMetrics.register(backend);
+
+    DurableSongPlayerBackend playlist;
+    try {
+      playlist = new DurableSongPlayerBackend(backend, Path.of(LOG), Path.of(BASE));
+    } catch (IOException e) {
+      System.out.println("Could not replay the changes saved in " + LOG + ": " + e.getMessage());
+      return;
     }
-    ISongPlayerBackend backend = new SongPlayerBackend(false);
-    for (ISong song : songs) {
-      backend.addSong(song);
+    try (playlist) {
+      if (batch != null) {
+        try {
+          runBatch(playlist, batch, format);
+        } catch (IOException e) {
+          System.out.println("Could not run the commands in " + batch + ": " + e.getMessage());
+        }
+      } else {
+        Scanner userInputScanner = new Scanner(System.in);
+        SongPlayerFrontend frontend = new SongPlayerFrontend(userInputScanner, playlist,
+            pageSize >= 0 ? pageSize : SongPlayerFrontend.defaultPageSize());
+        frontend.runLoop();
+      }
+      playlist.compact();
+    } catch (IOException e) {
+      System.out.println("Could not save the changes to the playlist in " + BASE + " and " + LOG
+          + ": " + e.getMessage());
     }
+  }
 
-    Scanner userInputScanner = new Scanner(System.in);
-    SongPlayerFrontend frontend = new SongPlayerFrontend(userInputScanner, backend, false);
-    frontend.runLoop();
+  /**
+   * Runs the commands in file, or on standard input when file is -, writing the results to
+   * standard output and the throughput to standard error
+   */
+  private static void runBatch(ISongPlayerBackend playlist, String file,
+      SongPlayerBatch.Format format) throws IOException {
+    BufferedReader in = file.equals("-")
+        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), BATCH_BUFFER)
+        : Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8);
+    try (in) {
+      Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+          BATCH_BUFFER);
+      new SongPlayerBatch(playlist, out, format).run(in, System.err);
+    }
+  }
+
+  /**
+   * Loads the playlist that the log is replayed over. Once a compaction has written the base file,
+   * it holds every change made so far, so it is loaded however new the song list is and is never
+   * rebuilt from it. Before that the songs come from the snapshot of the song list, or from the
+   * song list itself when the snapshot is missing or older, which then writes a fresh snapshot and
+   * reports how many songs were skipped as duplicates.
+   * 
+   * @param songList the xml file of songs
+   * @param snapshot the binary copy of songList
+   * @param base     the playlist as of the last compaction
+   * @return the loaded backend
+   * @throws FileNotFoundException when there is neither a base file nor a song list
+   * @throws IOException           when the base file exists but cannot be read, with a message
+   *                               naming the file that failed
+   */
+  static SongPlayerBackend loadPlaylist(Path songList, Path snapshot, Path base)
+      throws IOException {
+    if (Files.isRegularFile(base)) {
+      try {
+        return SongSnapshot.load(base);
+      } catch (IOException e) {
+        throw new IOException("Could not read " + base + ": " + e.getMessage(), e);
+      }
+    }
+    SongPlayerBackend backend = loadSnapshot(songList.toFile(), snapshot.toFile());
+    if (backend == null) {
+      XMLReader reader = new XMLReader();
+      ArrayList<Song> songs;
+      try {
+        songs = reader.readXMLAndCreateSongObject(songList.toString());
+      } catch (FileNotFoundException e) {
+        FileNotFoundException missing = new FileNotFoundException(
+            "Could not read " + songList + ", and there is no " + base + " either: "
+                + e.getMessage());
+        missing.initCause(e);
+        throw missing;
+      }
+      if (reader.getDuplicatesDropped() > 0) {
+        System.out.println("Skipped " + reader.getDuplicatesDropped()
+            + " songs whose title was already in " + songList + ".");
+      }
+      backend = new SongPlayerBackend();
+      backend.addSongs(songs);
+      try {
+        SongSnapshot.write(backend, snapshot);
+      } catch (IOException e) {
+        System.out.println("Could not save a snapshot of the song list: " + e.getMessage());
+      }
+    }
+    return backend;
+  }
+
+  /**
+   * Loads the songs from the snapshot if there is one that is at least as new as the song list
+   * 
+   * @return the loaded backend, or null if the song list has to be read instead
+   */
+  private static SongPlayerBackend loadSnapshot(File songList, File snapshot) {
+    if (!snapshot.isFile() || snapshot.lastModified() < songList.lastModified()) {
+      return null;
+    }
+    try {
+      return SongSnapshot.load(snapshot.toPath());
+    } catch (IOException e) {
+      System.out.println("Could not load the snapshot, reading the song list: " + e.getMessage());
+      return null;
+    }
   }
 }
@@ -1,15 +1,46 @@
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Supplier;
 
 public class SongPlayerBackend implements ISongPlayerBackend {
+  // limits of the year search cache
+  private static final int YEAR_CACHE_ENTRIES = 1024;
+  private static final long YEAR_CACHE_BYTES = 32L << 20;
+
   SortedCollectionInterface<ISong> RBT;
+  // shared author filter, which searches read through getAuthorFilter so subclasses can guard it
   String filterBy;
+  // secondary index from numeric release year to the songs of that year, kept in title order
+  TreeMap<Integer, TreeSet<ISong>> yearIndex;
+  // songs whose release year is not a number, such as "Invalid"
+  HashMap<String, TreeSet<ISong>> unparsedYearIndex;
+  // trigram index over normalized titles, used for contains-searches by name
+  NGramIndex<ISong> titleIndex;
+  // trigram index over artist names, used to resolve the author filter to a set of artists
+  NGramIndex<ISong> artistIndex;
+  // latencies of the calls made to this backend
+  private final SongPlayerMetrics metrics = new SongPlayerMetrics(this);
+  // results of year searches, by year and author filter
+  private final QueryResultCache yearResults =
+      new QueryResultCache(YEAR_CACHE_ENTRIES, YEAR_CACHE_BYTES);
+  // counts the changes to the songs, so that cached results of an older version are not used
+  private long version = 0;
 
   SongPlayerBackend() {
     RBT = new RedBlackTree<ISong>();
+    yearIndex = new TreeMap<>();
+    unparsedYearIndex = new HashMap<>();
+    titleIndex = new NGramIndex<>(3);
+    artistIndex = new NGramIndex<>(3);
   }
 
   /**
@@ -19,8 +50,65 @@ public class SongPlayerBackend implements ISongPlayerBackend {
    */
   @Override
   public void addSong(ISong song) {
-    RBT.insert(song);
+    long start = SongPlayerMetrics.start();
+    write(() -> {
+      version++;
+      RBT.insert(song);
+      yearBucket(song.getReleaseYear(), true).add(song);
+      titleIndex.add(TitleCollation.normalize(song.getTitle()), song);
+      artistIndex.add(song.getArtist(), song);
+    });
+    SongPlayerMetrics.record(metrics.addSong, start);
+  }
+
+  /**
+   * Adds many songs at once. The tree is bulk loaded, sorting the songs once instead of rebalancing
+   * after every insert, and the songs are then indexed. Nothing is added when a song is rejected.
+   * 
+   * @param songs the songs to add, in any order
+   * @throws IllegalArgumentException when a title is given twice or is already in the playlist
+   */
+  @Override
+  public void addSongs(Collection<? extends ISong> songs) {
+    long start = SongPlayerMetrics.start();
+    write(() -> {
+      RBT.bulkLoad(songs);
+      version++;
+      for (ISong song : songs) {
+        yearBucket(song.getReleaseYear(), true).add(song);
+        titleIndex.add(TitleCollation.normalize(song.getTitle()), song);
+        artistIndex.add(song.getArtist(), song);
+      }
+    });
+    SongPlayerMetrics.record(metrics.addSongs, start);
+  }
 
+  /**
+   * Fills this empty backend with songs read from a snapshot. The tree is built directly from the
+   * songs, which are already in title order, and the year index is taken over as stored instead of
+   * being derived from the songs' release years again.
+   * 
+   * @param songsByTitle  every song, in title order
+   * @param years         the songs of each numeric release year, in title order
+   * @param unparsedYears the songs of each release year that is not a number, in title order
+   * @throws IllegalStateException when the backend already holds songs
+   */
+  void restore(List<ISong> songsByTitle, Map<Integer, List<ISong>> years,
+      Map<String, List<ISong>> unparsedYears) {
+    if (!RBT.isEmpty())
+      throw new IllegalStateException("Songs can only be restored into an empty playlist.");
+    version++;
+    ((RedBlackTree<ISong>) RBT).buildFromSorted(songsByTitle);
+    for (Map.Entry<Integer, List<ISong>> year : years.entrySet()) {
+      yearIndex.put(year.getKey(), new TreeSet<>(year.getValue()));
+    }
+    for (Map.Entry<String, List<ISong>> year : unparsedYears.entrySet()) {
+      unparsedYearIndex.put(year.getKey(), new TreeSet<>(year.getValue()));
+    }
+    for (ISong song : songsByTitle) {
+      titleIndex.add(TitleCollation.normalize(song.getTitle()), song);
+      artistIndex.add(song.getArtist(), song);
+    }
   }
 
   /**
@@ -30,8 +118,27 @@ public class SongPlayerBackend implements ISongPlayerBackend {
    */
   @Override
   public void removeSong(ISong song) {
-    RBT.remove(song);
-
+    long start = SongPlayerMetrics.start();
+    write(() -> {
+      version++;
+      // the index holds the stored song, which may have a different year than the one passed in
+      ISong stored = RBT.remove(song);
+      titleIndex.remove(TitleCollation.normalize(stored.getTitle()), stored);
+      artistIndex.remove(stored.getArtist(), stored);
+      TreeSet<ISong> bucket = yearBucket(stored.getReleaseYear(), false);
+      if (bucket != null) {
+        bucket.remove(stored);
+        if (bucket.isEmpty()) {
+          Integer key = parseYear(stored.getReleaseYear());
+          if (key != null) {
+            yearIndex.remove(key);
+          } else {
+            unparsedYearIndex.remove(stored.getReleaseYear().trim());
+          }
+        }
+      }
+    });
+    SongPlayerMetrics.record(metrics.removeSong, start);
   }
 
   /**
@@ -67,50 +174,273 @@ public class SongPlayerBackend implements ISongPlayerBackend {
 
   /**
    * Search through all the songs in the year base and return songs whose year is equal to the
-   * string year (and that satisfies the author filter, if an author filter is set).
+   * string year (and that satisfies the author filter, if an author filter is set). Results are
+   * cached until the next change to the songs, so the same list may be returned again, and it
+   * cannot be modified.
    * 
    * @param year year that song is being published
    * @return list of songs found
    */
   @Override
   public List<ISong> searchByYear(String year) {
+    long start = SongPlayerMetrics.start();
+    List<ISong> songs = findByYear(year, getAuthorFilter());
+    SongPlayerMetrics.record(metrics.searchByYear, start);
+    return songs;
+  }
+
+  /**
+   * Same as searchByYear(year), but with the author filter of the given session instead of the
+   * backend's shared one.
+   * 
+   * @param year    year that song is being published
+   * @param context the session whose author filter applies
+   * @return list of songs found
+   */
+  @Override
+  public List<ISong> searchByYear(String year, QueryContext context) {
+    long start = SongPlayerMetrics.start();
+    List<ISong> songs = findByYear(year, context.getAuthorFilter());
+    SongPlayerMetrics.record(metrics.searchByYear, start);
+    return songs;
+  }
+
+  /**
+   * Returns the songs released between startYear and endYear, both inclusive (and that satisfy the
+   * author filter, if an author filter is set). Songs without a numeric release year are never
+   * part of a range.
+   * 
+   * @param startYear first year of the range
+   * @param endYear   last year of the range
+   * @return list of songs found, ordered by year and then by title
+   * @throws IllegalArgumentException when startYear is after endYear
+   */
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear) {
+    return findByYearRange(startYear, endYear, getAuthorFilter());
+  }
+
+  /**
+   * Same as searchByYearRange(startYear, endYear), but with the author filter of the given session.
+   * 
+   * @param startYear first year of the range
+   * @param endYear   last year of the range
+   * @param context   the session whose author filter applies
+   * @return list of songs found, ordered by year and then by title
+   * @throws IllegalArgumentException when startYear is after endYear
+   */
+  @Override
+  public List<ISong> searchByYearRange(int startYear, int endYear, QueryContext context) {
+    return findByYearRange(startYear, endYear, context.getAuthorFilter());
+  }
+
+  /**
+   * Looks up the songs of one year in the result cache, or else through the year index. The cache
+   * key is the year as the index stores it and the trimmed filter, so " 1970" and "1970" share a
+   * result.
+   * 
+   * @param year   year that song is being published
+   * @param filter the author filter to apply, or null for none
+   * @return unmodifiable list of songs found, in title order
+   */
+  protected List<ISong> findByYear(String year, String filter) {
+    Integer number = parseYear(year);
+    Object yearKey = number != null ? number : year.trim();
+    String filterKey = filter == null ? null : filter.trim();
+    List<ISong> cached = yearResults.get(yearKey, filterKey, version);
+    if (cached != null) {
+      return cached;
+    }
     List<ISong> resultList = new ArrayList<>();
-    Iterator<ISong> itr = RBT.iterator();
-
-    while (itr.hasNext()) {
-      ISong currSong = (ISong) itr.next();
-      String SongYear = currSong.getReleaseYear();
-      if (SongYear.equals(year.trim())) {
-        if (filterBy != null) {
-          if (currSong.getArtist().contains(filterBy.trim())) {
-            resultList.add(currSong);
-          }
-        } else {
-          resultList.add(currSong);
-        }
-      }
+    TreeSet<ISong> bucket = yearBucket(year, false);
+    if (bucket != null) {
+      addFiltered(bucket, filteredArtists(filter), resultList);
+    }
+    return yearResults.put(yearKey, filterKey, version, resultList);
+  }
+
+  /**
+   * Looks up the songs of a range of years through the year index
+   * 
+   * @param startYear first year of the range
+   * @param endYear   last year of the range
+   * @param filter    the author filter to apply, or null for none
+   * @return list of songs found, ordered by year and then by title
+   */
+  protected List<ISong> findByYearRange(int startYear, int endYear, String filter) {
+    if (startYear > endYear) {
+      throw new IllegalArgumentException("the start year is after the end year!");
+    }
+    List<ISong> resultList = new ArrayList<>();
+    Set<String> artists = filteredArtists(filter);
+    for (TreeSet<ISong> bucket : yearIndex.subMap(startYear, true, endYear, true).values()) {
+      addFiltered(bucket, artists, resultList);
     }
     return resultList;
   }
 
+  /**
+   * Adds every song in songs whose artist is in artists to resultList
+   * 
+   * @param artists the artists allowed by the author filter, or null to add every song
+   */
+  private void addFiltered(Iterable<ISong> songs, Set<String> artists, List<ISong> resultList) {
+    for (ISong currSong : songs) {
+      if (artists == null || artists.contains(currSong.getArtist())) {
+        resultList.add(currSong);
+      }
+    }
+  }
+
+  /**
+   * Resolves an author filter through the artist index, once per search
+   * 
+   * @param filter the author filter, or null for none
+   * @return the artist names that contain the filter, or null if no filter is set
+   */
+  private Set<String> filteredArtists(String filter) {
+    return filter == null ? null : artistIndex.keysContaining(filter.trim());
+  }
+
+  /**
+   * Looks up the year index bucket for the given release year
+   * 
+   * @param year   release year as stored on a song or typed by the user
+   * @param create whether to create a missing bucket
+   * @return the songs of that year, or null if there are none and create is false
+   */
+  private TreeSet<ISong> yearBucket(String year, boolean create) {
+    Integer key = parseYear(year);
+    if (key != null) {
+      return create ? yearIndex.computeIfAbsent(key, k -> new TreeSet<>()) : yearIndex.get(key);
+    }
+    String text = year.trim();
+    return create ? unparsedYearIndex.computeIfAbsent(text, k -> new TreeSet<>())
+        : unparsedYearIndex.get(text);
+  }
+
+  /**
+   * Runs a read of several fields of this backend, such as taking a snapshot, so that it sees them
+   * in a consistent state. Subclasses that allow concurrent writes hold them off meanwhile.
+   * 
+   * @param reader the read to run
+   * @return the result of the read
+   */
+  <R> R read(Supplier<R> reader) {
+    return reader.get();
+  }
+
+  /**
+   * Runs a change to several fields of this backend, such as adding a song to the tree and the
+   * indexes, so that nobody sees it half done. Subclasses that allow concurrent access hold off
+   * other writers and readers meanwhile.
+   * 
+   * @param writer the change to run
+   */
+  void write(Runnable writer) {
+    writer.run();
+  }
+
+  /**
+   * Getter method for the cache of year search results
+   * 
+   * @return the cache, whose statistics show how often searches were answered from it
+   */
+  public QueryResultCache getYearResultCache() {
+    return yearResults;
+  }
+
+  /**
+   * Getter method for the latencies of the calls made to this backend, and the tree counters
+   * 
+   * @return the metrics, which SongPlayerMetrics.register publishes over JMX
+   */
+  public SongPlayerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Parses a release year into the key used by the year index
+   * 
+   * @param year release year text
+   * @return the numeric year, or null if the text is not a number
+   */
+  static Integer parseYear(String year) {
+    String text = year.trim();
+    if (text.isEmpty() || text.length() > 9) {
+      return null;
+    }
+    for (int i = 0; i < text.length(); i++) {
+      if (!Character.isDigit(text.charAt(i)) && !(i == 0 && text.charAt(i) == '-')) {
+        return null;
+      }
+    }
+    return text.equals("-") ? null : Integer.valueOf(text);
+  }
+
   /**
    * Search through all the songs in the title base and return songs whose title contains the string
-   * word (and that satisfies the author filter, if an author filter is set).
+   * word, ignoring case and accents (and that satisfies the author filter, if an author filter is
+   * set).
    * 
    * @param word word that must be contained in a song's title in result set
-   * @return list of songs found
+   * @return list of songs found, in title order
    */
   @Override
-  public ISong searchByName(String word) {
-    ISong song = new BD_Song(word, "The Weeknd", "2020");
-    if (!RBT.contains(song)) {
-      throw new NoSuchElementException("the song does not exist!");
+  public List<ISong> searchByName(String word) {
+    long start = SongPlayerMetrics.start();
+    List<ISong> songs = findByName(word, getAuthorFilter());
+    SongPlayerMetrics.record(metrics.searchByName, start);
+    return songs;
+  }
+
+  /**
+   * Same as searchByName(word), but with the author filter of the given session.
+   * 
+   * @param word    word that must be contained in a song's title in result set
+   * @param context the session whose author filter applies
+   * @return list of songs found, in title order
+   */
+  @Override
+  public List<ISong> searchByName(String word, QueryContext context) {
+    long start = SongPlayerMetrics.start();
+    List<ISong> songs = findByName(word, context.getAuthorFilter());
+    SongPlayerMetrics.record(metrics.searchByName, start);
+    return songs;
+  }
+
+  /**
+   * Looks up the songs whose title contains word through the title index
+   * 
+   * @param word   word that must be contained in a song's title
+   * @param filter the author filter to apply, or null for none
+   * @return list of songs found, in title order
+   */
+  protected List<ISong> findByName(String word, String filter) {
+    List<ISong> resultList = new ArrayList<>();
+    String text = TitleCollation.normalize(word);
+    addFiltered(titleIndex.valuesContaining(text), filteredArtists(filter), resultList);
+    Collections.sort(resultList);
+    return resultList;
+  }
+
+  /**
+   * Returns the song whose title is exactly the given title, or else a song whose title only
+   * differs from it in case or accents, without applying the author filter
+   * 
+   * @param title title of the song
+   * @return the song with that title
+   * @throws NoSuchElementException when the song is not in the playlist
+   */
+  @Override
+  public ISong searchByTitle(String title) {
+    ISong song = RBT.searchByKey(TitleCollation.exactKey(title));
+    if (song == null) {
+      song = RBT.searchByKey(TitleCollation.foldedKey(title));
     }
-    if (filterBy != null) {
-      if (!RBT.search(song).getArtist().equals(filterBy)) {
-        throw new NoSuchElementException("the song does not exist!");
-      }
+    if (song == null) {
+      throw new NoSuchElementException("the song does not exist!");
     }
-    return RBT.search(song);
+    return song;
   }
 }
\ No newline at end of file
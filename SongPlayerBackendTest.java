@@ -0,0 +1,296 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the year, year range, name and title searches of SongPlayerBackend, with and without an
+ * author filter, against a scan over every song, and the NGramIndex the name searches and the
+ * author filter go through
+ */
+public class SongPlayerBackendTest {
+  // title words with case and accent variants, such as an accented "cafe" and a sharp s "strasse"
+  private static final String[] WORDS = {"Cafe", "caf\u00e9", "HOTEL", "h\u00f4tel", "Love",
+      "love", "stra\u00dfe", "strasse", "a", "Rock", "of", "Night"};
+  private static final String[] ARTISTS =
+      {"Queen", "Queen II", "Abba", "The Who", "Q", "\u00c9dith Piaf", "Led Zeppelin"};
+  private static final String[] ODD_YEARS = {"Invalid", " 1975", "1975 ", "-", "", "19x5"};
+  private static final String[] FILTERS =
+      {"Q", "Queen", "Queen II", "ee", "The Who", " Abba ", "e", "\u00c9", "Nobody", ""};
+
+  @Test
+  public void yearSearchesMatchAScan() {
+    Random random = new Random(31);
+    List<ISong> songs = randomSongs(random, 1_500);
+    SongPlayerBackend backend = new SongPlayerBackend();
+    backend.addSongs(songs);
+    removeSome(backend, songs, random);
+
+    for (String filter : withoutFilter(FILTERS)) {
+      QueryContext context = new QueryContext(filter);
+      for (int year = 1948; year <= 2001; year++) {
+        String text = Integer.toString(year);
+        assertEquals(titles(scanByYear(songs, text, filter)),
+            titles(backend.searchByYear(text, context)));
+      }
+      for (String year : ODD_YEARS) {
+        assertEquals(titles(scanByYear(songs, year, filter)),
+            titles(backend.searchByYear(year, context)));
+      }
+    }
+    // " 1975" and "1975 " are parsed as 1975, so they land in the year index
+    assertTrue(titles(backend.searchByYear("1975")).containsAll(
+        titles(scanByYear(songs, " 1975", null))));
+  }
+
+  @Test
+  public void yearRangesAreOrderedByYearAndThenTitle() {
+    Random random = new Random(32);
+    List<ISong> songs = randomSongs(random, 1_500);
+    SongPlayerBackend backend = new SongPlayerBackend();
+    for (ISong song : songs) {
+      backend.addSong(song);
+    }
+    removeSome(backend, songs, random);
+
+    int[][] ranges = {{1950, 1999}, {1975, 1975}, {1900, 1949}, {1999, 2100}, {1960, 1969},
+        {Integer.MIN_VALUE, Integer.MAX_VALUE}};
+    for (String filter : withoutFilter(FILTERS)) {
+      QueryContext context = new QueryContext(filter);
+      for (int[] range : ranges) {
+        assertEquals(titles(scanByYearRange(songs, range[0], range[1], filter)),
+            titles(backend.searchByYearRange(range[0], range[1], context)));
+      }
+    }
+    assertThrows(IllegalArgumentException.class, () -> backend.searchByYearRange(1971, 1970));
+    // songs without a numeric year are never part of a range
+    for (ISong song : backend.searchByYearRange(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+      assertTrue(SongPlayerBackend.parseYear(song.getReleaseYear()) != null);
+    }
+  }
+
+  @Test
+  public void sharedAuthorFilterMatchesTheContextOne() {
+    Random random = new Random(33);
+    List<ISong> songs = randomSongs(random, 500);
+    SongPlayerBackend backend = new SongPlayerBackend();
+    backend.addSongs(songs);
+    for (String filter : FILTERS) {
+      backend.setAuthorFilter(filter);
+      QueryContext context = new QueryContext(filter);
+      assertEquals(titles(backend.searchByYear("1975", context)),
+          titles(backend.searchByYear("1975")));
+      assertEquals(titles(backend.searchByYearRange(1950, 1999, context)),
+          titles(backend.searchByYearRange(1950, 1999)));
+      assertEquals(titles(backend.searchByName("love", context)),
+          titles(backend.searchByName("love")));
+    }
+    backend.resetAuthorFilter();
+    assertEquals(null, backend.getAuthorFilter());
+    assertEquals(titles(scanByYearRange(songs, 1950, 1999, null)),
+        titles(backend.searchByYearRange(1950, 1999)));
+  }
+
+  @Test
+  public void nameSearchesMatchAScan() {
+    Random random = new Random(34);
+    List<ISong> songs = randomSongs(random, 1_500);
+    SongPlayerBackend backend = new SongPlayerBackend();
+    backend.addSongs(songs);
+    removeSome(backend, songs, random);
+
+    // patterns shorter than the gram length, as long as it, and longer, with case and accents
+    String[] patterns = {"", "a", "CA", "caf", "Caf\u00e9", "HOT", "h\u00f4tel", "strasse",
+        "stra\u00dfe", "love rock", "1", " 12", "night of", "zzz", "cafe love a"};
+    for (String filter : withoutFilter(FILTERS)) {
+      QueryContext context = new QueryContext(filter);
+      for (String pattern : patterns) {
+        assertEquals(titles(scanByName(songs, pattern, filter)),
+            titles(backend.searchByName(pattern, context)), "pattern " + pattern);
+      }
+    }
+  }
+
+  @Test
+  public void titleSearchPrefersTheExactTitle() {
+    SongPlayerBackend backend = new SongPlayerBackend();
+    Song plain = new Song("Cafe del Mar", "Energy 52", "1993");
+    Song accented = new Song("Caf\u00e9 del Mar", "Energy 52", "1997");
+    Song sharp = new Song("Stra\u00dfe", "Rammstein", "2004");
+    backend.addSongs(List.of(plain, accented, sharp));
+
+    assertSame(plain, backend.searchByTitle("Cafe del Mar"));
+    assertSame(accented, backend.searchByTitle("Caf\u00e9 del Mar"));
+    // without an exact match, any title that only differs in case or accents is found
+    String folded = backend.searchByTitle("CAF\u00c9 DEL MAR").getTitle();
+    assertTrue(folded.equals(plain.getTitle()) || folded.equals(accented.getTitle()));
+    assertSame(sharp, backend.searchByTitle("STRASSE"));
+    assertSame(sharp, backend.searchByTitle("stra\u00dfe"));
+    assertThrows(NoSuchElementException.class, () -> backend.searchByTitle("Cafe del"));
+
+    // once the exact title is gone, the other spelling is found
+    backend.removeSong(new Song("Cafe del Mar", "", ""));
+    assertSame(accented, backend.searchByTitle("Cafe del Mar"));
+    // the author filter does not apply to title searches
+    backend.setAuthorFilter("Nobody");
+    assertSame(sharp, backend.searchByTitle("Strasse"));
+  }
+
+  @Test
+  public void nGramIndexMatchesAScan() {
+    Random random = new Random(35);
+    for (int gramLength = 1; gramLength <= 4; gramLength++) {
+      NGramIndex<Integer> index = new NGramIndex<>(gramLength);
+      List<String> keys = new ArrayList<>();
+      for (int value = 0; value < 400; value++) {
+        String key = randomText(random, "abcab", 1 + random.nextInt(8));
+        keys.add(key);
+        index.add(key, value);
+      }
+      // take out every third value, which empties some keys
+      for (int value = 0; value < keys.size(); value += 3) {
+        index.remove(keys.get(value), value);
+        keys.set(value, null);
+      }
+      for (int trial = 0; trial < 200; trial++) {
+        String text = randomText(random, "abcd", random.nextInt(7));
+        Set<String> expectedKeys = new HashSet<>();
+        Set<Integer> expectedValues = new HashSet<>();
+        for (int value = 0; value < keys.size(); value++) {
+          if (keys.get(value) != null && keys.get(value).contains(text)) {
+            expectedKeys.add(keys.get(value));
+            expectedValues.add(value);
+          }
+        }
+        assertEquals(expectedKeys, index.keysContaining(text), "text " + text);
+        assertEquals(expectedValues, index.valuesContaining(text), "text " + text);
+      }
+    }
+    assertThrows(IllegalArgumentException.class, () -> new NGramIndex<String>(0));
+  }
+
+  @Test
+  public void nGramIndexKeepsKeysWithValuesLeft() {
+    NGramIndex<String> index = new NGramIndex<>(3);
+    index.add("Queen", "Bohemian Rhapsody");
+    index.add("Queen", "Radio Ga Ga");
+    index.remove("Queen", "Radio Ga Ga");
+    assertEquals(Set.of("Queen"), index.keysContaining("uee"));
+    assertEquals(Set.of("Bohemian Rhapsody"), index.get("Queen"));
+    // removing a value that is not there changes nothing
+    index.remove("Queen", "Radio Ga Ga");
+    index.remove("Abba", "Waterloo");
+    assertEquals(Set.of("Bohemian Rhapsody"), index.valuesContaining("Qu"));
+    index.remove("Queen", "Bohemian Rhapsody");
+    assertTrue(index.keysContaining("uee").isEmpty());
+    assertTrue(index.keysContaining("Q").isEmpty());
+    assertTrue(index.get("Queen").isEmpty());
+  }
+
+  /**
+   * Builds songs with distinct titles made of the title words, and years that are now and then not
+   * a plain number
+   */
+  private static List<ISong> randomSongs(Random random, int count) {
+    List<ISong> songs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      StringBuilder title = new StringBuilder();
+      for (int length = 1 + random.nextInt(3); length > 0; length--) {
+        title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+      }
+      title.append(i);
+      String year = random.nextInt(8) == 0 ? ODD_YEARS[random.nextInt(ODD_YEARS.length)]
+          : Integer.toString(1950 + random.nextInt(50));
+      songs.add(new Song(title.toString(), ARTISTS[random.nextInt(ARTISTS.length)], year));
+    }
+    return songs;
+  }
+
+  /**
+   * Removes about a quarter of songs from the backend and from the list
+   */
+  private static void removeSome(SongPlayerBackend backend, List<ISong> songs, Random random) {
+    for (int i = songs.size() / 4; i > 0; i--) {
+      ISong song = songs.remove(random.nextInt(songs.size()));
+      // remove by title only, as the backend looks the stored song up itself
+      backend.removeSong(new Song(song.getTitle(), "", ""));
+    }
+  }
+
+  private static String randomText(Random random, String letters, int length) {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      text.append(letters.charAt(random.nextInt(letters.length())));
+    }
+    return text.toString();
+  }
+
+  private static List<String> withoutFilter(String[] filters) {
+    List<String> all = new ArrayList<>(List.of(filters));
+    all.add(null);
+    return all;
+  }
+
+  private static boolean passes(ISong song, String filter) {
+    return filter == null || song.getArtist().contains(filter.trim());
+  }
+
+  private static List<ISong> scanByYear(List<ISong> songs, String year, String filter) {
+    Integer number = SongPlayerBackend.parseYear(year);
+    List<ISong> found = new ArrayList<>();
+    for (ISong song : songs) {
+      Integer released = SongPlayerBackend.parseYear(song.getReleaseYear());
+      boolean sameYear = number != null ? number.equals(released)
+          : released == null && song.getReleaseYear().trim().equals(year.trim());
+      if (sameYear && passes(song, filter)) {
+        found.add(song);
+      }
+    }
+    found.sort(null);
+    return found;
+  }
+
+  private static List<ISong> scanByYearRange(List<ISong> songs, int startYear, int endYear,
+      String filter) {
+    List<ISong> found = new ArrayList<>();
+    for (ISong song : songs) {
+      Integer released = SongPlayerBackend.parseYear(song.getReleaseYear());
+      if (released != null && released >= startYear && released <= endYear
+          && passes(song, filter)) {
+        found.add(song);
+      }
+    }
+    found.sort(Comparator.comparing((ISong song) -> SongPlayerBackend.parseYear(
+        song.getReleaseYear())).thenComparing(Comparator.naturalOrder()));
+    return found;
+  }
+
+  private static List<ISong> scanByName(List<ISong> songs, String word, String filter) {
+    String text = TitleCollation.normalize(word);
+    List<ISong> found = new ArrayList<>();
+    for (ISong song : songs) {
+      if (TitleCollation.normalize(song.getTitle()).contains(text) && passes(song, filter)) {
+        found.add(song);
+      }
+    }
+    found.sort(null);
+    return found;
+  }
+
+  private static List<String> titles(List<ISong> songs) {
+    List<String> titles = new ArrayList<>();
+    for (ISong song : songs) {
+      titles.add(song.getTitle());
+    }
+    return titles;
+  }
+}
@@ -0,0 +1,346 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs playlist commands read from a file or a pipe, without menus, and writes one machine-readable
+ * result per command. Each input line is a command and its arguments, separated by tabs:
+ *
+ * add    title artist year      adds a song
+ * remove title                  removes the song with that title
+ * title  title                  looks up the song with that title
+ * name   word                   searches by name
+ * year   year                   searches by release year
+ * range  startYear endYear      searches a range of release years
+ * filter [artist]               sets the author filter of the later searches, or resets it
+ *
+ * Empty lines and lines starting with # are skipped. In TSV format a command writes the line
+ * number, the command and then ok, or error and a message. Searches first write one row per song
+ * with song, title, artist and year, and their ok row also holds the number of songs. In NDJSON
+ * format each command writes one JSON object, with the songs of a search in an array.
+ *
+ * Each add is applied on its own, so a rejected song only fails its own line. On a
+ * DurableSongPlayerBackend the adds are logged without waiting for the disk, and a run of
+ * consecutive adds is synced once, before the next other command or after MAX_GROUPED_ADDS adds.
+ * The results of the adds are only written once they are on disk. When a sync fails, the log
+ * cannot be written any more: the unsynced adds are reported as failed and taken back out of the
+ * playlist, and the run stops without running the later commands.
+ */
+public class SongPlayerBatch {
+  /**
+   * How the results are written
+   */
+  public enum Format {
+    TSV, NDJSON
+  }
+
+  // the most adds whose log records are synced together
+  private static final int MAX_GROUPED_ADDS = 10_000;
+
+  private final ISongPlayerBackend backend;
+  // the backend as a DurableSongPlayerBackend, or null if it is not one
+  private final DurableSongPlayerBackend durable;
+  private final Writer out;
+  private final Format format;
+  // the author filter of the searches, kept apart from other sessions on the same backend
+  private final QueryContext session = new QueryContext();
+  // the line numbers of the adds that are not synced yet, with their error or null if they worked
+  private final List<Integer> pendingLines = new ArrayList<>();
+  private final List<String> pendingErrors = new ArrayList<>();
+  // the songs of the pending adds that worked, which a failed sync takes back out of the playlist
+  private final List<ISong> pendingSongs = new ArrayList<>();
+  // why the run stopped early, or null while it goes on
+  private String stopReason;
+  private long commands = 0;
+  private long failures = 0;
+
+  /**
+   * Prepares a batch run against backend
+   *
+   * @param backend the playlist to run the commands against
+   * @param out     where the results are written, which should be buffered
+   * @param format  how the results are written
+   */
+  public SongPlayerBatch(ISongPlayerBackend backend, Writer out, Format format) {
+    this.backend = backend;
+    this.durable =
+        backend instanceof DurableSongPlayerBackend ? (DurableSongPlayerBackend) backend : null;
+    this.out = out;
+    this.format = format;
+  }
+
+  /**
+   * Runs every command in in, flushes the results and reports the throughput to report
+   *
+   * @param in     the commands, one per line
+   * @param report where the number of commands and the commands per second are printed
+   * @throws IOException when the commands cannot be read or the results cannot be written
+   */
+  public void run(BufferedReader in, PrintStream report) throws IOException {
+    long start = System.nanoTime();
+    int number = 0;
+    String line;
+    while (stopReason == null && (line = in.readLine()) != null) {
+      number++;
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        execute(number, line.split("\t", -1));
+      }
+    }
+    syncPending();
+    out.flush();
+    if (stopReason != null) {
+      report.printf("Stopped after line %d: %s%n", number, stopReason);
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    report.printf("Ran %d commands (%d failed) in %.3f s, %.0f commands/s%n", commands, failures,
+        seconds, commands / Math.max(seconds, 1e-9));
+  }
+
+  private void execute(int number, String[] fields) throws IOException {
+    String command = fields[0].trim().toLowerCase(Locale.ROOT);
+    if (command.equals("add") && fields.length == 4) {
+      commands++;
+      add(number, new Song(fields[1], fields[2], fields[3]));
+      return;
+    }
+    // the adds before this command have to be on disk before it runs
+    syncPending();
+    if (stopReason != null) {
+      return;
+    }
+    commands++;
+    try {
+      switch (command) {
+        case "remove":
+          checkFields(fields, 2);
+          backend.removeSong(backend.searchByTitle(fields[1]));
+          writeDone(number, command);
+          break;
+        case "title":
+          checkFields(fields, 2);
+          writeSongs(number, command, List.of(backend.searchByTitle(fields[1])));
+          break;
+        case "name":
+          checkFields(fields, 2);
+          writeSongs(number, command, backend.searchByName(fields[1], session));
+          break;
+        case "year":
+          checkFields(fields, 2);
+          writeSongs(number, command, backend.searchByYear(fields[1], session));
+          break;
+        case "range":
+          checkFields(fields, 3);
+          writeSongs(number, command, backend.searchByYearRange(
+              Integer.parseInt(fields[1].trim()), Integer.parseInt(fields[2].trim()), session));
+          break;
+        case "filter":
+          if (fields.length < 2 || fields[1].isEmpty()) {
+            session.resetAuthorFilter();
+          } else {
+            session.setAuthorFilter(fields[1]);
+          }
+          writeDone(number, command);
+          break;
+        case "add":
+          throw new IllegalArgumentException("add needs a title, an artist and a release year.");
+        default:
+          throw new IllegalArgumentException("Unknown command " + fields[0]);
+      }
+    } catch (UncheckedIOException e) {
+      failures++;
+      writeError(number, command, e.getMessage());
+      stopReason = "the playlist could not be saved: " + e.getCause().getMessage();
+    } catch (RuntimeException e) {
+      failures++;
+      writeError(number, command, e.getMessage());
+    }
+  }
+
+  private static void checkFields(String[] fields, int count) {
+    if (fields.length != count)
+      throw new IllegalArgumentException(fields[0] + " needs " + (count - 1) + " argument"
+          + (count == 2 ? "" : "s") + ", but got " + (fields.length - 1) + ".");
+  }
+
+  /**
+   * Adds a song, leaving its result pending until it is synced
+   */
+  private void add(int number, Song song) throws IOException {
+    String error = null;
+    try {
+      if (durable != null) {
+        durable.addSongUnsynced(song);
+        pendingSongs.add(song);
+      } else {
+        backend.addSong(song);
+      }
+    } catch (RuntimeException e) {
+      error = e.getMessage() == null ? "" : e.getMessage();
+    }
+    pendingLines.add(number);
+    pendingErrors.add(error);
+    if (pendingLines.size() >= MAX_GROUPED_ADDS) {
+      syncPending();
+    }
+  }
+
+  /**
+   * Waits until the pending adds are on disk and writes their results in line order. When the log
+   * sync fails, every pending add that had worked is reported as failed, taken back out of the
+   * playlist, and the run is stopped. A failed compaction after a successful sync does not throw,
+   * so the adds it follows stay reported as done and stay in the playlist.
+   */
+  private void syncPending() throws IOException {
+    if (pendingLines.isEmpty()) {
+      return;
+    }
+    String syncError = null;
+    if (durable != null) {
+      try {
+        durable.sync();
+      } catch (UncheckedIOException e) {
+        syncError = "The song could not be saved: " + e.getCause().getMessage();
+        durable.discardUnsynced(pendingSongs);
+        stopReason = "the playlist could not be saved: " + e.getCause().getMessage();
+      }
+    }
+    for (int i = 0; i < pendingLines.size(); i++) {
+      String error = pendingErrors.get(i) != null ? pendingErrors.get(i) : syncError;
+      if (error == null) {
+        writeDone(pendingLines.get(i), "add");
+      } else {
+        failures++;
+        writeError(pendingLines.get(i), "add", error);
+      }
+    }
+    pendingLines.clear();
+    pendingErrors.clear();
+    pendingSongs.clear();
+  }
+
+  private void writeDone(int number, String command) throws IOException {
+    if (format == Format.TSV) {
+      out.append(Integer.toString(number)).append('\t').append(command).append("\tok\n");
+    } else {
+      startObject(number, command, "ok");
+      out.append("}\n");
+    }
+  }
+
+  private void writeError(int number, String command, String message) throws IOException {
+    String text = message == null ? "" : message;
+    if (format == Format.TSV) {
+      out.append(Integer.toString(number)).append('\t');
+      appendTsv(command);
+      out.append("\terror\t");
+      appendTsv(text);
+      out.append('\n');
+    } else {
+      startObject(number, command, "error");
+      out.append(",\"message\":");
+      appendJson(text);
+      out.append("}\n");
+    }
+  }
+
+  private void writeSongs(int number, String command, List<ISong> songs) throws IOException {
+    if (format == Format.TSV) {
+      for (ISong song : songs) {
+        out.append(Integer.toString(number)).append('\t').append(command).append("\tsong\t");
+        appendTsv(song.getTitle());
+        out.append('\t');
+        appendTsv(song.getArtist());
+        out.append('\t');
+        appendTsv(song.getReleaseYear());
+        out.append('\n');
+      }
+      out.append(Integer.toString(number)).append('\t').append(command).append("\tok\t")
+          .append(Integer.toString(songs.size())).append('\n');
+    } else {
+      startObject(number, command, "ok");
+      out.append(",\"count\":").append(Integer.toString(songs.size())).append(",\"songs\":[");
+      boolean first = true;
+      for (ISong song : songs) {
+        out.append(first ? "{\"title\":" : ",{\"title\":");
+        appendJson(song.getTitle());
+        out.append(",\"artist\":");
+        appendJson(song.getArtist());
+        out.append(",\"year\":");
+        appendJson(song.getReleaseYear());
+        out.append('}');
+        first = false;
+      }
+      out.append("]}\n");
+    }
+  }
+
+  private void startObject(int number, String command, String status) throws IOException {
+    out.append("{\"line\":").append(Integer.toString(number)).append(",\"command\":");
+    appendJson(command);
+    out.append(",\"status\":\"").append(status).append('"');
+  }
+
+  /**
+   * Writes text as a TSV field, escaping backslashes, tabs and line breaks
+   */
+  private void appendTsv(String text) throws IOException {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        default:
+          out.append(c);
+      }
+    }
+  }
+
+  /**
+   * Writes text as a JSON string
+   */
+  private void appendJson(String text) throws IOException {
+    out.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format("\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+}
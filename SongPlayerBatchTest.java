@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that each batch command gets its own result, in line order, that the adds of a durable
+ * backend survive a restart, and that adds whose sync failed are not left in the playlist, while
+ * adds that were synced are kept even when the compaction after them fails
+ */
+public class SongPlayerBatchTest {
+  private static final String COMMANDS = String.join("\n",
+      "add\tFirst\tSomeone\t1970",
+      "add\tSecond\tSomeone\t1971",
+      "add\tFirst\tSomeone Else\t1972",
+      "add\tThird\tSomeone\t1973",
+      "year\t1971",
+      "add\tFourth",
+      "remove\tSecond",
+      "title\tSecond",
+      "");
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void rejectedAddOnlyFailsItsOwnLine() throws IOException {
+    List<String> results = run(new SongPlayerBackend());
+    assertEquals(List.of("1\tadd\tok", "2\tadd\tok",
+        "3\tadd\terror\tThis RedBlackTree already contains that value.", "4\tadd\tok",
+        "5\tyear\tsong\tSecond\tSomeone\t1971", "5\tyear\tok\t1"), results.subList(0, 6));
+    assertTrue(results.get(6).startsWith("6\tadd\terror\t"));
+    assertEquals(List.of("7\tremove\tok", "8\ttitle\terror\tthe song does not exist!"),
+        results.subList(7, 9));
+  }
+
+  @Test
+  public void durableAddsAreSyncedAndKept() throws IOException {
+    Path log = directory.resolve("songs.log");
+    Path base = directory.resolve("songs.base");
+    try (DurableSongPlayerBackend playlist =
+        new DurableSongPlayerBackend(new SongPlayerBackend(), log, base)) {
+      assertEquals(run(new SongPlayerBackend()), run(playlist));
+    }
+    try (DurableSongPlayerBackend playlist =
+        new DurableSongPlayerBackend(new SongPlayerBackend(), log, base)) {
+      assertEquals("Someone", playlist.searchByTitle("Third").getArtist());
+      assertEquals(2, playlist.searchByYearRange(1970, 1973).size());
+    }
+  }
+
+  @Test
+  public void failedSyncTakesTheAddsBackAndStops() throws IOException {
+    DurableSongPlayerBackend playlist = new DurableSongPlayerBackend(new SongPlayerBackend(),
+        directory.resolve("songs.log"), directory.resolve("songs.base"));
+    // a closed log cannot be synced
+    playlist.close();
+    List<String> results = run(playlist);
+    // the sync before the year search fails, so the adds fail and nothing after them runs
+    assertEquals(4, results.size());
+    assertTrue(results.get(0).startsWith("1\tadd\terror\tThe song could not be saved"));
+    assertTrue(results.get(1).startsWith("2\tadd\terror\tThe song could not be saved"));
+    assertEquals("3\tadd\terror\tThis RedBlackTree already contains that value.", results.get(2));
+    assertTrue(results.get(3).startsWith("4\tadd\terror\tThe song could not be saved"));
+    assertThrows(NoSuchElementException.class, () -> playlist.searchByTitle("First"));
+    assertThrows(NoSuchElementException.class, () -> playlist.searchByTitle("Third"));
+  }
+
+  @Test
+  public void failedCompactionKeepsTheSyncedAdds() throws IOException {
+    Path log = directory.resolve("songs.log");
+    // the base file cannot be written, as its directory does not exist
+    Path base = directory.resolve("missing").resolve("songs.base");
+    try (DurableSongPlayerBackend playlist =
+        new DurableSongPlayerBackend(new SongPlayerBackend(), log, base, 1)) {
+      assertEquals(run(new SongPlayerBackend()), run(playlist));
+      assertTrue(playlist.getCompactionFailure() instanceof IOException);
+      assertEquals("Someone", playlist.searchByTitle("Third").getArtist());
+    }
+    // the adds stayed in the log, so they come back on restart
+    try (DurableSongPlayerBackend playlist =
+        new DurableSongPlayerBackend(new SongPlayerBackend(), log, base, 1)) {
+      assertEquals("Someone", playlist.searchByTitle("First").getArtist());
+      assertEquals("Someone", playlist.searchByTitle("Third").getArtist());
+      assertThrows(NoSuchElementException.class, () -> playlist.searchByTitle("Second"));
+    }
+  }
+
+  private static List<String> run(ISongPlayerBackend backend) throws IOException {
+    StringWriter out = new StringWriter();
+    PrintStream report = new PrintStream(new ByteArrayOutputStream());
+    new SongPlayerBatch(backend, out, SongPlayerBatch.Format.TSV)
+        .run(new BufferedReader(new StringReader(COMMANDS)), report);
+    return List.of(out.toString().split("\n"));
+  }
+}
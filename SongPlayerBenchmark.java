@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Measures the trees, the backend searches and the XML reader at several catalog sizes, with
+ * java.util.TreeMap as the baseline for the tree operations. Every benchmark is run for a number of
+ * warmup iterations, whose times are thrown away while the JIT compiles the code, and then for the
+ * measured iterations, whose mean and standard deviation per operation are printed. Results are
+ * fed into a volatile sink so that the JIT cannot drop the work. Setup that a benchmark needs
+ * before each iteration, such as refilling a tree to remove from, is not timed.
+ *
+ * Usage: java SongPlayerBenchmark [--sizes 1000,10000] [--warmup 3] [--iterations 5] [--only name]
+ * The largest default size needs a heap of several gigabytes, for example -Xmx16g.
+ */
+public class SongPlayerBenchmark {
+  private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+  // number of searches each backend benchmark runs per iteration
+  private static final int QUERIES = 1_000;
+  private static final String USAGE = "Usage: java SongPlayerBenchmark [--sizes 1000,10000] "
+      + "[--warmup 3] [--iterations 5] [--only name]";
+  private static final String[] WORDS = {"love", "night", "road", "fire", "heart", "rock", "blue",
+      "dream", "river", "light", "time", "wild", "rain", "gold", "home", "stone"};
+
+  private static volatile long sink;
+
+  /**
+   * One measured operation. prepare runs once per catalog size and beforeIteration before every
+   * warmup and measured iteration, and neither is timed.
+   */
+  private abstract static class Benchmark {
+    final String name;
+
+    Benchmark(String name) {
+      this.name = name;
+    }
+
+    void prepare(List<Song> catalog) throws Exception {
+    }
+
+    void beforeIteration() throws Exception {
+    }
+
+    /**
+     * Runs the measured work once
+     *
+     * @return the number of operations performed, which the time is divided by
+     */
+    abstract long run() throws Exception;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int[] sizes = DEFAULT_SIZES;
+    int warmup = 3;
+    int iterations = 5;
+    String only = null;
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 == args.length)
+        throw new IllegalArgumentException("The option " + args[i] + " needs a value. " + USAGE);
+      switch (args[i]) {
+        case "--sizes":
+          String[] parts = args[i + 1].split(",");
+          sizes = new int[parts.length];
+          for (int j = 0; j < parts.length; j++) {
+            sizes[j] = Integer.parseInt(parts[j].trim());
+          }
+          break;
+        case "--warmup":
+          warmup = Integer.parseInt(args[i + 1]);
+          break;
+        case "--iterations":
+          iterations = Integer.parseInt(args[i + 1]);
+          break;
+        case "--only":
+          only = args[i + 1];
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i] + ". " + USAGE);
+      }
+    }
+    System.out.printf("%-38s %10s %14s %12s%n", "benchmark", "size", "ns/op", "+- ns/op");
+    for (int size : sizes) {
+      List<Song> catalog = catalog(size, 42);
+      for (Benchmark benchmark : benchmarks()) {
+        if (only == null || benchmark.name.startsWith(only)) {
+          measure(benchmark, catalog, warmup, iterations);
+        }
+      }
+    }
+  }
+
+  private static void measure(Benchmark benchmark, List<Song> catalog, int warmup, int iterations)
+      throws Exception {
+    benchmark.prepare(catalog);
+    double[] nanosPerOperation = new double[iterations];
+    for (int i = -warmup; i < iterations; i++) {
+      benchmark.beforeIteration();
+      long start = System.nanoTime();
+      long operations = benchmark.run();
+      long elapsed = System.nanoTime() - start;
+      if (i >= 0) {
+        nanosPerOperation[i] = (double) elapsed / Math.max(1, operations);
+      }
+    }
+    double mean = 0;
+    for (double value : nanosPerOperation) {
+      mean += value / iterations;
+    }
+    double variance = 0;
+    for (double value : nanosPerOperation) {
+      variance += (value - mean) * (value - mean) / Math.max(1, iterations - 1);
+    }
+    System.out.printf("%-38s %10d %14.1f %12.1f%n", benchmark.name, catalog.size(), mean,
+        Math.sqrt(variance));
+  }
+
+  private static List<Benchmark> benchmarks() {
+    List<Benchmark> benchmarks = new ArrayList<>();
+
+    benchmarks.add(new Benchmark("tree.insert") {
+      List<Song> songs;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        songs = catalog;
+      }
+
+      @Override
+      long run() {
+        RedBlackTree<ISong> tree = new RedBlackTree<>();
+        for (Song song : songs) {
+          tree.insert(song);
+        }
+        sink += tree.size();
+        return songs.size();
+      }
+    });
+    benchmarks.add(new Benchmark("treemap.insert") {
+      List<Song> songs;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        songs = catalog;
+      }
+
+      @Override
+      long run() {
+        TreeMap<ISong, ISong> map = new TreeMap<>();
+        for (Song song : songs) {
+          map.put(song, song);
+        }
+        sink += map.size();
+        return songs.size();
+      }
+    });
+    benchmarks.add(new Benchmark("tree.remove") {
+      List<Song> songs;
+      RedBlackTree<ISong> tree;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        songs = catalog;
+      }
+
+      @Override
+      void beforeIteration() {
+        tree = new RedBlackTree<>();
+        tree.bulkLoad(songs);
+      }
+
+      @Override
+      long run() {
+        for (Song song : songs) {
+          tree.remove(song);
+        }
+        sink += tree.size();
+        return songs.size();
+      }
+    });
+    benchmarks.add(new Benchmark("treemap.remove") {
+      List<Song> songs;
+      TreeMap<ISong, ISong> map;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        songs = catalog;
+      }
+
+      @Override
+      void beforeIteration() {
+        map = new TreeMap<>();
+        for (Song song : songs) {
+          map.put(song, song);
+        }
+      }
+
+      @Override
+      long run() {
+        for (Song song : songs) {
+          map.remove(song);
+        }
+        sink += map.size();
+        return songs.size();
+      }
+    });
+    benchmarks.add(new Benchmark("tree.contains") {
+      List<Song> probes;
+      RedBlackTree<ISong> tree;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        tree = new RedBlackTree<>();
+        tree.bulkLoad(catalog);
+        probes = probes(catalog);
+      }
+
+      @Override
+      long run() {
+        long found = 0;
+        for (Song probe : probes) {
+          found += tree.contains(probe) ? 1 : 0;
+        }
+        sink += found;
+        return probes.size();
+      }
+    });
+    benchmarks.add(new Benchmark("treemap.contains") {
+      List<Song> probes;
+      TreeMap<ISong, ISong> map;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        map = new TreeMap<>();
+        for (Song song : catalog) {
+          map.put(song, song);
+        }
+        probes = probes(catalog);
+      }
+
+      @Override
+      long run() {
+        long found = 0;
+        for (Song probe : probes) {
+          found += map.containsKey(probe) ? 1 : 0;
+        }
+        sink += found;
+        return probes.size();
+      }
+    });
+    benchmarks.add(new Benchmark("tree.iterate") {
+      RedBlackTree<ISong> tree;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        tree = new RedBlackTree<>();
+        tree.bulkLoad(catalog);
+      }
+
+      @Override
+      long run() {
+        long count = 0;
+        for (Iterator<ISong> songs = tree.iterator(); songs.hasNext(); count++) {
+          sink += songs.next().hashCode();
+        }
+        return count;
+      }
+    });
+    benchmarks.add(new Benchmark("treemap.iterate") {
+      TreeMap<ISong, ISong> map;
+
+      @Override
+      void prepare(List<Song> catalog) {
+        map = new TreeMap<>();
+        for (Song song : catalog) {
+          map.put(song, song);
+        }
+      }
+
+      @Override
+      long run() {
+        long count = 0;
+        for (Iterator<ISong> songs = map.keySet().iterator(); songs.hasNext(); count++) {
+          sink += songs.next().hashCode();
+        }
+        return count;
+      }
+    });
+    benchmarks.add(new SearchBenchmark("backend.searchByYear", false) {
+      @Override
+      int search(SongPlayerBackend backend, Random random) {
+        return backend.searchByYear(Integer.toString(1950 + random.nextInt(71))).size();
+      }
+    });
+    benchmarks.add(new SearchBenchmark("backend.searchByYear.filtered", true) {
+      @Override
+      int search(SongPlayerBackend backend, Random random) {
+        return backend.searchByYear(Integer.toString(1950 + random.nextInt(71))).size();
+      }
+    });
+    benchmarks.add(new SearchBenchmark("backend.searchByYear.cached", false, true) {
+      @Override
+      int search(SongPlayerBackend backend, Random random) {
+        return backend.searchByYear(Integer.toString(1950 + random.nextInt(71))).size();
+      }
+    });
+    benchmarks.add(new SearchBenchmark("backend.searchByYear.filtered.cached", true, true) {
+      @Override
+      int search(SongPlayerBackend backend, Random random) {
+        return backend.searchByYear(Integer.toString(1950 + random.nextInt(71))).size();
+      }
+    });
+    benchmarks.add(new SearchBenchmark("backend.searchByName", false) {
+      @Override
+      int search(SongPlayerBackend backend, Random random) {
+        return backend.searchByName(WORDS[random.nextInt(WORDS.length)]).size();
+      }
+    });
+    benchmarks.add(new SearchBenchmark("backend.searchByName.filtered", true) {
+      @Override
+      int search(SongPlayerBackend backend, Random random) {
+        return backend.searchByName(WORDS[random.nextInt(WORDS.length)]).size();
+      }
+    });
+    benchmarks.add(new Benchmark("xml.ingest") {
+      Path file;
+      int size;
+
+      @Override
+      void prepare(List<Song> catalog) throws IOException, XMLStreamException {
+        if (file != null) {
+          Files.deleteIfExists(file);
+        }
+        file = Files.createTempFile("songs", ".xml");
+        file.toFile().deleteOnExit();
+        writeXML(catalog, file);
+        size = catalog.size();
+      }
+
+      @Override
+      long run() throws Exception {
+        sink += new XMLReader().readXMLAndCreateSongObject(file.toString()).size();
+        return size;
+      }
+    });
+    return benchmarks;
+  }
+
+  /**
+   * Runs QUERIES searches against a backend holding the catalog, with or without an author filter.
+   * The year result cache is off unless the benchmark asks for it, as the few distinct years would
+   * otherwise turn nearly every search into a cache hit.
+   */
+  private abstract static class SearchBenchmark extends Benchmark {
+    private final boolean filtered;
+    private final boolean cached;
+    private SongPlayerBackend backend;
+    private final Random random = new Random(7);
+
+    SearchBenchmark(String name, boolean filtered) {
+      this(name, filtered, false);
+    }
+
+    SearchBenchmark(String name, boolean filtered, boolean cached) {
+      super(name);
+      this.filtered = filtered;
+      this.cached = cached;
+    }
+
+    @Override
+    void prepare(List<Song> catalog) {
+      backend = new SongPlayerBackend();
+      backend.getYearResultCache().setEnabled(cached);
+      backend.addSongs(catalog);
+      if (filtered) {
+        backend.setAuthorFilter("Artist 1");
+      }
+    }
+
+    @Override
+    long run() {
+      long results = 0;
+      for (int i = 0; i < QUERIES; i++) {
+        results += search(backend, random);
+      }
+      sink += results;
+      return QUERIES;
+    }
+
+    abstract int search(SongPlayerBackend backend, Random random);
+  }
+
+  /**
+   * Builds a catalog of distinctly titled songs in random order. Titles mix a few common words with
+   * a unique number, artists are drawn from a pool a tenth the size of the catalog, and one song in
+   * fifty has an invalid year.
+   */
+  private static List<Song> catalog(int size, long seed) {
+    Random random = new Random(seed);
+    int artists = Math.max(1, size / 10);
+    List<Song> songs = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)]
+          + " " + i;
+      String artist = "Artist " + random.nextInt(artists);
+      String year =
+          random.nextInt(50) == 0 ? "Invalid" : Integer.toString(1950 + random.nextInt(71));
+      songs.add(new Song(title, artist, year));
+    }
+    Collections.shuffle(songs, random);
+    return songs;
+  }
+
+  /**
+   * Picks as many lookups as there are songs, half of them for titles that are in the catalog
+   */
+  private static List<Song> probes(List<Song> catalog) {
+    Random random = new Random(3);
+    List<Song> probes = new ArrayList<>(catalog.size());
+    for (int i = 0; i < catalog.size(); i++) {
+      if (random.nextBoolean()) {
+        probes.add(catalog.get(random.nextInt(catalog.size())));
+      } else {
+        probes.add(new Song("missing " + i, "", ""));
+      }
+    }
+    return probes;
+  }
+
+  private static void writeXML(List<Song> catalog, Path file)
+      throws IOException, XMLStreamException {
+    try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+      xml.writeStartDocument("UTF-8", "1.0");
+      xml.writeStartElement("root");
+      for (Song song : catalog) {
+        xml.writeStartElement("dataitem");
+        writeElement(xml, "Title", song.getTitle());
+        writeElement(xml, "Artist", song.getArtist());
+        // the song list marks unknown years as 0
+        String year = song.getReleaseYear();
+        writeElement(xml, "Release-Year", year.equals("Invalid") ? "0" : year);
+        xml.writeEndElement();
+      }
+      xml.writeEndElement();
+      xml.writeEndDocument();
+      xml.close();
+    }
+  }
+
+  private static void writeElement(XMLStreamWriter xml, String name, String text)
+      throws XMLStreamException {
+    xml.writeStartElement(name);
+    xml.writeCharacters(text);
+    xml.writeEndElement();
+  }
+}
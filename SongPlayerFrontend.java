@@ -1,14 +1,79 @@
+import java.io.BufferedWriter;
+import java.io.Console;
 import java.io.FileNotFoundException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class SongPlayerFrontend implements ISongPlayerFrontend {
+  // number of songs shown before asking whether to show more
+  private static final int DEFAULT_PAGE_SIZE = 50;
+
   protected Scanner user = new Scanner(System.in);
   private ISongPlayerBackend backend;
+  // search settings of this user, kept apart from other sessions on the same backend
+  private QueryContext session = new QueryContext();
+  // output is buffered, and flushed whenever the user is asked for input
+  private final PrintWriter out;
+  private final int pageSize;
 
+  /**
+   * Creates a frontend that writes to System.out, showing results a page at a time when it runs in
+   * a terminal and all at once when the output or input is redirected
+   */
   SongPlayerFrontend(Scanner user, ISongPlayerBackend backend) throws FileNotFoundException {
+    this(user, backend, defaultPageSize());
+  }
+
+  /**
+   * Creates a frontend that writes to System.out
+   *
+   * @param pageSize the number of songs shown before asking whether to show more, or 0 to always
+   *                 show all of them
+   */
+  SongPlayerFrontend(Scanner user, ISongPlayerBackend backend, int pageSize) {
+    this(user, backend, new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out))),
+        pageSize);
+  }
+
+  /**
+   * Getter method for the page size used when none is given: DEFAULT_PAGE_SIZE when both input and
+   * output are a terminal, and 0 otherwise. Up to JDK 21 System.console() is null whenever either
+   * is redirected. From JDK 22 on it is never null, and Console.isTerminal() tells instead, so that
+   * is asked whenever it exists.
+   *
+   * @return the page size to use
+   */
+  static int defaultPageSize() {
+    Console console = System.console();
+    if (console == null) {
+      return 0;
+    }
+    try {
+      Method isTerminal = Console.class.getMethod("isTerminal");
+      return Boolean.TRUE.equals(isTerminal.invoke(console)) ? DEFAULT_PAGE_SIZE : 0;
+    } catch (NoSuchMethodException e) {
+      return DEFAULT_PAGE_SIZE; // before JDK 22, a console means a terminal
+    } catch (ReflectiveOperationException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * Creates a frontend that writes to out
+   *
+   * @param pageSize the number of songs shown before asking whether to show more, or 0 to always
+   *                 show all of them
+   */
+  SongPlayerFrontend(Scanner user, ISongPlayerBackend backend, PrintWriter out, int pageSize) {
     this.backend = backend;
     this.user = user;
+    this.out = out;
+    this.pageSize = pageSize;
   }
 
   /**
@@ -18,117 +83,152 @@ public class SongPlayerFrontend implements ISongPlayerFrontend {
   @Override
   public void runLoop() {
     displayMenu();
-    String input = user.next();
+    String input = next();
     while (!input.equals("6")) {
       if (input.equals("1")) {
         nameSearch();
-        input = user.next();
+        input = next();
       }
       else if (input.equals("2")) {
-        System.out.println("Filtering Songs by Artist Name: ");
-        System.out.println("Enter Artist Name: ");
-        user.nextLine();
-        String artistName = user.nextLine();
-        System.out.println();
+        out.println("Filtering Songs by Artist Name: ");
+        out.println("Enter Artist Name: ");
+        nextLine();
+        String artistName = nextLine();
+        out.println();
         if (artistName.equals("none")) {
-          backend.resetAuthorFilter();
+          session.resetAuthorFilter();
           displayMenu();
         } else {
-          backend.setAuthorFilter(artistName);
+          session.setAuthorFilter(artistName);
           displayMenu();
         }
-        input = user.next();
+        input = next();
       }
       else if (input.equals("3")) {
         yearSearch();
-        input = user.next();
+        input = next();
       }
       else if (input.equals("4")) {
-        System.out.println("Removing a Song");
-        System.out.println("Name of Song that will be removed: ");
-        user.nextLine();
-        String songName = user.nextLine();
+        out.println("Removing a Song");
+        out.println("Name of Song that will be removed: ");
+        nextLine();
+        String songName = nextLine();
         try {
-          ISong removedSong = (ISong) backend.searchByName(songName);
+          ISong removedSong = backend.searchByTitle(songName);
           backend.removeSong(removedSong);
-        } catch (Exception e) {
-          System.out.println("Song is not in Playlist");
+        } catch (NoSuchElementException | IllegalArgumentException e) {
+          out.println("Song is not in Playlist");
+        } catch (UncheckedIOException e) {
+          out.println("The song was removed, but the change could not be saved: "
+              + e.getCause().getMessage());
         }
-        System.out.println();
+        out.println();
         displayMenu();
-        input = user.next();
+        input = next();
       }
       else if (input.equals("5")) {
-        System.out.println("Adding a Song");
-        System.out.println("Name of Song that will be added: ");
-        user.nextLine();
-        String songName = user.nextLine();
-        System.out.println("Artist of Song: ");
-        String artistName = user.nextLine();
-        System.out.println("Release Year: ");
-        String releaseYear = user.nextLine();
+        out.println("Adding a Song");
+        out.println("Name of Song that will be added: ");
+        nextLine();
+        String songName = nextLine();
+        out.println("Artist of Song: ");
+        String artistName = nextLine();
+        out.println("Release Year: ");
+        String releaseYear = nextLine();
         Song addedSong = new Song(songName, artistName, releaseYear);
         try {
           backend.addSong(addedSong);
-        } catch (Exception e) {
-          System.out.println("Song is already in Playlist");
+        } catch (IllegalArgumentException e) {
+          out.println("Song is already in Playlist");
+        } catch (UncheckedIOException e) {
+          out.println("The song was added, but the change could not be saved: "
+              + e.getCause().getMessage());
         }
-        System.out.println();
+        out.println();
         displayMenu();
-        input = user.next();
+        input = next();
       }
       else {
-        System.out.println("Cannot process " + input + ". Please enter a valid input.");
-        System.out.println();
+        out.println("Cannot process " + input + ". Please enter a valid input.");
+        out.println();
         displayMenu();
-        input = user.next();
+        input = next();
       }
     }
     if (input.equals("6")) {
-      System.out.println("Goodbye");
+      out.println("Goodbye");
     }
+    out.flush();
     user.close();
   }
 
+  /**
+   * Reads the next token the user typed, after showing everything written so far
+   */
+  private String next() {
+    out.flush();
+    return user.next();
+  }
+
+  /**
+   * Reads the rest of the line the user typed, after showing everything written so far
+   */
+  private String nextLine() {
+    out.flush();
+    return user.nextLine();
+  }
+
   /**
    * Prints out the main menu of the application
    */
   @Override
   public void displayMenu() {
-    System.out.println("Welcome to the Song Playlist Application: ");
-    System.out.println("1. Search Song by Name");
-    System.out.println("2. Filter Artist Name");
-    System.out.println("3. Search Song by Release Year");
-    System.out.println("4. Remove a Song");
-    System.out.println("5. Add a Song");
-    System.out.println("6. Exit Application");
+    out.println("Welcome to the Song Playlist Application: ");
+    out.println("1. Search Song by Name");
+    out.println("2. Filter Artist Name");
+    out.println("3. Search Song by Release Year");
+    out.println("4. Remove a Song");
+    out.println("5. Add a Song");
+    out.println("6. Exit Application");
   }
 
   /**
-   * Prints out a list of songs 
+   * Prints out a list of songs. Each song is written to the buffered output as it is reached, and
+   * after every page the user can ask for the next one or stop, so the songs after that are never
+   * formatted.
    * @param songs
    */
   @Override
   public void displaySongs(List<ISong> songs) {
-    String songList = "";
-    int num = 1;
-    for (int i = 0; i < songs.size(); i++) {
-      if (i == songs.size() - 1) {
-        songList += String.valueOf(num);
-        num += 1;
-        songList += ". ";
-        songList += '"' + songs.get(i).getTitle() + " by " + songs.get(i).getArtist() + '"';
-        songList += "\n";
-      } else {
-        songList += String.valueOf(num);
-        songList += ". ";
-        songList += '"' + songs.get(i).getTitle() + " by " + songs.get(i).getArtist() + '"';
-        num += 1;
-        songList += "\n";
-        songList += "\n";
+    int num = 0;
+    for (ISong song : songs) {
+      if (pageSize > 0 && num > 0 && num % pageSize == 0 && !nextPage(num, songs.size())) {
+        return;
       }
+      num += 1;
+      printSong(num, song);
+      out.println();
+    }
+    if (num == 0) {
+      out.println();
     }
-    System.out.println(songList);
+  }
+
+  /**
+   * Asks the user whether to show the next page of songs
+   *
+   * @param shown the number of songs shown so far
+   * @param total the number of songs found
+   * @return true to show the next page, false to stop
+   */
+  private boolean nextPage(int shown, int total) {
+    out.print("-- Showing " + shown + " of " + total
+        + " songs. Press Enter for more, or q and Enter to stop: ");
+    out.flush();
+    if (!user.hasNextLine()) {
+      return false;
+    }
+    return !user.nextLine().trim().equalsIgnoreCase("q");
   }
 
   /**
@@ -136,13 +236,17 @@ public class SongPlayerFrontend implements ISongPlayerFrontend {
    * @param song
    */
   public void displaySong(ISong song) {
-    String songList = "";
-    int num = 1;
-    songList += String.valueOf(num);
-    songList += ". ";
-    songList += '"' + song.getTitle() + " by " + song.getArtist() + '"';
-    songList += "\n";
-    System.out.println(songList);
+    printSong(1, song);
+    out.println();
+  }
+
+  private void printSong(int num, ISong song) {
+    out.print(num);
+    out.print(". \"");
+    out.print(song.getTitle());
+    out.print(" by ");
+    out.print(song.getArtist());
+    out.println('"');
   }
 
   /**
@@ -150,33 +254,43 @@ public class SongPlayerFrontend implements ISongPlayerFrontend {
    */
   @Override
   public void yearSearch() {
-    System.out.println("Searching by Release Year: ");
-    System.out.println("Enter Year: ");
+    out.println("Searching by Release Year: ");
+    out.println("Enter Year (or a range such as 1970-1979): ");
     user.useDelimiter("\n");
-    String year = user.next();
-    user.nextLine();
-    System.out.println();
+    String year = next();
+    nextLine();
+    out.println();
     if (year.equals("none")) {
       year = "";
-      List<ISong> a = backend.searchByYear(year);
+      List<ISong> a = backend.searchByYear(year, session);
       if (a.size() == 0) {
-        System.out.println("No results found");
+        out.println("No results found");
         displayMenu();
       } else {
         displaySongs(a);
-        System.out.println();
+        out.println();
         displayMenu();
       }
+    } else if (year.trim().matches("\\d{1,9}\\s*[-\u2013]\\s*\\d{1,9}")) {
+      // a range of years such as 1970-1979
+      String[] bounds = year.trim().split("\\s*[-\u2013]\\s*");
+      int first = Integer.parseInt(bounds[0]);
+      int last = Integer.parseInt(bounds[1]);
+      List<ISong> a = backend.searchByYearRange(Math.min(first, last), Math.max(first, last),
+          session);
+      displaySongs(a);
+      out.println();
+      displayMenu();
     } else {
-      if (backend.getAuthorFilter() == null) {
-        List<ISong> a = backend.searchByYear(year);
+      if (session.getAuthorFilter() == null) {
+        List<ISong> a = backend.searchByYear(year, session);
         displaySongs(a);
-        System.out.println();
+        out.println();
         displayMenu();
       } else {
-        List<ISong> a = backend.searchByYear(year);
+        List<ISong> a = backend.searchByYear(year, session);
         displaySongs(a);
-        System.out.println();
+        out.println();
         displayMenu();
       }
     }
@@ -187,39 +301,23 @@ public class SongPlayerFrontend implements ISongPlayerFrontend {
    */
   @Override
   public void nameSearch() {
-    System.out.println("Searching by Name: ");
-    System.out.println("Enter Song Name to lookup: ");
+    out.println("Searching by Name: ");
+    out.println("Enter Song Name to lookup: ");
     user.useDelimiter("\n");
-    String name = user.next();
-    user.nextLine();
-    try {
-      if (name.equals("none")) {
-        name = "";
-        ISong a = backend.searchByName(name);
-        if (a == null) {
-          System.out.println("No results found");
-          displayMenu();
-        } else {
-          displaySong(a);
-          System.out.println();
-          displayMenu();
-        }
-      } else {
-        if (backend.getAuthorFilter() == null) {
-          ISong a = backend.searchByName(name);
-          displaySong(a);
-          System.out.println();
-          displayMenu();
-        } else {
-          ISong a = backend.searchByName(name);
-          displaySong(a);
-          System.out.println();
-          displayMenu();
-        }
-      }
-    } catch (Exception e) {
-      System.out.println("Song is not in Playlist");
-      System.out.println();
+    String name = next();
+    nextLine();
+    out.println();
+    if (name.equals("none")) {
+      name = "";
+    }
+    List<ISong> a = backend.searchByName(name, session);
+    if (a.size() == 0) {
+      out.println("No results found");
+      out.println();
+      displayMenu();
+    } else {
+      displaySongs(a);
+      out.println();
       displayMenu();
     }
   }
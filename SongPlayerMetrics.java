@@ -0,0 +1,163 @@
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latency histograms of the addSong, addSongs, removeSong, searchByName and searchByYear calls of
+ * one SongPlayerBackend, together with the TreeMetrics counters, published over JMX by register.
+ * Latencies are measured around the whole call, so for a ConcurrentSongPlayerBackend they include
+ * the time spent waiting for the lock.
+ *
+ * Metrics are on unless the program is started with -Dsongplayer.metrics=false. That switches off
+ * all counting and timing, and since ENABLED is a constant the JIT drops the code for it entirely.
+ */
+public class SongPlayerMetrics implements SongPlayerMetricsMXBean {
+  static final boolean ENABLED =
+      !"false".equalsIgnoreCase(System.getProperty("songplayer.metrics"));
+  private static final String OBJECT_NAME = "SongPlayer:type=Metrics";
+
+  private final SongPlayerBackend backend;
+  final LatencyHistogram addSong = new LatencyHistogram();
+  final LatencyHistogram addSongs = new LatencyHistogram();
+  final LatencyHistogram removeSong = new LatencyHistogram();
+  final LatencyHistogram searchByName = new LatencyHistogram();
+  final LatencyHistogram searchByYear = new LatencyHistogram();
+
+  SongPlayerMetrics(SongPlayerBackend backend) {
+    this.backend = backend;
+  }
+
+  /**
+   * Reads the clock at the start of a call
+   *
+   * @return the start time to pass to record, or 0 when metrics are off
+   */
+  static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Counts the latency of a call that started at start
+   *
+   * @param histogram the histogram of the kind of call
+   * @param start     what start returned when the call began
+   */
+  static void record(LatencyHistogram histogram, long start) {
+    if (ENABLED) {
+      histogram.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Publishes the metrics of backend over JMX, replacing those of a backend registered before.
+   * Does nothing when metrics are off.
+   *
+   * @param backend the backend to publish the metrics of
+   */
+  public static void register(SongPlayerBackend backend) {
+    if (!ENABLED) {
+      return;
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName name = new ObjectName(OBJECT_NAME);
+      try {
+        server.registerMBean(backend.getMetrics(), name);
+      } catch (InstanceAlreadyExistsException e) {
+        server.unregisterMBean(name);
+        server.registerMBean(backend.getMetrics(), name);
+      }
+    } catch (JMException e) {
+      System.out.println("Could not publish the metrics over JMX: " + e.getMessage());
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return ENABLED;
+  }
+
+  @Override
+  public int getSongCount() {
+    return backend.read(() -> backend.RBT.size());
+  }
+
+  @Override
+  public int getTreeBlackHeight() {
+    return backend.read(() -> backend.RBT instanceof RedBlackTree
+        ? ((RedBlackTree<?>) backend.RBT).blackHeight() : -1);
+  }
+
+  @Override
+  public long getTreeComparisons() {
+    return TreeMetrics.getComparisons();
+  }
+
+  @Override
+  public long getTreeRotations() {
+    return TreeMetrics.getRotations();
+  }
+
+  @Override
+  public long getTreeRecolorings() {
+    return TreeMetrics.getRecolorings();
+  }
+
+  @Override
+  public long getYearCacheHits() {
+    return backend.getYearResultCache().getHits();
+  }
+
+  @Override
+  public long getYearCacheMisses() {
+    return backend.getYearResultCache().getMisses();
+  }
+
+  @Override
+  public long getYearCacheEvictions() {
+    return backend.getYearResultCache().getEvictions();
+  }
+
+  @Override
+  public int getYearCacheSize() {
+    return backend.getYearResultCache().size();
+  }
+
+  @Override
+  public LatencySummary getAddSongLatency() {
+    return new LatencySummary(addSong);
+  }
+
+  @Override
+  public LatencySummary getAddSongsLatency() {
+    return new LatencySummary(addSongs);
+  }
+
+  @Override
+  public LatencySummary getRemoveSongLatency() {
+    return new LatencySummary(removeSong);
+  }
+
+  @Override
+  public LatencySummary getSearchByNameLatency() {
+    return new LatencySummary(searchByName);
+  }
+
+  @Override
+  public LatencySummary getSearchByYearLatency() {
+    return new LatencySummary(searchByYear);
+  }
+
+  @Override
+  public void reset() {
+    TreeMetrics.reset();
+    backend.getYearResultCache().resetStatistics();
+    addSong.reset();
+    addSongs.reset();
+    removeSong.reset();
+    searchByName.reset();
+    searchByYear.reset();
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * The metrics of a SongPlayerBackend as they are shown over JMX, for example in JConsole under
+ * SongPlayer:type=Metrics. Latencies are in microseconds.
+ */
+public interface SongPlayerMetricsMXBean {
+  /**
+   * Getter method for whether metrics are collected at all, which is set once at startup through
+   * the songplayer.metrics system property
+   *
+   * @return false when the program was started with -Dsongplayer.metrics=false
+   */
+  public boolean isEnabled();
+
+  /**
+   * Getter method for the number of songs in the backend
+   *
+   * @return the number of songs
+   */
+  public int getSongCount();
+
+  /**
+   * Getter method for the black height of the backend's tree, which only follows one path down, so
+   * it holds the lock about as long as a title lookup. The height is between this and twice this.
+   *
+   * @return the number of black nodes on every path from the root down, or -1 when the backend does
+   *         not store its songs in a RedBlackTree
+   */
+  public int getTreeBlackHeight();
+
+  /**
+   * Getter method for the key comparisons made by lookups and inserts, across all trees
+   *
+   * @return the number of comparisons since startup or the last reset
+   */
+  public long getTreeComparisons();
+
+  /**
+   * Getter method for the rotations made while rebalancing, across all trees
+   *
+   * @return the number of rotations since startup or the last reset
+   */
+  public long getTreeRotations();
+
+  /**
+   * Getter method for the nodes recolored while rebalancing, across all trees
+   *
+   * @return the number of recolorings since startup or the last reset
+   */
+  public long getTreeRecolorings();
+
+  /**
+   * Getter method for the year searches answered from the result cache
+   *
+   * @return the number of cache hits since startup or the last reset
+   */
+  public long getYearCacheHits();
+
+  /**
+   * Getter method for the year searches that had to use the year index
+   *
+   * @return the number of cache misses since startup or the last reset
+   */
+  public long getYearCacheMisses();
+
+  /**
+   * Getter method for the results evicted from the year search cache to stay within its limits
+   *
+   * @return the number of evictions since startup or the last reset
+   */
+  public long getYearCacheEvictions();
+
+  /**
+   * Getter method for the number of results in the year search cache
+   *
+   * @return the number of cached results
+   */
+  public int getYearCacheSize();
+
+  public LatencySummary getAddSongLatency();
+
+  public LatencySummary getAddSongsLatency();
+
+  public LatencySummary getRemoveSongLatency();
+
+  public LatencySummary getSearchByNameLatency();
+
+  public LatencySummary getSearchByYearLatency();
+
+  /**
+   * Sets every counter, latency histogram and cache statistic back to zero
+   */
+  public void reset();
+
+  /**
+   * The count and percentiles of one kind of call
+   */
+  public static class LatencySummary {
+    private final long count;
+    private final double p50;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    LatencySummary(LatencyHistogram histogram) {
+      this.count = histogram.getCount();
+      this.p50 = histogram.getPercentile(0.5) / 1e3;
+      this.p99 = histogram.getPercentile(0.99) / 1e3;
+      this.p999 = histogram.getPercentile(0.999) / 1e3;
+      this.max = histogram.getMax() / 1e3;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getP50Micros() {
+      return p50;
+    }
+
+    public double getP99Micros() {
+      return p99;
+    }
+
+    public double getP999Micros() {
+      return p999;
+    }
+
+    public double getMaxMicros() {
+      return max;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the bucket bounds and percentiles of LatencyHistogram, the TreeMetrics counters on an
+ * insert sequence worked out by hand, and that -Dsongplayer.metrics=false records nothing
+ */
+public class SongPlayerMetricsTest {
+  @Test
+  public void smallLatenciesAreCountedExactly() {
+    for (long nanos = 0; nanos < 16; nanos++) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(nanos);
+      assertEquals(nanos, histogram.getMax());
+      assertEquals(nanos, histogram.getPercentile(0.5));
+    }
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  public void bucketsBoundTheirLatenciesWithinASixteenth() {
+    Random random = new Random(41);
+    for (int i = 0; i < 10_000; i++) {
+      // powers of two and their neighbours first, then values of every magnitude
+      long nanos = i < 62 ? (1L << (i + 2)) + (i % 3) - 1
+          : random.nextLong() >>> (1 + random.nextInt(63));
+      checkBucket(nanos);
+    }
+    checkBucket(Long.MAX_VALUE);
+    // the first values of a power of two start a new bucket
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(31);
+    assertEquals(31, histogram.getMax());
+    histogram.record(32);
+    assertEquals(33, histogram.getMax());
+  }
+
+  private static void checkBucket(long nanos) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(nanos);
+    long upper = histogram.getMax();
+    assertTrue(upper >= nanos, "bucket of " + nanos + " ends at " + upper);
+    assertTrue(upper - nanos <= nanos / 16, "bucket of " + nanos + " ends at " + upper);
+  }
+
+  @Test
+  public void percentilesFollowTheRecordedLatencies() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(0.99));
+    assertEquals(0, histogram.getMax());
+    for (long nanos = 1; nanos <= 10_000; nanos++) {
+      histogram.record(nanos);
+    }
+    assertEquals(10_000, histogram.getCount());
+    assertEquals(1, histogram.getPercentile(0));
+    checkPercentile(5_000, histogram.getPercentile(0.5));
+    checkPercentile(9_900, histogram.getPercentile(0.99));
+    checkPercentile(9_990, histogram.getPercentile(0.999));
+    assertEquals(histogram.getMax(), histogram.getPercentile(1));
+    checkPercentile(10_000, histogram.getMax());
+    assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(1.5));
+    assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(-0.1));
+
+    LatencyHistogram slow = new LatencyHistogram();
+    for (int i = 0; i < 10_000; i++) {
+      slow.record(1_000_000);
+    }
+    histogram.add(slow);
+    assertEquals(20_000, histogram.getCount());
+    checkPercentile(10_000, histogram.getPercentile(0.5));
+    checkPercentile(1_000_000, histogram.getPercentile(0.75));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getMax());
+  }
+
+  private static void checkPercentile(long expected, long actual) {
+    assertTrue(actual >= expected && actual - expected <= expected / 16,
+        "expected about " + expected + " but was " + actual);
+  }
+
+  @Test
+  public void treeMetricsCountAKnownInsertSequence() {
+    RedBlackTree<Integer> tree = new RedBlackTree<>();
+    TreeMetrics.reset();
+    // 1 colors the root; 3 rotates left at 1 and swaps two colors; 4 recolors its parent, uncle and
+    // grandparent, which is the root and is colored black again; 5 rotates left at 3 like 3 did
+    for (int value = 1; value <= 5; value++) {
+      tree.insert(value);
+    }
+    assertEquals(2, TreeMetrics.getRotations());
+    assertEquals(9, TreeMetrics.getRecolorings());
+    assertEquals(0 + 1 + 2 + 2 + 3, TreeMetrics.getComparisons());
+
+    TreeMetrics.reset();
+    assertTrue(tree.contains(4));
+    assertEquals(2, TreeMetrics.getComparisons());
+    assertEquals(0, TreeMetrics.getRotations() + TreeMetrics.getRecolorings());
+  }
+
+  @Test
+  public void backendCallsAreTimed() {
+    SongPlayerBackend backend = new SongPlayerBackend();
+    SongPlayerMetrics metrics = backend.getMetrics();
+    backend.addSong(new Song("One", "Artist", "1970"));
+    backend.addSong(new Song("Two", "Artist", "1971"));
+    backend.searchByYear("1970");
+    backend.removeSong(new Song("One", "", ""));
+    assertTrue(metrics.isEnabled());
+    assertEquals(2, metrics.getAddSongLatency().getCount());
+    assertEquals(1, metrics.getSearchByYearLatency().getCount());
+    assertEquals(1, metrics.getRemoveSongLatency().getCount());
+    assertEquals(0, metrics.getSearchByNameLatency().getCount());
+    metrics.reset();
+    assertEquals(0, metrics.getAddSongLatency().getCount());
+    assertEquals(0, metrics.getTreeRotations());
+  }
+
+  /**
+   * ENABLED is read once when SongPlayerMetrics is loaded, so the classes are loaded again by a
+   * class loader of their own while the property is set
+   */
+  @Test
+  public void disabledMetricsRecordNothing() throws Exception {
+    URL classes = SongPlayerMetrics.class.getProtectionDomain().getCodeSource().getLocation();
+    String previous = System.setProperty("songplayer.metrics", "false");
+    try (URLClassLoader loader =
+        new URLClassLoader(new URL[] {classes}, ClassLoader.getPlatformClassLoader())) {
+      Class<?> metricsClass = loader.loadClass("SongPlayerMetrics");
+      Field enabled = metricsClass.getDeclaredField("ENABLED");
+      enabled.setAccessible(true);
+      assertFalse(enabled.getBoolean(null));
+
+      Class<?> backendClass = loader.loadClass("SongPlayerBackend");
+      Class<?> songInterface = loader.loadClass("ISong");
+      Class<?> songClass = loader.loadClass("Song");
+      Constructor<?> constructor = backendClass.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      Object backend = constructor.newInstance();
+      Method addSong = backendClass.getMethod("addSong", songInterface);
+      for (int i = 0; i < 100; i++) {
+        Object song = songClass.getConstructor(String.class, String.class, String.class)
+            .newInstance("Song " + i, "Artist", Integer.toString(1950 + i % 20));
+        addSong.invoke(backend, song);
+      }
+      backendClass.getMethod("searchByYear", String.class).invoke(backend, "1960");
+
+      Object metrics = backendClass.getMethod("getMetrics").invoke(backend);
+      assertEquals(false, metricsClass.getMethod("isEnabled").invoke(metrics));
+      Object latency = metricsClass.getMethod("getAddSongLatency").invoke(metrics);
+      assertEquals(0L, latency.getClass().getMethod("getCount").invoke(latency));
+      latency = metricsClass.getMethod("getSearchByYearLatency").invoke(metrics);
+      assertEquals(0L, latency.getClass().getMethod("getCount").invoke(latency));
+      for (String counter : new String[] {"getTreeComparisons", "getTreeRotations",
+          "getTreeRecolorings"}) {
+        assertEquals(0L, metricsClass.getMethod(counter).invoke(metrics), counter);
+      }
+    } finally {
+      if (previous == null) {
+        System.clearProperty("songplayer.metrics");
+      } else {
+        System.setProperty("songplayer.metrics", previous);
+      }
+    }
+  }
+}
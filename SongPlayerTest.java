@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the playlist SongPlayer loads on startup keeps the changes of earlier runs, and that
+ * a failed load names the file it could not read
+ */
+public class SongPlayerTest {
+  @TempDir
+  Path directory;
+  private Path songList;
+  private Path snapshot;
+  private Path base;
+  private Path log;
+
+  @BeforeEach
+  public void writeSongList() throws IOException {
+    songList = directory.resolve("songs.xml");
+    snapshot = directory.resolve("songs.snapshot");
+    base = directory.resolve("songs.base");
+    log = directory.resolve("songs.log");
+    new CatalogGenerator(200, 7).writeXML(songList);
+  }
+
+  @Test
+  public void compactedSongSurvivesANewerSongList() throws IOException {
+    Song added = new Song("A Song Only In The Base", "Someone", "1999");
+    try (DurableSongPlayerBackend playlist = start()) {
+      playlist.addSong(added);
+      playlist.compact();
+    }
+    // a newer song list must not replace the base, whose changes are no longer in the log
+    Files.setLastModifiedTime(songList,
+        FileTime.fromMillis(Files.getLastModifiedTime(base).toMillis() + 60_000));
+    try (DurableSongPlayerBackend playlist = start()) {
+      assertEquals(added.getArtist(), playlist.searchByTitle(added.getTitle()).getArtist());
+    }
+  }
+
+  @Test
+  public void loggedSongSurvivesARestartBeforeTheFirstCompaction() throws IOException {
+    Song added = new Song("A Song Only In The Log", "Someone", "1999");
+    try (DurableSongPlayerBackend playlist = start()) {
+      playlist.addSong(added);
+    }
+    try (DurableSongPlayerBackend playlist = start()) {
+      assertEquals(added.getArtist(), playlist.searchByTitle(added.getTitle()).getArtist());
+    }
+  }
+
+  @Test
+  public void loadErrorsNameTheFileThatFailed() throws IOException {
+    Files.write(base, new byte[] {1, 2, 3});
+    IOException corrupt = assertThrows(IOException.class, this::start);
+    assertTrue(corrupt.getMessage().contains(base.toString()), corrupt.getMessage());
+
+    Files.delete(base);
+    Files.delete(songList);
+    FileNotFoundException missing = assertThrows(FileNotFoundException.class, this::start);
+    assertTrue(missing.getMessage().contains(songList.toString()), missing.getMessage());
+  }
+
+  private DurableSongPlayerBackend start() throws IOException {
+    SongPlayerBackend backend = SongPlayer.loadPlaylist(songList, snapshot, base);
+    return new DurableSongPlayerBackend(backend, log, base);
+  }
+}
@@ -0,0 +1,258 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Saves the songs of a SongPlayerBackend to a binary file and restores them much faster than the
+ * XML they came from can be parsed again. All numbers are big endian ints and every string is its
+ * UTF-8 length followed by its bytes. The file holds, in this order:
+ * - the magic number and the format version
+ * - the artist table and the release year table, each a count followed by distinct strings
+ * - the songs in title order, each a title and the positions of its artist and year in the tables
+ * - the year index, as the numeric years with the positions of their songs in title order
+ * - the songs whose year is not a number, as the year text with the positions of its songs
+ * Because the songs are stored in title order, loading builds the tree in linear time instead of
+ * inserting the songs one by one. The loaded songs are SongViews of one SongStore, so a large
+ * playlist takes a few arrays instead of a Song object and three strings per song. The file is
+ * read through a memory mapped FileChannel, so it is limited to 2 GB.
+ */
+public final class SongSnapshot {
+  private static final int MAGIC = 0x534E4731; // "SNG1"
+  private static final int VERSION = 1;
+
+  private SongSnapshot() {
+  }
+
+  /**
+   * Writes every song of backend to file. The file is first written under a temporary name, forced
+   * to disk and then moved into place, and the move is forced as well. A crash never leaves a half
+   * written snapshot behind, and once this returns the snapshot survives a power loss.
+   *
+   * @param backend the backend to save
+   * @param file    where to write the snapshot
+   * @throws IOException when the file cannot be written
+   */
+  public static void write(SongPlayerBackend backend, Path file) throws IOException {
+    // copy what is needed while the backend is consistent, then write without blocking it
+    Contents contents = backend.read(() -> new Contents(backend));
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      writeContents(out, contents);
+      out.flush();
+      // the snapshot has to be on disk before the rename makes it the one that counts
+      channel.force(true);
+    }
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    forceDirectory(file.toAbsolutePath().getParent());
+  }
+
+  private static void writeContents(DataOutputStream out, Contents contents) throws IOException {
+    LinkedHashMap<String, Integer> artists = new LinkedHashMap<>();
+    LinkedHashMap<String, Integer> years = new LinkedHashMap<>();
+    IdentityHashMap<ISong, Integer> positions = new IdentityHashMap<>();
+    for (ISong song : contents.songs) {
+      artists.putIfAbsent(song.getArtist(), artists.size());
+      years.putIfAbsent(song.getReleaseYear(), years.size());
+      positions.put(song, positions.size());
+    }
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    writeTable(out, artists);
+    writeTable(out, years);
+    out.writeInt(contents.songs.size());
+    for (ISong song : contents.songs) {
+      writeString(out, song.getTitle());
+      out.writeInt(artists.get(song.getArtist()));
+      out.writeInt(years.get(song.getReleaseYear()));
+    }
+    out.writeInt(contents.years.size());
+    for (Map.Entry<Integer, List<ISong>> year : contents.years.entrySet()) {
+      out.writeInt(year.getKey());
+      writePositions(out, year.getValue(), positions);
+    }
+    out.writeInt(contents.unparsedYears.size());
+    for (Map.Entry<String, List<ISong>> year : contents.unparsedYears.entrySet()) {
+      writeString(out, year.getKey());
+      writePositions(out, year.getValue(), positions);
+    }
+  }
+
+  /**
+   * Forces the directory entry of a renamed file to disk, so that the rename survives a power loss.
+   * Some platforms, Windows among them, cannot open a directory; their file systems make the rename
+   * durable on their own.
+   */
+  private static void forceDirectory(Path directory) throws IOException {
+    if (directory == null)
+      return;
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (AccessDeniedException e) {
+      return;
+    }
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Creates a backend holding the songs saved in file
+   *
+   * @param file a snapshot written by write
+   * @return a new backend with those songs
+   * @throws IOException when the file cannot be read or is not a valid snapshot
+   */
+  public static SongPlayerBackend load(Path file) throws IOException {
+    SongPlayerBackend backend = new SongPlayerBackend();
+    loadInto(file, backend);
+    return backend;
+  }
+
+  /**
+   * Restores the songs saved in file into an empty backend. The songs are kept in a new SongStore,
+   * which is filled before the backend sees it and never changed afterwards, so the views may be
+   * read from several threads.
+   *
+   * @param file    a snapshot written by write
+   * @param backend the backend to fill, which must not hold any songs
+   * @throws IOException           when the file cannot be read or is not a valid snapshot
+   * @throws IllegalStateException when backend already holds songs
+   */
+  public static void loadInto(Path file, SongPlayerBackend backend) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    List<ISong> songs = new ArrayList<>();
+    TreeMap<Integer, List<ISong>> years = new TreeMap<>();
+    HashMap<String, List<ISong>> unparsedYears = new HashMap<>();
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+        throw new IOException(file + " is not a song snapshot.");
+      String[] artists = readTable(buffer);
+      String[] releaseYears = readTable(buffer);
+      int songCount = readCount(buffer);
+      SongStore store = new SongStore(songCount);
+      for (int i = 0; i < songCount; i++) {
+        String title = readString(buffer);
+        String artist = artists[buffer.getInt()];
+        songs.add(store.add(title, artist, releaseYears[buffer.getInt()]));
+      }
+      int yearCount = readCount(buffer);
+      for (int i = 0; i < yearCount; i++) {
+        int year = buffer.getInt();
+        years.put(year, readPositions(buffer, songs));
+      }
+      int unparsedCount = readCount(buffer);
+      for (int i = 0; i < unparsedCount; i++) {
+        String year = readString(buffer);
+        unparsedYears.put(year, readPositions(buffer, songs));
+      }
+      backend.restore(songs, years, unparsedYears);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException(file + " is truncated or corrupt.", e);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(file + " does not list its songs in title order.", e);
+    }
+  }
+
+  private static void writeTable(DataOutputStream out, Map<String, Integer> table)
+      throws IOException {
+    out.writeInt(table.size());
+    for (String text : table.keySet()) {
+      writeString(out, text);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writePositions(DataOutputStream out, List<ISong> songs,
+      Map<ISong, Integer> positions) throws IOException {
+    out.writeInt(songs.size());
+    for (ISong song : songs) {
+      out.writeInt(positions.get(song));
+    }
+  }
+
+  private static String[] readTable(MappedByteBuffer buffer) {
+    String[] table = new String[readCount(buffer)];
+    for (int i = 0; i < table.length; i++) {
+      table[i] = readString(buffer);
+    }
+    return table;
+  }
+
+  private static String readString(MappedByteBuffer buffer) {
+    byte[] bytes = new byte[readCount(buffer)];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static List<ISong> readPositions(MappedByteBuffer buffer, List<ISong> songs) {
+    int count = readCount(buffer);
+    List<ISong> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(songs.get(buffer.getInt()));
+    }
+    return result;
+  }
+
+  /**
+   * Reads a count, and rejects counts that could not fit in the rest of the file, so that a corrupt
+   * file cannot make the loader allocate huge arrays
+   */
+  private static int readCount(MappedByteBuffer buffer) {
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining())
+      throw new IndexOutOfBoundsException("Count " + count + " does not fit in the snapshot.");
+    return count;
+  }
+
+  /**
+   * The songs and year index of a backend, copied so they can be written without holding it up
+   */
+  private static class Contents {
+    final List<ISong> songs = new ArrayList<>();
+    final TreeMap<Integer, List<ISong>> years = new TreeMap<>();
+    final TreeMap<String, List<ISong>> unparsedYears = new TreeMap<>();
+
+    Contents(SongPlayerBackend backend) {
+      for (ISong song : backend.RBT) {
+        songs.add(song);
+      }
+      for (Map.Entry<Integer, TreeSet<ISong>> year : backend.yearIndex.entrySet()) {
+        years.put(year.getKey(), new ArrayList<>(year.getValue()));
+      }
+      for (Map.Entry<String, TreeSet<ISong>> year : backend.unparsedYearIndex.entrySet()) {
+        unparsedYears.put(year.getKey(), new ArrayList<>(year.getValue()));
+      }
+    }
+  }
+}
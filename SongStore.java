@@ -0,0 +1,351 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Stores songs column by column instead of as one Song object each. Every song is an int slot:
+ * - its release year is an int. A year whose text is not the plain number, such as "Invalid" or
+ *   " 1999", is stored as YEAR_TEXT_BASE plus the index of its text in a small table of distinct
+ *   odd year texts, so the view returns exactly what was stored. Real years never fall in that
+ *   range, as parseYear reads at most nine characters
+ * - its artist is an int id into a dictionary that holds each distinct artist name once
+ * - its title is a run of UTF-8 bytes in one shared byte array, followed by its sort key (see
+ *   TitleCollation) unless the key is the same bytes as the title
+ * The songs are read through SongView objects, which only hold the store and the slot. Slots are
+ * never reused, so a view stays valid for the lifetime of the store. The store is not thread safe.
+ */
+public class SongStore {
+  // the year of songs whose release year is "Invalid" or not a number
+  public static final int INVALID_YEAR = Integer.MIN_VALUE;
+  // stored years from here up are indexes into yearTexts; parsed years are above -10^9
+  private static final int YEAR_TEXT_BASE = Integer.MIN_VALUE;
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] years;
+  private int[] artistIds;
+  private int[] titleStart;
+  private int[] titleLength;
+  private int[] sortKeyStart;
+  private int[] sortKeyLength;
+  private byte[] titleBytes;
+  private int titleBytesUsed = 0;
+  private int size = 0;
+  // the distinct release year texts that are not a plain number, with the year each one stands for
+  private String[] yearTexts = new String[4];
+  private int[] yearTextValues = new int[4];
+  private int yearTextCount = 0;
+  private final HashMap<String, Integer> yearTextIds = new HashMap<>();
+
+  // the artist dictionary: an id is the index of the name in artistNames
+  private final ArrayList<String> artistNames = new ArrayList<>();
+  private final HashMap<String, Integer> artistIdByName = new HashMap<>();
+
+  public SongStore() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty store with room for the given number of songs before its arrays grow
+   *
+   * @param capacity the number of songs to reserve space for
+   */
+  public SongStore(int capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("The capacity cannot be negative.");
+    years = new int[capacity];
+    artistIds = new int[capacity];
+    titleStart = new int[capacity];
+    titleLength = new int[capacity];
+    sortKeyStart = new int[capacity];
+    sortKeyLength = new int[capacity];
+    titleBytes = new byte[capacity * 16];
+  }
+
+  /**
+   * Adds a song to the store
+   *
+   * @param title       name of the song
+   * @param artist      name of the artist
+   * @param releaseYear the year the song was released, or "Invalid"
+   * @return a view of the stored song
+   */
+  public SongView add(String title, String artist, String releaseYear) {
+    if (title == null || artist == null || releaseYear == null)
+      throw new NullPointerException("This SongStore cannot store null references.");
+    if (size == years.length) {
+      grow();
+    }
+    int slot = size++;
+    setTitle(slot, title);
+    setArtist(slot, artist);
+    setReleaseYear(slot, releaseYear);
+    return new SongView(this, slot);
+  }
+
+  /**
+   * Copies a song into the store
+   *
+   * @param song the song to copy
+   * @return a view of the stored copy
+   */
+  public SongView add(ISong song) {
+    return add(song.getTitle(), song.getArtist(), song.getReleaseYear());
+  }
+
+  /**
+   * Copies every song into the store
+   *
+   * @param songs the songs to copy
+   * @return views of the stored copies, in the order of songs
+   */
+  public List<ISong> addAll(Collection<? extends ISong> songs) {
+    List<ISong> views = new ArrayList<>(songs.size());
+    for (ISong song : songs) {
+      views.add(add(song));
+    }
+    return views;
+  }
+
+  /**
+   * Getter method for a view of the song in the given slot
+   *
+   * @param slot the slot of the song, from 0 to size() - 1
+   * @return a view of that song
+   */
+  public SongView get(int slot) {
+    checkSlot(slot);
+    return new SongView(this, slot);
+  }
+
+  /**
+   * Getter method for the number of songs in the store
+   *
+   * @return the number of songs
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Getter method for the number of distinct artists in the dictionary
+   *
+   * @return the number of artist ids handed out
+   */
+  public int artistCount() {
+    return artistNames.size();
+  }
+
+  /**
+   * Getter method for the name behind an artist id
+   *
+   * @param artistId an id from the artist dictionary
+   * @return the artist's name
+   */
+  public String artistName(int artistId) {
+    return artistNames.get(artistId);
+  }
+
+  /**
+   * Getter method for the id of an artist
+   *
+   * @param artist name of the artist
+   * @return the artist's id, or -1 when no stored song has that artist
+   */
+  public int artistId(String artist) {
+    Integer id = artistIdByName.get(artist);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Finds the ids of every artist whose name contains text. Each distinct name is checked once, so
+   * an author filter can then be applied to any number of songs by testing their ids.
+   *
+   * @param text the substring to look for
+   * @return a set holding the ids of the matching artists
+   */
+  public BitSet artistIdsContaining(String text) {
+    BitSet ids = new BitSet(artistNames.size());
+    for (int id = 0; id < artistNames.size(); id++) {
+      if (artistNames.get(id).contains(text)) {
+        ids.set(id);
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Converts a release year to the int kept by the store
+   *
+   * @param releaseYear the year as text
+   * @return the year, or INVALID_YEAR when it is not a number
+   */
+  public static int encodeYear(String releaseYear) {
+    Integer year = SongPlayerBackend.parseYear(releaseYear);
+    return year == null ? INVALID_YEAR : year;
+  }
+
+  int year(int slot) {
+    int year = years[slot];
+    return isYearText(year) ? yearTextValues[year - YEAR_TEXT_BASE] : year;
+  }
+
+  String releaseYear(int slot) {
+    int year = years[slot];
+    return isYearText(year) ? yearTexts[year - YEAR_TEXT_BASE] : Integer.toString(year);
+  }
+
+  /**
+   * Getter method for the number of distinct release year texts that are not a plain number
+   *
+   * @return the size of the year text table
+   */
+  int yearTextCount() {
+    return yearTextCount;
+  }
+
+  private boolean isYearText(int year) {
+    return year < YEAR_TEXT_BASE + yearTextCount;
+  }
+
+  int artistIdOf(int slot) {
+    return artistIds[slot];
+  }
+
+  String artist(int slot) {
+    return artistNames.get(artistIds[slot]);
+  }
+
+  String title(int slot) {
+    return new String(titleBytes, titleStart[slot], titleLength[slot], StandardCharsets.UTF_8);
+  }
+
+  byte[] sortKey(int slot) {
+    int start = sortKeyStart[slot];
+    return Arrays.copyOfRange(titleBytes, start, start + sortKeyLength[slot]);
+  }
+
+  /**
+   * Compares the stored sort key of a slot with key, without copying it
+   *
+   * @return a negative number, zero or a positive number as the slot's key sorts before, equal to
+   *         or after key
+   */
+  int compareSortKey(int slot, byte[] key) {
+    int start = sortKeyStart[slot];
+    return Arrays.compareUnsigned(titleBytes, start, start + sortKeyLength[slot], key, 0,
+        key.length);
+  }
+
+  void setReleaseYear(int slot, String releaseYear) {
+    int year = encodeYear(releaseYear);
+    if (year != INVALID_YEAR && releaseYear.equals(Integer.toString(year))) {
+      years[slot] = year;
+      return;
+    }
+    Integer id = yearTextIds.get(releaseYear);
+    if (id == null) {
+      id = yearTextCount++;
+      if (id == yearTexts.length) {
+        yearTexts = Arrays.copyOf(yearTexts, id * 2);
+        yearTextValues = Arrays.copyOf(yearTextValues, id * 2);
+      }
+      yearTexts[id] = releaseYear;
+      yearTextValues[id] = year;
+      yearTextIds.put(releaseYear, id);
+    }
+    years[slot] = YEAR_TEXT_BASE + id;
+  }
+
+  void setArtist(int slot, String artist) {
+    Integer id = artistIdByName.get(artist);
+    if (id == null) {
+      id = artistNames.size();
+      artistNames.add(artist);
+      artistIdByName.put(artist, id);
+    }
+    artistIds[slot] = id;
+  }
+
+  /**
+   * Stores a title and its sort key for the given slot. The bytes of an older title are left behind
+   * in the shared array, as titles only change when a song is renamed.
+   */
+  void setTitle(int slot, String title) {
+    byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+    byte[] key = TitleCollation.sortKey(title);
+    titleStart[slot] = append(bytes);
+    titleLength[slot] = bytes.length;
+    sortKeyStart[slot] = Arrays.equals(bytes, key) ? titleStart[slot] : append(key);
+    sortKeyLength[slot] = key.length;
+  }
+
+  private int append(byte[] bytes) {
+    if (titleBytesUsed + bytes.length > titleBytes.length) {
+      titleBytes = Arrays.copyOf(titleBytes,
+          Math.max(titleBytesUsed + bytes.length, titleBytes.length + (titleBytes.length >> 1)));
+    }
+    System.arraycopy(bytes, 0, titleBytes, titleBytesUsed, bytes.length);
+    int start = titleBytesUsed;
+    titleBytesUsed += bytes.length;
+    return start;
+  }
+
+  /**
+   * Compares the titles of two slots in TitleCollation order, byte by byte and without decoding
+   * them. Sort keys are compared first. When they are equal the titles themselves are compared, and
+   * as plain UTF-8 byte order puts characters from U+E000 to U+FFFF before supplementary characters
+   * while String.compareTo puts them after, the lead bytes of those two ranges are swapped.
+   *
+   * @return a negative number, zero or a positive number as the first title sorts before, equal
+   *         to or after the second
+   */
+  int compareTitles(int slot, int otherSlot) {
+    int keyStart = sortKeyStart[slot];
+    int otherKeyStart = sortKeyStart[otherSlot];
+    int order = Arrays.compareUnsigned(titleBytes, keyStart, keyStart + sortKeyLength[slot],
+        titleBytes, otherKeyStart, otherKeyStart + sortKeyLength[otherSlot]);
+    if (order != 0) {
+      return order;
+    }
+    int i = titleStart[slot];
+    int j = titleStart[otherSlot];
+    int length = titleLength[slot];
+    int otherLength = titleLength[otherSlot];
+    int common = Math.min(length, otherLength);
+    int mismatch = Arrays.mismatch(titleBytes, i, i + common, titleBytes, j, j + common);
+    if (mismatch < 0) {
+      return length - otherLength;
+    }
+    return inUtf16Order(titleBytes[i + mismatch] & 0xFF)
+        - inUtf16Order(titleBytes[j + mismatch] & 0xFF);
+  }
+
+  private static int inUtf16Order(int b) {
+    if (b >= 0xF0) {
+      return b - 2; // lead bytes of supplementary characters move down to 0xEE to 0xF2
+    }
+    if (b >= 0xEE) {
+      return b + 5; // lead bytes of U+E000 to U+FFFF move up to 0xF3 and 0xF4
+    }
+    return b;
+  }
+
+  private void checkSlot(int slot) {
+    if (slot < 0 || slot >= size)
+      throw new IndexOutOfBoundsException("There is no song in slot " + slot + ".");
+  }
+
+  private void grow() {
+    int capacity = Math.max(DEFAULT_CAPACITY, years.length + (years.length >> 1));
+    years = Arrays.copyOf(years, capacity);
+    artistIds = Arrays.copyOf(artistIds, capacity);
+    titleStart = Arrays.copyOf(titleStart, capacity);
+    titleLength = Arrays.copyOf(titleLength, capacity);
+    sortKeyStart = Arrays.copyOf(sortKeyStart, capacity);
+    sortKeyLength = Arrays.copyOf(sortKeyLength, capacity);
+  }
+}
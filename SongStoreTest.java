@@ -0,0 +1,158 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the SongViews of a SongStore read back what a Song holding the same fields returns,
+ * and sort the same way
+ */
+public class SongStoreTest {
+  // characters that stress the collation: accents, case, CJK, a private use character and an emoji
+  private static final String[] PIECES = {"a", "B", "\u00e9", "\u00c9", "\u00df", "ss", "\u4e2d",
+      "\ue000", "\ud83c\udfb8", " ", "1", "z"};
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void viewsReadBackTheStoredFields() {
+    SongStore store = new SongStore(2);
+    List<Song> songs = randomSongs(new Random(4), 500);
+    List<ISong> views = store.addAll(songs);
+    assertEquals(songs.size(), store.size());
+    for (int i = 0; i < songs.size(); i++) {
+      Song song = songs.get(i);
+      ISong view = views.get(i);
+      assertEquals(song.getTitle(), view.getTitle());
+      assertEquals(song.getArtist(), view.getArtist());
+      assertEquals(song.getReleaseYear(), view.getReleaseYear());
+      assertTrue(Arrays.equals(song.getSortKey(), view.getSortKey()));
+      assertEquals(view, store.get(i));
+    }
+  }
+
+  @Test
+  public void artistsAreStoredOnce() {
+    SongStore store = new SongStore();
+    SongView first = store.add("One", "Queen", "1975");
+    SongView second = store.add("Two", "Queen", "1976");
+    SongView third = store.add("Three", "Queen II", "1977");
+    assertEquals(2, store.artistCount());
+    assertEquals(first.getArtistId(), second.getArtistId());
+    assertNotEquals(first.getArtistId(), third.getArtistId());
+    assertEquals("Queen II", store.artistName(third.getArtistId()));
+    assertEquals(-1, store.artistId("Nobody"));
+    assertEquals(2, store.artistIdsContaining("Queen").cardinality());
+  }
+
+  @Test
+  public void oddYearTextsAreKeptExactly() {
+    SongStore store = new SongStore();
+    String[] texts =
+        {"1999", "Invalid", " 1999", "0199", "-5", "", "1999 ", "\u0661\u0669\u0669\u0669"};
+    List<SongView> views = new ArrayList<>();
+    for (int i = 0; i < texts.length; i++) {
+      views.add(store.add("Song " + i, "Artist", texts[i]));
+    }
+    store.add("Another invalid", "Artist", "Invalid");
+    for (int i = 0; i < texts.length; i++) {
+      assertEquals(texts[i], views.get(i).getReleaseYear());
+      assertEquals(SongStore.encodeYear(texts[i]), views.get(i).getYear());
+    }
+    assertEquals(1999, views.get(2).getYear());
+    assertEquals(SongStore.INVALID_YEAR, views.get(1).getYear());
+    // the plain years take no table entry, and "Invalid" is kept once
+    assertEquals(6, store.yearTextCount());
+
+    SongView song = views.get(0);
+    song.setReleaseYear("Invalid");
+    assertEquals("Invalid", song.getReleaseYear());
+    assertEquals(SongStore.INVALID_YEAR, song.getYear());
+    song.setReleaseYear("2001");
+    assertEquals("2001", song.getReleaseYear());
+    assertEquals(2001, song.getYear());
+    assertEquals(6, store.yearTextCount());
+  }
+
+  @Test
+  public void viewsSortLikeSongs() {
+    Random random = new Random(9);
+    SongStore store = new SongStore();
+    List<Song> songs = randomSongs(random, 400);
+    List<ISong> views = store.addAll(songs);
+    for (int i = 0; i < songs.size(); i++) {
+      for (int j = 0; j < songs.size(); j += 7) {
+        int expected = Integer.signum(songs.get(i).compareTo(songs.get(j)));
+        assertEquals(expected, Integer.signum(views.get(i).compareTo(views.get(j))));
+        assertEquals(expected, Integer.signum(views.get(i).compareTo(songs.get(j))));
+        assertEquals(expected, Integer.signum(songs.get(i).compareTo(views.get(j))));
+      }
+    }
+  }
+
+  @Test
+  public void renamedViewsSortByTheirNewTitle() {
+    SongStore store = new SongStore();
+    SongView first = store.add("Alpha", "Artist", "1970");
+    SongView second = store.add("Beta", "Artist", "1971");
+    assertTrue(first.compareTo(second) < 0);
+    first.setTitle("Gamma");
+    assertEquals("Gamma", first.getTitle());
+    assertTrue(first.compareTo(second) > 0);
+  }
+
+  @Test
+  public void snapshotLoadsIntoAStore() throws IOException {
+    SongPlayerBackend backend = new SongPlayerBackend();
+    List<Song> songs = randomSongs(new Random(21), 300);
+    backend.addSongs(songs);
+    Path file = directory.resolve("songs.snapshot");
+    SongSnapshot.write(backend, file);
+    SongPlayerBackend loaded = SongSnapshot.load(file);
+    for (Song song : songs) {
+      ISong view = loaded.searchByTitle(song.getTitle());
+      assertTrue(view instanceof SongView);
+      assertEquals(song.getArtist(), view.getArtist());
+      assertEquals(song.getReleaseYear(), view.getReleaseYear());
+    }
+    assertEquals(titles(backend.searchByYear("Invalid")), titles(loaded.searchByYear("Invalid")));
+    assertEquals(titles(backend.searchByName("a")), titles(loaded.searchByName("a")));
+  }
+
+  /**
+   * Builds songs with distinct titles made of the collation test pieces, and years that are now and
+   * then not a plain number
+   */
+  private static List<Song> randomSongs(Random random, int count) {
+    List<Song> songs = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      StringBuilder title = new StringBuilder();
+      for (int length = 1 + random.nextInt(5); length > 0; length--) {
+        title.append(PIECES[random.nextInt(PIECES.length)]);
+      }
+      title.append(' ').append(i);
+      String year = random.nextInt(10) == 0 ? "Invalid"
+          : random.nextInt(20) == 0 ? " " + (1950 + random.nextInt(70))
+          : Integer.toString(1950 + random.nextInt(70));
+      songs.add(new Song(title.toString(), "Artist " + random.nextInt(20), year));
+    }
+    return songs;
+  }
+
+  private static List<String> titles(List<ISong> songs) {
+    List<String> titles = new ArrayList<>();
+    for (ISong song : songs) {
+      titles.add(song.getTitle());
+    }
+    return titles;
+  }
+}
@@ -0,0 +1,159 @@
+/**
+ * A song read from a SongStore. A view only holds its store and slot, so it costs a small fixed
+ * amount of memory however long the title and artist are. Setters write through to the store, and
+ * two views are equal when they read the same slot of the same store.
+ */
+public class SongView implements ISong {
+  private final SongStore store;
+  private final int slot;
+
+  SongView(SongStore store, int slot) {
+    this.store = store;
+    this.slot = slot;
+  }
+
+  /**
+   * Getter method for the name of a song, decoded from the store
+   *
+   * @return string representation of title
+   */
+  @Override
+  public String getTitle() {
+    return store.title(slot);
+  }
+
+  /**
+   * Getter method for the sort key of the song's title
+   *
+   * @return a copy of the stored sort key, see TitleCollation
+   */
+  @Override
+  public byte[] getSortKey() {
+    return store.sortKey(slot);
+  }
+
+  /**
+   * Compares the sort key of the song's title with key on the stored bytes, without copying them
+   *
+   * @param key the sort key to compare to
+   * @return a negative number, zero or a positive number as this key sorts before, equal to or
+   *         after key
+   */
+  @Override
+  public int compareSortKeyTo(byte[] key) {
+    return store.compareSortKey(slot, key);
+  }
+
+  /**
+   * Getter method for the year a song was released
+   *
+   * @return string representation of release year, as it was stored
+   */
+  @Override
+  public String getReleaseYear() {
+    return store.releaseYear(slot);
+  }
+
+  /**
+   * Getter method for the artist
+   *
+   * @return string representation of the artist name
+   */
+  @Override
+  public String getArtist() {
+    return store.artist(slot);
+  }
+
+  /**
+   * Getter method for the year a song was released, without building a string
+   *
+   * @return the release year, or SongStore.INVALID_YEAR
+   */
+  public int getYear() {
+    return store.year(slot);
+  }
+
+  /**
+   * Getter method for the id of the artist in the store's dictionary. Two views of the same store
+   * have the same artist exactly when their ids are equal.
+   *
+   * @return the artist id
+   */
+  public int getArtistId() {
+    return store.artistIdOf(slot);
+  }
+
+  /**
+   * Getter method for the store this view reads from
+   *
+   * @return the store
+   */
+  public SongStore getStore() {
+    return store;
+  }
+
+  /**
+   * Compares the titles of two different songs in TitleCollation order. Titles of views from the
+   * same store are compared on their stored bytes without being decoded.
+   *
+   * @param song the song being compared or compared to
+   * @return a positive number if the song's title is greater than the other's, 0 if they are equal
+   *         and a negative number if it is smaller
+   */
+  @Override
+  public int compareTo(ISong song) {
+    if (song instanceof SongView && ((SongView) song).store == store) {
+      return store.compareTitles(slot, ((SongView) song).slot);
+    }
+    return TitleCollation.compare(this, song);
+  }
+
+  /**
+   * Setter method for the name of the song
+   *
+   * @param title name of the song
+   */
+  @Override
+  public void setTitle(String title) {
+    store.setTitle(slot, title);
+  }
+
+  /**
+   * Setter method for the release year of a song
+   *
+   * @param releaseYear the year a song was released
+   */
+  @Override
+  public void setReleaseYear(String releaseYear) {
+    store.setReleaseYear(slot, releaseYear);
+  }
+
+  /**
+   * Setter method for the artist name
+   *
+   * @param artist name of the artist
+   */
+  @Override
+  public void setArtist(String artist) {
+    store.setArtist(slot, artist);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof SongView)) {
+      return false;
+    }
+    SongView view = (SongView) other;
+    return view.store == store && view.slot == slot;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(store) + slot;
+  }
+
+  @Override
+  public String toString() {
+    return getTitle();
+  }
+}
@@ -1,14 +1,157 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 public interface SortedCollectionInterface<T extends Comparable<T>> extends Iterable<T> {
 
   public boolean insert(T data) throws NullPointerException, IllegalArgumentException;
 
-  public boolean remove(T data) throws NullPointerException, IllegalArgumentException;
+  /**
+   * Removes the element equal to data and returns the element that was stored, which may be a
+   * different object than data.
+   */
+  public T remove(T data) throws NullPointerException, IllegalArgumentException;
 
   public boolean contains(T data);
 
+  /**
+   * Inserts many values at once. Nothing is inserted when one of them is rejected. This default
+   * checks every value first and then inserts them one by one, in sorted order.
+   *
+   * @throws NullPointerException     when one of the values is null
+   * @throws IllegalArgumentException when a value is given twice or is already in the collection
+   */
+  public default void bulkLoad(Collection<? extends T> values)
+      throws NullPointerException, IllegalArgumentException {
+    List<T> sorted = new ArrayList<>(values);
+    for (T value : sorted) {
+      if (value == null)
+        throw new NullPointerException("This collection cannot store null references.");
+    }
+    sorted.sort(null);
+    for (int i = 0; i < sorted.size(); i++) {
+      if ((i > 0 && sorted.get(i - 1).compareTo(sorted.get(i)) == 0) || contains(sorted.get(i)))
+        throw new IllegalArgumentException("This collection already contains that value.");
+    }
+    for (T value : sorted) {
+      insert(value);
+    }
+  }
+
   public int size();
 
   public boolean isEmpty();
 
   public ISong search(ISong data);
-}
\ No newline at end of file
+
+  /**
+   * Returns the element that key compares equal to, or null if there is none. key.compareTo is
+   * called with stored elements and must order them the same way they order each other.
+   */
+  public T searchByKey(Comparable<? super T> key);
+
+  /**
+   * Returns the greatest element less than or equal to data, or null if there is none.
+   */
+  public T floor(T data);
+
+  /**
+   * Returns the least element greater than or equal to data, or null if there is none.
+   */
+  public T ceiling(T data);
+
+  /**
+   * Returns the least element strictly greater than data, or null if there is none.
+   */
+  public T higher(T data);
+
+  /**
+   * Returns the greatest element strictly less than data, or null if there is none.
+   */
+  public T lower(T data);
+
+  /**
+   * Returns an iterator over the elements greater than or equal to data, in ascending order.
+   */
+  public Iterator<T> iteratorFrom(T data);
+
+  /**
+   * Returns the number of elements strictly less than data.
+   */
+  public int rank(T data);
+
+  /**
+   * Returns the element at the given zero based position in sorted order.
+   */
+  public T select(int index);
+
+  /**
+   * Returns a view of the elements from fromElement (inclusive) to toElement (exclusive).
+   */
+  public default Iterable<T> subSet(T fromElement, T toElement) {
+    if (fromElement == null || toElement == null)
+      throw new NullPointerException("The bounds of a range cannot be null.");
+    if (fromElement.compareTo(toElement) > 0)
+      throw new IllegalArgumentException("The start of the range is after its end.");
+    return () -> upTo(iteratorFrom(fromElement), toElement);
+  }
+
+  /**
+   * Returns a view of the elements strictly less than toElement.
+   */
+  public default Iterable<T> headSet(T toElement) {
+    if (toElement == null)
+      throw new NullPointerException("The bounds of a range cannot be null.");
+    return () -> upTo(iterator(), toElement);
+  }
+
+  /**
+   * Returns a view of the elements greater than or equal to fromElement.
+   */
+  public default Iterable<T> tailSet(T fromElement) {
+    if (fromElement == null)
+      throw new NullPointerException("The bounds of a range cannot be null.");
+    return () -> iteratorFrom(fromElement);
+  }
+
+  /**
+   * Returns a sequential stream over the elements in ascending order. Call parallel() on it to scan
+   * with several threads when the collection's spliterator supports splitting.
+   */
+  public default Stream<T> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Wraps an ascending iterator so that it stops before the first element that is not less than
+   * toElement.
+   */
+  private static <T extends Comparable<T>> Iterator<T> upTo(Iterator<T> ascending, T toElement) {
+    return new Iterator<T>() {
+      T next = advance();
+
+      private T advance() {
+        if (!ascending.hasNext())
+          return null;
+        T candidate = ascending.next();
+        return candidate.compareTo(toElement) < 0 ? candidate : null;
+      }
+
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      public T next() {
+        if (next == null)
+          throw new NoSuchElementException("There are no more elements in the range");
+        T current = next;
+        next = advance();
+        return current;
+      }
+    };
+  }
+}
@@ -0,0 +1,88 @@
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The order songs are sorted in. Titles are first compared on their sort keys, which ignore case
+ * and accents, so "Hotel California", "hotel california" and "H\u00f4tel California" sort next to
+ * each other. Titles with equal sort keys are then compared exactly, so distinct titles never
+ * collide. A sort key is the title decomposed with NFKD, stripped of its combining marks, case
+ * folded and encoded as UTF-8. Its bytes compare unsigned in code point order.
+ */
+public final class TitleCollation {
+  private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+  private TitleCollation() {
+  }
+
+  /**
+   * Folds a title to the text its sort key is built from. Plain ASCII titles are only lower cased.
+   *
+   * @param title the title to fold
+   * @return the title without case and accent differences
+   */
+  public static String normalize(String title) {
+    boolean ascii = true;
+    for (int i = 0; i < title.length() && ascii; i++) {
+      ascii = title.charAt(i) < 0x80;
+    }
+    if (ascii) {
+      return title.toLowerCase(Locale.ROOT);
+    }
+    String decomposed = Normalizer.normalize(title, Normalizer.Form.NFKD);
+    String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("");
+    // upper casing first folds characters such as the German sharp s to their full lower case form
+    return stripped.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Computes the sort key of a title
+   *
+   * @param title the title of a song
+   * @return the UTF-8 bytes of the normalized title
+   */
+  public static byte[] sortKey(String title) {
+    return normalize(title).getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Compares two songs in collation order
+   *
+   * @return a negative number, zero or a positive number as song sorts before, equal to or after
+   *         other
+   */
+  public static int compare(ISong song, ISong other) {
+    // a SongView compares its stored key in place, so it is the one asked
+    int order = other instanceof SongView ? -other.compareSortKeyTo(song.getSortKey())
+        : song.compareSortKeyTo(other.getSortKey());
+    return order != 0 ? order : song.getTitle().compareTo(other.getTitle());
+  }
+
+  /**
+   * Builds a search key that matches the song with exactly the given title
+   *
+   * @param title the title to look for
+   * @return a key to pass to SortedCollectionInterface.searchByKey
+   */
+  public static Comparable<ISong> exactKey(String title) {
+    byte[] key = sortKey(title);
+    return stored -> {
+      int order = -stored.compareSortKeyTo(key);
+      return order != 0 ? order : title.compareTo(stored.getTitle());
+    };
+  }
+
+  /**
+   * Builds a search key that matches any song whose title only differs from the given title in
+   * case or accents
+   *
+   * @param title the title to look for
+   * @return a key to pass to SortedCollectionInterface.searchByKey
+   */
+  public static Comparable<ISong> foldedKey(String title) {
+    byte[] key = sortKey(title);
+    return stored -> -stored.compareSortKeyTo(key);
+  }
+}
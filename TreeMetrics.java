@@ -0,0 +1,54 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the work the red black trees do across all trees: key comparisons made while looking up
+ * and inserting values, rotations and node recolorings made while rebalancing after an insert or a
+ * remove. The counters are LongAdders, which spread concurrent increments over several cells
+ * instead of making every thread fight over one, and lookups add their comparisons once per call.
+ * Nothing is counted when SongPlayerMetrics.ENABLED is false, and since the flag is a constant the
+ * JIT then removes the counting from the compiled code altogether.
+ */
+final class TreeMetrics {
+  private static final LongAdder comparisons = new LongAdder();
+  private static final LongAdder rotations = new LongAdder();
+  private static final LongAdder recolorings = new LongAdder();
+
+  private TreeMetrics() {
+  }
+
+  static void comparisons(int count) {
+    if (SongPlayerMetrics.ENABLED) {
+      comparisons.add(count);
+    }
+  }
+
+  static void rotation() {
+    if (SongPlayerMetrics.ENABLED) {
+      rotations.increment();
+    }
+  }
+
+  static void recolorings(int count) {
+    if (SongPlayerMetrics.ENABLED) {
+      recolorings.add(count);
+    }
+  }
+
+  static long getComparisons() {
+    return comparisons.sum();
+  }
+
+  static long getRotations() {
+    return rotations.sum();
+  }
+
+  static long getRecolorings() {
+    return recolorings.sum();
+  }
+
+  static void reset() {
+    comparisons.reset();
+    rotations.reset();
+    recolorings.reset();
+  }
+}
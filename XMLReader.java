@@ -1,21 +1,34 @@
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 public class XMLReader implements IXMLReader {
 
+  private final SongDeduplicator.Policy duplicatePolicy;
+  private int duplicatesDropped = 0;
+
+  public XMLReader() {
+    this(SongDeduplicator.Policy.FIRST_WINS);
+  }
+
+  public XMLReader(SongDeduplicator.Policy duplicatePolicy) {
+    if (duplicatePolicy == null)
+      throw new NullPointerException("The duplicate policy cannot be null.");
+    this.duplicatePolicy = duplicatePolicy;
+  }
+
   /**
-   * Reads in the given XML files and converts it into useable data
-   * 
+   * Reads in the given XML files and converts it into useable data. Songs that share a title are
+   * resolved with this reader's duplicate policy.
+   *
    * @param filePathToXML
    * @return An ArrayList of all the Songs in the XML File
    * @throws FileNotFoundException
@@ -23,42 +36,77 @@ public class XMLReader implements IXMLReader {
   @Override
   public ArrayList<Song> readXMLAndCreateSongObject(String filePathToXML)
       throws FileNotFoundException {
-    ArrayList<Song> songList = new ArrayList<>();
-    try {
-      File f = new File(filePathToXML);
-      DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-      DocumentBuilder db = dbf.newDocumentBuilder();
-      Document doc = db.parse(f);
-      doc.getDocumentElement().normalize();
-      NodeList nodeList = doc.getElementsByTagName("dataitem");
-      boolean flag;
-      for (int i = 0; i < nodeList.getLength(); ++i) {
-        Node node = nodeList.item(i);
-        if (node.getNodeType() == Node.ELEMENT_NODE) {
-          Element eElement = (Element) node;
-          String title = eElement.getElementsByTagName("Title").item(0).getTextContent().trim();
-          String artist = eElement.getElementsByTagName("Artist").item(0).getTextContent().trim();
-          String releaseYear =
-              eElement.getElementsByTagName("Release-Year").item(0).getTextContent().trim();
-          if (releaseYear.equals("0")) {
-            releaseYear = "Invalid";
-          }
-          Song song = new Song(title, artist, releaseYear);
-          flag = true;
-          for (int j = 1; j < songList.size(); ++j) {
-            if (songList.get(j).getTitle().equals(title)) {
-              flag = false;
+    SongDeduplicator deduplicator = new SongDeduplicator(duplicatePolicy);
+    readXMLAndStreamSongs(filePathToXML, deduplicator);
+    duplicatesDropped = deduplicator.getDuplicatesDropped();
+    return deduplicator.getSongs();
+  }
+
+  /**
+   * Getter method for the number of duplicate records found by the last list read
+   *
+   * @return how many records the last call to readXMLAndCreateSongObject dropped or merged
+   */
+  @Override
+  public int getDuplicatesDropped() {
+    return duplicatesDropped;
+  }
+
+  /**
+   * Pulls the given XML file through a StAX stream reader and passes each Song to the consumer as
+   * soon as its dataitem element closes, so only one record is held in memory at a time
+   *
+   * @param filePathToXML
+   * @param consumer      receives each Song in file order
+   * @throws FileNotFoundException
+   */
+  @Override
+  public void readXMLAndStreamSongs(String filePathToXML, Consumer<? super Song> consumer)
+      throws FileNotFoundException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(filePathToXML))) {
+      XMLInputFactory xif = XMLInputFactory.newInstance();
+      xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      XMLStreamReader reader = xif.createXMLStreamReader(in);
+      try {
+        String title = null;
+        String artist = null;
+        String releaseYear = null;
+        boolean inDataItem = false;
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if (name.equals("dataitem")) {
+              inDataItem = true;
+              title = null;
+              artist = null;
+              releaseYear = null;
+            } else if (inDataItem && name.equals("Title") && title == null) {
+              title = reader.getElementText().trim();
+            } else if (inDataItem && name.equals("Artist") && artist == null) {
+              artist = reader.getElementText().trim();
+            } else if (inDataItem && name.equals("Release-Year") && releaseYear == null) {
+              releaseYear = reader.getElementText().trim();
             }
-          }
-          if (flag) {
-            songList.add(song);
+          } else if (event == XMLStreamConstants.END_ELEMENT
+              && reader.getLocalName().equals("dataitem")) {
+            inDataItem = false;
+            if (title == null || artist == null || releaseYear == null) {
+              continue;
+            }
+            if (releaseYear.equals("0")) {
+              releaseYear = "Invalid";
+            }
+            consumer.accept(new Song(title, artist, releaseYear));
           }
         }
+      } finally {
+        reader.close();
       }
-
-    } catch (Exception e) {
+    } catch (FileNotFoundException e) {
+      throw e;
+    } catch (XMLStreamException | IOException e) {
       e.printStackTrace();
     }
-    return songList;
   }
-}
\ No newline at end of file
+}
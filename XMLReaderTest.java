@@ -0,0 +1,153 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that XMLReader reads the dataitem records of a song list, resolves titles read twice with
+ * each duplicate policy, and keeps the records before a malformed part of the file
+ */
+public class XMLReaderTest {
+  private static final String DUPLICATES = "<root>"
+      + item("Hotel California", "Eagles", "1976")
+      + item("Imagine", "John Lennon", "0")
+      + item("Hotel California", "Eagles Tribute", "1999")
+      + item("Imagine", "John Lennon", "1971")
+      + item("Layla", "Derek and the Dominos", "1970")
+      + item("Hotel California", "Eagles", "1977")
+      + "</root>";
+
+  @TempDir
+  Path directory;
+
+  @Test
+  public void firstRecordOfATitleWins() throws IOException {
+    XMLReader reader = new XMLReader();
+    List<Song> songs = reader.readXMLAndCreateSongObject(write(DUPLICATES));
+    assertEquals(List.of("Hotel California|Eagles|1976", "Imagine|John Lennon|Invalid",
+        "Layla|Derek and the Dominos|1970"), describe(songs));
+    assertEquals(3, reader.getDuplicatesDropped());
+  }
+
+  @Test
+  public void lastRecordOfATitleWinsInTheFirstPosition() throws IOException {
+    XMLReader reader = new XMLReader(SongDeduplicator.Policy.LAST_WINS);
+    List<Song> songs = reader.readXMLAndCreateSongObject(write(DUPLICATES));
+    assertEquals(List.of("Hotel California|Eagles|1977", "Imagine|John Lennon|1971",
+        "Layla|Derek and the Dominos|1970"), describe(songs));
+    assertEquals(3, reader.getDuplicatesDropped());
+  }
+
+  @Test
+  public void recordsOfTheSameArtistAreMerged() throws IOException {
+    XMLReader reader = new XMLReader(SongDeduplicator.Policy.MERGE_BY_TITLE_AND_ARTIST);
+    List<Song> songs = reader.readXMLAndCreateSongObject(write(DUPLICATES));
+    // the missing year of Imagine is filled in, and the other artist's record is dropped
+    assertEquals(List.of("Hotel California|Eagles|1976", "Imagine|John Lennon|1971",
+        "Layla|Derek and the Dominos|1970"), describe(songs));
+    assertEquals(3, reader.getDuplicatesDropped());
+  }
+
+  @Test
+  public void duplicateCountIsThatOfTheLastRead() throws IOException {
+    XMLReader reader = new XMLReader();
+    reader.readXMLAndCreateSongObject(write(DUPLICATES));
+    reader.readXMLAndCreateSongObject(write("<root>" + item("Layla", "Eric Clapton", "1970")
+        + item("Layla", "Eric Clapton", "1992") + "</root>"));
+    assertEquals(1, reader.getDuplicatesDropped());
+    assertThrows(NullPointerException.class, () -> new XMLReader(null));
+  }
+
+  @Test
+  public void incompleteRecordsAreSkipped() throws IOException {
+    String xml = "<root>"
+        + "<dataitem><Title>No Artist</Title><Release-Year>1970</Release-Year></dataitem>"
+        + "<dataitem><Title> Padded </Title><Artist> Someone </Artist>"
+        + "<Release-Year> 1980 </Release-Year><Extra>ignored</Extra></dataitem>"
+        + "<Title>Outside Of A Record</Title>"
+        + "</root>";
+    List<Song> songs = new XMLReader().readXMLAndCreateSongObject(write(xml));
+    assertEquals(List.of("Padded|Someone|1980"), describe(songs));
+  }
+
+  @Test
+  public void malformedInputKeepsTheRecordsBeforeIt() throws IOException {
+    String xml = "<root>" + item("Before", "Someone", "1970")
+        + "<dataitem><Title>Broken</Title><Artist>Someone</Artist></Title>"
+        + item("After", "Someone", "1971") + "</root>";
+    PrintStream err = System.err;
+    ByteArrayOutputStream reported = new ByteArrayOutputStream();
+    System.setErr(new PrintStream(reported, true, StandardCharsets.UTF_8));
+    List<Song> songs;
+    try {
+      songs = new XMLReader().readXMLAndCreateSongObject(write(xml));
+    } finally {
+      System.setErr(err);
+    }
+    assertEquals(List.of("Before|Someone|1970"), describe(songs));
+    assertTrue(reported.toString(StandardCharsets.UTF_8).contains("XMLStreamException"));
+  }
+
+  @Test
+  public void missingFileIsReported() {
+    String missing = directory.resolve("missing.xml").toString();
+    assertThrows(FileNotFoundException.class,
+        () -> new XMLReader().readXMLAndCreateSongObject(missing));
+    assertThrows(FileNotFoundException.class,
+        () -> new XMLReader().readXMLAndStreamSongs(missing, song -> { }));
+  }
+
+  @Test
+  public void streamingPassesEveryRecordInFileOrder() throws IOException {
+    List<Song> streamed = new ArrayList<>();
+    new XMLReader().readXMLAndStreamSongs(write(DUPLICATES), streamed::add);
+    // streaming does no duplicate checking
+    assertEquals(List.of("Hotel California|Eagles|1976", "Imagine|John Lennon|Invalid",
+        "Hotel California|Eagles Tribute|1999", "Imagine|John Lennon|1971",
+        "Layla|Derek and the Dominos|1970", "Hotel California|Eagles|1977"), describe(streamed));
+  }
+
+  @Test
+  public void streamingMatchesTheListOfAGeneratedCatalog() throws IOException {
+    Path file = directory.resolve("catalog.xml");
+    new CatalogGenerator(5_000, 3).writeXML(file);
+    List<Song> expected = new ArrayList<>();
+    new CatalogGenerator(5_000, 3).forEachRemaining(expected::add);
+    List<Song> streamed = new ArrayList<>();
+    new XMLReader().readXMLAndStreamSongs(file.toString(), streamed::add);
+    assertEquals(describe(expected), describe(streamed));
+    XMLReader reader = new XMLReader();
+    assertEquals(describe(expected), describe(reader.readXMLAndCreateSongObject(file.toString())));
+    assertEquals(0, reader.getDuplicatesDropped());
+  }
+
+  private String write(String xml) throws IOException {
+    Path file = Files.createTempFile(directory, "songs", ".xml");
+    Files.writeString(file, xml, StandardCharsets.UTF_8);
+    return file.toString();
+  }
+
+  private static String item(String title, String artist, String year) {
+    return "<dataitem><Title>" + title + "</Title><Artist>" + artist + "</Artist><Release-Year>"
+        + year + "</Release-Year></dataitem>";
+  }
+
+  private static List<String> describe(List<Song> songs) {
+    List<String> described = new ArrayList<>();
+    for (Song song : songs) {
+      described.add(song.getTitle() + "|" + song.getArtist() + "|" + song.getReleaseYear());
+    }
+    return described;
+  }
+}